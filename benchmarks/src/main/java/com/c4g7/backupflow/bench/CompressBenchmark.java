@@ -0,0 +1,72 @@
+package com.c4g7.backupflow.bench;
+
+import com.c4g7.backupflow.util.CompressionUtils;
+import com.c4g7.backupflow.util.FileUtils;
+import com.c4g7.backupflow.util.HashUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Staged compression of a whole world directory, one thread against all cores. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressBenchmark {
+    @Param({"zip", "zstd", "lz4"})
+    public String format;
+
+    /** 1 for sequential, 0 for one thread per core. */
+    @Param({"1", "0"})
+    public int threads;
+
+    @Param({"2000"})
+    public int smallFiles;
+
+    @Param({"16"})
+    public int regionFiles;
+
+    private Path dir;
+    private Path archive;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Datasets.world(Files.createTempDirectory("bf-bench-"), smallFiles, regionFiles, 8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteArchive() throws IOException {
+        if (archive != null) Files.deleteIfExists(archive);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        int level = format.equals("zstd") ? 3 : 6;
+        var result = CompressionUtils.compress(dir, format, HashUtils.SHA256, level, n);
+        archive = result.archive;
+        return Files.size(archive);
+    }
+}
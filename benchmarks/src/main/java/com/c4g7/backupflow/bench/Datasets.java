@@ -0,0 +1,89 @@
+package com.c4g7.backupflow.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Synthetic server directories shaped like a Minecraft world: many small player/stat files and a
+ * few large region files. Content is seeded, so every run benchmarks the same bytes.
+ */
+public final class Datasets {
+    private Datasets() {}
+
+    /**
+     * Writes {@code smallFiles} player files (gzip-like {@code .dat} noise and compressible
+     * {@code .json} stats, alternating) and {@code regionFiles} {@code .mca} files of
+     * {@code regionMB} each under {@code dir/worlds/world}, plus a few plugin configs.
+     */
+    public static Path world(Path dir, int smallFiles, int regionFiles, int regionMB) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(42);
+        Path world = dir.resolve("worlds/world");
+        Path playerdata = Files.createDirectories(world.resolve("playerdata"));
+        Path stats = Files.createDirectories(world.resolve("stats"));
+        for (int i = 0; i < smallFiles; i++) {
+            String uuid = new UUID(rnd.nextLong(), rnd.nextLong()).toString();
+            if (i % 2 == 0) {
+                Files.write(playerdata.resolve(uuid + ".dat"), noise(rnd, 2 * 1024 + rnd.nextInt(6 * 1024)));
+            } else {
+                Files.writeString(stats.resolve(uuid + ".json"), statsJson(rnd), StandardCharsets.UTF_8);
+            }
+        }
+        Path region = Files.createDirectories(world.resolve("region"));
+        for (int i = 0; i < regionFiles; i++) {
+            Files.write(region.resolve("r." + (i % 4) + "." + (i / 4) + ".mca"), region(rnd, regionMB));
+        }
+        Path plugins = Files.createDirectories(dir.resolve("plugins/Essentials"));
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(plugins.resolve("config-" + i + ".yml"), "enabled: true\nlimit: " + i + "\nmessage: \"hello\"\n".repeat(50));
+        }
+        return dir;
+    }
+
+    /** Relative paths as the pre-scan sees them: mostly kept, with cache/temp/log noise mixed in. */
+    public static List<String> serverPaths(int count) {
+        SplittableRandom rnd = new SplittableRandom(7);
+        String[] shapes = {
+                "world/region/r.%d.%d.mca", "world/playerdata/%d-%d.dat", "world/stats/%d-%d.json",
+                "plugins/Plugin%d/data/%d.yml", "plugins/Plugin%d/cache/%d.bin", "plugins/dynmap/web/tiles/world/%d/%d.png",
+                "logs/2024-01-%d-%d.log.gz", "world_nether/DIM-1/region/r.%d.%d.mca", "plugins/Plugin%d/temp/%d.tmp",
+                "world/data/map_%d_%d.dat"
+        };
+        List<String> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            out.add(String.format(shapes[rnd.nextInt(shapes.length)], rnd.nextInt(32), rnd.nextInt(1000)));
+        }
+        return out;
+    }
+
+    private static byte[] noise(SplittableRandom rnd, int size) {
+        byte[] b = new byte[size];
+        rnd.nextBytes(b);
+        return b;
+    }
+
+    /** Region file: 8 KiB of location/timestamp tables, then 4 KiB sectors of compressed chunk data with zero padding. */
+    private static byte[] region(SplittableRandom rnd, int mb) {
+        byte[] b = new byte[mb * 1024 * 1024];
+        for (int off = 8192; off + 4096 <= b.length; off += 4096) {
+            int used = 1024 + rnd.nextInt(3072);
+            for (int i = 0; i < used; i++) b[off + i] = (byte) rnd.nextInt();
+        }
+        for (int i = 0; i < 8192; i += 4) b[i + 3] = (byte) rnd.nextInt();
+        return b;
+    }
+
+    private static String statsJson(SplittableRandom rnd) {
+        StringBuilder sb = new StringBuilder("{\"stats\":{\"minecraft:mined\":{");
+        for (int i = 0; i < 40; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"minecraft:block_").append(i).append("\":").append(rnd.nextInt(5000));
+        }
+        return sb.append("}},\"DataVersion\":3955}").toString();
+    }
+}
@@ -0,0 +1,155 @@
+package com.c4g7.backupflow.bench;
+
+import com.c4g7.backupflow.BackupStorageService;
+import com.c4g7.backupflow.util.ArchiveFormat;
+import com.c4g7.backupflow.util.CompressionUtils;
+import com.c4g7.backupflow.util.FileUtils;
+import com.c4g7.backupflow.util.HashUtils;
+import com.c4g7.backupflow.util.ZipExtractUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backup, restore and verify through the real storage client against {@link FakeS3Server}, under a
+ * chosen bandwidth cap, latency and rate of failed part uploads (which the part retries must absorb).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final String BUCKET = "bench";
+
+    /** 0 for unlimited. */
+    @Param({"0", "100"})
+    public int bandwidthMBps;
+
+    @Param({"0", "20"})
+    public int latencyMs;
+
+    /** Fraction of UploadPart requests answered with 500/503. */
+    @Param({"0", "0.05"})
+    public double partFailureRate;
+
+    @Param({"4"})
+    public int concurrentUploads;
+
+    @Param({"zip"})
+    public String format;
+
+    private FakeS3Server s3;
+    private BackupStorageService storage;
+    private Path source;
+    private Path seedArchive;
+    private String seedObject;
+    private Map<String,String> seedHashes;
+    private ArchiveFormat archiveFormat;
+    private Path scratch;
+    private int run;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        source = Datasets.world(Files.createTempDirectory("bf-bench-"), 2000, 8, 8);
+        s3 = FakeS3Server.start();
+        storage = new BackupStorageService(s3.endpoint(), false, "bench", "bench", BUCKET, "bench", "e2e");
+        storage.setUploadConcurrency(concurrentUploads, 5);
+        var seed = CompressionUtils.compress(source, format, HashUtils.SHA256, 3, 1);
+        seedArchive = seed.archive;
+        seedHashes = seed.hashes;
+        archiveFormat = seed.format;
+        seedObject = "bench/seed." + archiveFormat.extension();
+        storage.uploadFile(seedArchive, seedObject, 8 * 1024 * 1024, 8 * 1024 * 1024);
+        s3.bandwidth(bandwidthMBps * 1024L * 1024L).latency(latencyMs).failures(partFailureRate, "UploadPart");
+    }
+
+    @Setup(Level.Iteration)
+    public void newScratch() throws IOException {
+        scratch = Files.createTempDirectory("bf-bench-e2e-");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteScratch() {
+        FileUtils.deleteQuietly(scratch);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        System.out.println("fake-s3: " + s3.requests() + " requests, " + s3.injectedFailures() + " injected failures");
+        storage.close();
+        s3.close();
+        FileUtils.deleteQuietly(source);
+        Files.deleteIfExists(seedArchive);
+    }
+
+    /** Compress with hashes, then upload in 8 MiB parts. */
+    @Benchmark
+    public long backup() throws Exception {
+        var result = CompressionUtils.compress(source, format, HashUtils.SHA256, 3, 1);
+        try {
+            storage.uploadFile(result.archive, "bench/full-" + (run++) + "." + result.format.extension(), 8 * 1024 * 1024, 8 * 1024 * 1024);
+            return Files.size(result.archive);
+        } finally {
+            Files.deleteIfExists(result.archive);
+        }
+    }
+
+    /** Download the archive and extract everything. */
+    @Benchmark
+    public Path restore() throws Exception {
+        Path archive = scratch.resolve("restore." + archiveFormat.extension());
+        storage.downloadFile(seedObject, archive);
+        Path dest = scratch.resolve("out");
+        ZipExtractUtils.extractFiltered(archive, archiveFormat, dest, null);
+        return dest;
+    }
+
+    /** Download the archive and check every entry against the recorded hashes. */
+    @Benchmark
+    public int verify() throws Exception {
+        Path archive = scratch.resolve("verify." + archiveFormat.extension());
+        storage.downloadFile(seedObject, archive);
+        int[] checked = new int[1];
+        byte[] buf = new byte[64 * 1024];
+        ZipExtractUtils.forEachEntry(archive, archiveFormat, null, (name, data) -> {
+            MessageDigest md = HashUtils.newSha256();
+            int r;
+            while ((r = data.read(buf)) > 0) md.update(buf, 0, r);
+            String expected = seedHashes.get(name);
+            if (expected != null && !expected.equals(HashUtils.toHex(md.digest()))) throw new IOException("Hash mismatch: " + name);
+            checked[0]++;
+        });
+        if (checked[0] != seedHashes.size()) throw new IOException("Verified " + checked[0] + " of " + seedHashes.size() + " entries");
+        return checked[0];
+    }
+
+    /** Ranged read of the archive tail, where restore tools find a zip's central directory. */
+    @Benchmark
+    public long rangeGet() throws Exception {
+        long size = Files.size(seedArchive);
+        long len = Math.min(size, 64 * 1024);
+        try (InputStream in = storage.openRange(seedObject, size - len, len)) {
+            return in.transferTo(java.io.OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.c4g7.backupflow.bench;
+
+import com.c4g7.backupflow.util.ExclusionMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Exclusion checks per file: the compiled {@link ExclusionMatcher} against the previous approach of
+ * turning every pattern into a regex for every file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExclusionBenchmark {
+    private static final int PATHS = 10_000;
+
+    /** The patterns shipped in config.yml. */
+    private static final List<String> PATTERNS = List.of(
+            "cache/**", "logs/*.log.gz", "world/session.lock", "**/uid.dat", "**/session.lock",
+            "plugins/**/cache/**", "plugins/**/temp/**", "plugins/**/tmp/**", "plugins/**/logs/*.log.gz",
+            "**/temp/**", "**/tmp/**", "plugins/BackupFlow/work/**", "**/dynmap/web/tiles/**",
+            "**/BlueMap/web/data/**", "**/PlotSquared/schematics/**", ".git/**", ".gitignore", ".idea/**", "*.iml");
+
+    private List<String> paths;
+    private ExclusionMatcher matcher;
+
+    @Setup
+    public void setup() {
+        paths = Datasets.serverPaths(PATHS);
+        matcher = ExclusionMatcher.compile(PATTERNS, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public int compiled() {
+        int excluded = 0;
+        for (String p : paths) if (matcher.excludes(p)) excluded++;
+        return excluded;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public int regexPerFile() {
+        int excluded = 0;
+        for (String p : paths) {
+            for (String pattern : PATTERNS) {
+                if (legacyMatches(p, pattern)) { excluded++; break; }
+            }
+        }
+        return excluded;
+    }
+
+    /** The glob-to-regex conversion that used to run for every pattern and file. */
+    private static boolean legacyMatches(String path, String pattern) {
+        String regex = pattern
+                .replace(".", "\\.")
+                .replace("*", ".*")
+                .replace("?", ".")
+                .replace("/**", "/.*");
+        regex = regex.replace(".*/..*", "(?:.*/)?.*");
+        return Pattern.matches(regex, path);
+    }
+}
@@ -0,0 +1,78 @@
+package com.c4g7.backupflow.bench;
+
+import com.c4g7.backupflow.util.ArchiveFormat;
+import com.c4g7.backupflow.util.CompressionUtils;
+import com.c4g7.backupflow.util.FileUtils;
+import com.c4g7.backupflow.util.ZipExtractUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/** Restore-side extraction of a full archive, everything or only the plugins section. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractBenchmark {
+    @Param({"zip", "zstd"})
+    public String format;
+
+    @Param({"all", "plugins"})
+    public String section;
+
+    private Path source;
+    private Path archive;
+    private ArchiveFormat archiveFormat;
+    private Path dest;
+    private Predicate<String> selector;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        source = Datasets.world(Files.createTempDirectory("bf-bench-"), 2000, 8, 8);
+        var result = CompressionUtils.compress(source, format, (String) null, 3, 1);
+        archive = result.archive;
+        archiveFormat = result.format;
+        selector = ZipExtractUtils.buildSelector(section.equals("all") ? Set.of() : Set.of(section));
+    }
+
+    @Setup(Level.Iteration)
+    public void newDest() throws IOException {
+        dest = Files.createTempDirectory("bf-bench-restore-");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteDest() {
+        FileUtils.deleteQuietly(dest);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        FileUtils.deleteQuietly(source);
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public Path extract() throws IOException {
+        ZipExtractUtils.extractFiltered(archive, archiveFormat, dest, selector);
+        return dest;
+    }
+}
@@ -0,0 +1,446 @@
+package com.c4g7.backupflow.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for an S3 endpoint, so the real MinIO client code path can be benchmarked
+ * offline. Path-style requests, no authentication, objects kept in memory. Supports put, multipart
+ * (initiate, upload part, complete, abort), get with Range, head, delete, multi-object delete,
+ * ListObjectsV2 and GetBucketLocation.
+ * <p>
+ * Link conditions can be changed while running: a bandwidth cap shared by all transfers in both
+ * directions, a fixed latency added to every request, and a rate of injected 500/503 errors for
+ * chosen operations (request bodies are still read first, as a real server would).
+ */
+public final class FakeS3Server implements AutoCloseable {
+    private static final String NS = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final int IO_CHUNK = 64 * 1024;
+
+    private record StoredObject(byte[] data, String etag, long lastModified) {}
+
+    private record Upload(String bucket, String key, ConcurrentSkipListMap<Integer, byte[]> parts) {}
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, ConcurrentSkipListMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    private volatile long bandwidthBytesPerSec;
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+    private volatile Set<String> failureOperations = Set.of();
+    private final SplittableRandom random = new SplittableRandom(1);
+    private final Object linkLock = new Object();
+    private long linkFreeAt;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private FakeS3Server(HttpServer server) {
+        this.server = server;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "FakeS3-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /** Starts a server on a free loopback port. */
+    public static FakeS3Server start() throws IOException {
+        FakeS3Server s = new FakeS3Server(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128));
+        s.server.start();
+        return s;
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Caps the combined upload and download rate; 0 for unlimited. */
+    public FakeS3Server bandwidth(long bytesPerSec) {
+        this.bandwidthBytesPerSec = Math.max(0, bytesPerSec);
+        return this;
+    }
+
+    /** Delay added before every response, like a round trip to a remote endpoint. */
+    public FakeS3Server latency(long millis) {
+        this.latencyMillis = Math.max(0, millis);
+        return this;
+    }
+
+    /**
+     * Fails {@code rate} of the requests for the given operations (for example {@code UploadPart},
+     * {@code PutObject}, {@code GetObject}, {@code ListObjects}; none means every operation except
+     * {@code GetBucketLocation}) with 500 InternalError or 503 SlowDown.
+     */
+    public FakeS3Server failures(double rate, String... operations) {
+        this.failureOperations = Set.of(operations);
+        this.failureRate = Math.max(0, Math.min(1, rate));
+        return this;
+    }
+
+    public long requests() { return requests.get(); }
+
+    public long injectedFailures() { return injectedFailures.get(); }
+
+    public long bytesReceived() { return bytesReceived.get(); }
+
+    public long bytesSent() { return bytesSent.get(); }
+
+    /** Stored object content, or null. */
+    public byte[] object(String bucket, String key) {
+        var objects = buckets.get(bucket);
+        StoredObject o = objects != null ? objects.get(key) : null;
+        return o != null ? o.data : null;
+    }
+
+    public int objectCount(String bucket) {
+        var objects = buckets.get(bucket);
+        return objects != null ? objects.size() : 0;
+    }
+
+    public void clear() {
+        buckets.clear();
+        uploads.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        try (ex) {
+            String path = ex.getRequestURI().getPath();
+            if (path.startsWith("/")) path = path.substring(1);
+            int slash = path.indexOf('/');
+            String bucket = slash < 0 ? path : path.substring(0, slash);
+            String key = slash < 0 ? "" : path.substring(slash + 1);
+            Map<String, String> query = parseQuery(ex.getRequestURI().getRawQuery());
+            String method = ex.getRequestMethod();
+            String op = operation(method, key, query);
+
+            byte[] body = readBody(ex);
+            if (latencyMillis > 0) sleep(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+            if (shouldFail(op)) {
+                injectedFailures.incrementAndGet();
+                boolean slowDown = random.nextBoolean();
+                error(ex, slowDown ? 503 : 500, slowDown ? "SlowDown" : "InternalError", "Injected failure", bucket, key);
+                return;
+            }
+            var objects = buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<>());
+            switch (op) {
+                case "GetBucketLocation" -> xml(ex, 200, "<LocationConstraint xmlns=\"" + NS + "\">us-east-1</LocationConstraint>");
+                case "HeadBucket", "CreateBucket" -> empty(ex, 200);
+                case "ListObjects" -> list(ex, bucket, objects, query);
+                case "DeleteObjects" -> deleteObjects(ex, objects, body);
+                case "CreateMultipartUpload" -> {
+                    String id = UUID.randomUUID().toString();
+                    uploads.put(id, new Upload(bucket, key, new ConcurrentSkipListMap<>()));
+                    xml(ex, 200, "<InitiateMultipartUploadResult xmlns=\"" + NS + "\"><Bucket>" + esc(bucket) + "</Bucket><Key>"
+                            + esc(key) + "</Key><UploadId>" + id + "</UploadId></InitiateMultipartUploadResult>");
+                }
+                case "UploadPart" -> {
+                    Upload u = uploads.get(query.get("uploadId"));
+                    if (u == null) { error(ex, 404, "NoSuchUpload", "Upload does not exist", bucket, key); return; }
+                    u.parts.put(Integer.parseInt(query.get("partNumber")), body);
+                    ex.getResponseHeaders().set("ETag", "\"" + md5(body) + "\"");
+                    empty(ex, 200);
+                }
+                case "CompleteMultipartUpload" -> complete(ex, objects, bucket, key, query.get("uploadId"), body);
+                case "AbortMultipartUpload" -> {
+                    uploads.remove(query.get("uploadId"));
+                    empty(ex, 204);
+                }
+                case "PutObject" -> {
+                    StoredObject o = new StoredObject(body, md5(body), System.currentTimeMillis());
+                    objects.put(key, o);
+                    ex.getResponseHeaders().set("ETag", "\"" + o.etag + "\"");
+                    empty(ex, 200);
+                }
+                case "DeleteObject" -> {
+                    objects.remove(key);
+                    empty(ex, 204);
+                }
+                case "HeadObject", "GetObject" -> get(ex, bucket, key, objects.get(key), op.equals("HeadObject"));
+                default -> error(ex, 501, "NotImplemented", "Unsupported request " + method + " " + op, bucket, key);
+            }
+        } catch (RuntimeException e) {
+            try { error(ex, 500, "InternalError", String.valueOf(e), "", ""); } catch (IOException ignored) { }
+        }
+    }
+
+    private static String operation(String method, String key, Map<String, String> q) {
+        boolean bucketLevel = key.isEmpty();
+        return switch (method) {
+            case "GET" -> bucketLevel ? (q.containsKey("location") ? "GetBucketLocation" : "ListObjects") : "GetObject";
+            case "HEAD" -> bucketLevel ? "HeadBucket" : "HeadObject";
+            case "PUT" -> bucketLevel ? "CreateBucket" : q.containsKey("uploadId") ? "UploadPart" : "PutObject";
+            case "POST" -> bucketLevel ? (q.containsKey("delete") ? "DeleteObjects" : "Unknown")
+                    : q.containsKey("uploads") ? "CreateMultipartUpload" : q.containsKey("uploadId") ? "CompleteMultipartUpload" : "Unknown";
+            case "DELETE" -> bucketLevel ? "DeleteBucket" : q.containsKey("uploadId") ? "AbortMultipartUpload" : "DeleteObject";
+            default -> "Unknown";
+        };
+    }
+
+    private boolean shouldFail(String op) {
+        double rate = failureRate;
+        if (rate <= 0 || op.equals("GetBucketLocation")) return false;
+        Set<String> ops = failureOperations;
+        if (!ops.isEmpty() && !ops.contains(op)) return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private void complete(HttpExchange ex, Map<String, StoredObject> objects, String bucket, String key, String uploadId, byte[] body) throws IOException {
+        Upload u = uploadId != null ? uploads.get(uploadId) : null;
+        if (u == null) { error(ex, 404, "NoSuchUpload", "Upload does not exist", bucket, key); return; }
+        Matcher m = PART_NUMBER.matcher(new String(body, StandardCharsets.UTF_8));
+        java.io.ByteArrayOutputStream data = new java.io.ByteArrayOutputStream();
+        int count = 0;
+        while (m.find()) {
+            byte[] part = u.parts.get(Integer.parseInt(m.group(1)));
+            if (part == null) { error(ex, 400, "InvalidPart", "Part " + m.group(1) + " was not uploaded", bucket, key); return; }
+            data.write(part);
+            count++;
+        }
+        uploads.remove(uploadId);
+        byte[] bytes = data.toByteArray();
+        StoredObject o = new StoredObject(bytes, md5(bytes) + "-" + count, System.currentTimeMillis());
+        objects.put(key, o);
+        xml(ex, 200, "<CompleteMultipartUploadResult xmlns=\"" + NS + "\"><Location>" + esc(endpoint() + "/" + bucket + "/" + key)
+                + "</Location><Bucket>" + esc(bucket) + "</Bucket><Key>" + esc(key) + "</Key><ETag>\"" + o.etag
+                + "\"</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void get(HttpExchange ex, String bucket, String key, StoredObject o, boolean head) throws IOException {
+        if (o == null) {
+            if (head) empty(ex, 404);
+            else error(ex, 404, "NoSuchKey", "The specified key does not exist.", bucket, key);
+            return;
+        }
+        long total = o.data.length;
+        long start = 0, end = total - 1;
+        int status = 200;
+        String range = ex.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=") && !head) {
+            String[] r = range.substring(6).split("-", 2);
+            if (r[0].isEmpty()) { // suffix range
+                start = Math.max(0, total - Long.parseLong(r[1]));
+            } else {
+                start = Long.parseLong(r[0]);
+                if (r.length > 1 && !r[1].isEmpty()) end = Math.min(end, Long.parseLong(r[1]));
+            }
+            if (start >= total || start > end) {
+                error(ex, 416, "InvalidRange", "The requested range is not satisfiable", bucket, key);
+                return;
+            }
+            status = 206;
+            ex.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        }
+        var h = ex.getResponseHeaders();
+        h.set("ETag", "\"" + o.etag + "\"");
+        h.set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(o.lastModified).atOffset(ZoneOffset.UTC)));
+        h.set("Content-Type", "application/octet-stream");
+        h.set("Accept-Ranges", "bytes");
+        long length = end - start + 1;
+        if (head) {
+            h.set("Content-Length", Long.toString(total));
+            ex.sendResponseHeaders(200, -1);
+            return;
+        }
+        ex.sendResponseHeaders(status, length);
+        OutputStream out = ex.getResponseBody();
+        for (long off = start; off <= end; off += IO_CHUNK) {
+            int n = (int) Math.min(IO_CHUNK, end + 1 - off);
+            pace(n);
+            out.write(o.data, (int) off, n);
+            bytesSent.addAndGet(n);
+        }
+    }
+
+    private void list(HttpExchange ex, String bucket, NavigableMap<String, StoredObject> objects, Map<String, String> q) throws IOException {
+        String prefix = q.getOrDefault("prefix", "");
+        String delimiter = q.get("delimiter");
+        if (delimiter != null && delimiter.isEmpty()) delimiter = null;
+        int maxKeys = Math.max(1, Math.min(1000, Integer.parseInt(q.getOrDefault("max-keys", "1000"))));
+        String token = q.get("continuation-token");
+        String after = token != null ? token : q.get("start-after");
+        NavigableMap<String, StoredObject> view = after != null ? objects.tailMap(after, false) : objects;
+        StringBuilder contents = new StringBuilder();
+        Set<String> prefixes = new LinkedHashSet<>();
+        String last = null;
+        int count = 0;
+        boolean truncated = false;
+        for (var e : view.entrySet()) {
+            String k = e.getKey();
+            if (!k.startsWith(prefix)) {
+                if (k.compareTo(prefix) > 0) break;
+                continue;
+            }
+            if (after != null && delimiter != null && after.endsWith(delimiter) && k.startsWith(after)) continue; // rest of a returned prefix
+            if (count == maxKeys) { truncated = true; break; }
+            if (delimiter != null) {
+                int d = k.indexOf(delimiter, prefix.length());
+                if (d >= 0) {
+                    String common = k.substring(0, d + delimiter.length());
+                    if (prefixes.add(common)) { count++; last = common; }
+                    continue;
+                }
+            }
+            StoredObject o = e.getValue();
+            contents.append("<Contents><Key>").append(esc(k)).append("</Key><LastModified>").append(ISO.format(Instant.ofEpochMilli(o.lastModified)))
+                    .append("</LastModified><ETag>\"").append(o.etag).append("\"</ETag><Size>").append(o.data.length)
+                    .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+            count++;
+            last = k;
+        }
+        StringBuilder sb = new StringBuilder("<ListBucketResult xmlns=\"" + NS + "\">");
+        sb.append("<Name>").append(esc(bucket)).append("</Name><Prefix>").append(esc(prefix)).append("</Prefix>");
+        if (delimiter != null) sb.append("<Delimiter>").append(esc(delimiter)).append("</Delimiter>");
+        sb.append("<KeyCount>").append(count).append("</KeyCount><MaxKeys>").append(maxKeys).append("</MaxKeys>");
+        sb.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (token != null) sb.append("<ContinuationToken>").append(esc(token)).append("</ContinuationToken>");
+        if (truncated && last != null) sb.append("<NextContinuationToken>").append(esc(last)).append("</NextContinuationToken>");
+        sb.append(contents);
+        for (String p : prefixes) sb.append("<CommonPrefixes><Prefix>").append(esc(p)).append("</Prefix></CommonPrefixes>");
+        sb.append("</ListBucketResult>");
+        xml(ex, 200, sb.toString());
+    }
+
+    private void deleteObjects(HttpExchange ex, Map<String, StoredObject> objects, byte[] body) throws IOException {
+        Matcher m = DELETE_KEY.matcher(new String(body, StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder("<DeleteResult xmlns=\"" + NS + "\">");
+        boolean quiet = new String(body, StandardCharsets.UTF_8).contains("<Quiet>true</Quiet>");
+        while (m.find()) {
+            String key = unesc(m.group(1));
+            objects.remove(key);
+            if (!quiet) sb.append("<Deleted><Key>").append(esc(key)).append("</Key></Deleted>");
+        }
+        xml(ex, 200, sb.append("</DeleteResult>").toString());
+    }
+
+    private byte[] readBody(HttpExchange ex) throws IOException {
+        InputStream in = ex.getRequestBody();
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        byte[] buf = new byte[IO_CHUNK];
+        int r;
+        while ((r = in.read(buf)) > 0) {
+            pace(r);
+            out.write(buf, 0, r);
+            bytesReceived.addAndGet(r);
+        }
+        return out.toByteArray();
+    }
+
+    /** Holds the caller until the shared link has carried {@code bytes}. */
+    private void pace(int bytes) {
+        long bps = bandwidthBytesPerSec;
+        if (bps <= 0) return;
+        long cost = bytes * 1_000_000_000L / bps;
+        long wait;
+        synchronized (linkLock) {
+            long now = System.nanoTime();
+            linkFreeAt = Math.max(now, linkFreeAt) + cost;
+            wait = linkFreeAt - now;
+        }
+        sleep(wait);
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void xml(HttpExchange ex, int status, String body) throws IOException {
+        byte[] b = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/xml");
+        ex.sendResponseHeaders(status, b.length);
+        ex.getResponseBody().write(b);
+    }
+
+    private static void empty(HttpExchange ex, int status) throws IOException {
+        ex.sendResponseHeaders(status, -1);
+    }
+
+    private static void error(HttpExchange ex, int status, String code, String message, String bucket, String key) throws IOException {
+        if (ex.getRequestMethod().equals("HEAD")) {
+            empty(ex, status);
+            return;
+        }
+        xml(ex, status, "<Error><Code>" + code + "</Code><Message>" + esc(message) + "</Message><BucketName>" + esc(bucket)
+                + "</BucketName><Key>" + esc(key) + "</Key><Resource>" + esc(ex.getRequestURI().getPath()) + "</Resource><RequestId>"
+                + Long.toHexString(System.nanoTime()) + "</RequestId><HostId>fake-s3</HostId></Error>");
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String v = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            q.put(k, v);
+        }
+        return q;
+    }
+
+    private static String md5(byte[] data) {
+        try {
+            return HEX.formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String esc(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unesc(String s) {
+        return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,55 @@
+package com.c4g7.backupflow.bench;
+
+import com.c4g7.backupflow.util.HashUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Digest throughput on a small player file and on a region-sized buffer. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+    @Param({"4096", "8388608"})
+    public int size;
+
+    @Param({"sha256", "blake3", "xxh64"})
+    public String algorithm;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new SplittableRandom(1).nextBytes(data);
+    }
+
+    /** The one-shot helper used for chunk hashes. */
+    @Benchmark
+    public String sha256Bytes() {
+        return HashUtils.sha256(data);
+    }
+
+    /** The streaming digest used while archiving, in 64 KiB updates like the archive writers. */
+    @Benchmark
+    public byte[] digest() {
+        MessageDigest md = HashUtils.newDigest(algorithm);
+        for (int off = 0; off < data.length; off += 65536) md.update(data, off, Math.min(65536, data.length - off));
+        return md.digest();
+    }
+}
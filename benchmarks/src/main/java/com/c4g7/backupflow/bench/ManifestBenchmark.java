@@ -0,0 +1,62 @@
+package com.c4g7.backupflow.bench;
+
+import com.c4g7.backupflow.util.ArchiveFormat;
+import com.c4g7.backupflow.util.FileUtils;
+import com.c4g7.backupflow.util.HashUtils;
+import com.c4g7.backupflow.util.ManifestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Manifest serialization and write with one hash entry per archived file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int files;
+
+    private Path dir;
+    private Map<String,String> hashes;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bf-bench-manifest-");
+        hashes = new LinkedHashMap<>();
+        int i = 0;
+        for (String p : Datasets.serverPaths(files)) {
+            hashes.put(p + "#" + i, HashUtils.sha256(Integer.toString(i++).getBytes()));
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Benchmark
+    public Path write() throws IOException {
+        return ManifestBuilder.writeManifest(dir, "manifest.json", "bench", "bench-server", List.of("full-0.zip"),
+                hashes, HashUtils.SHA256, ArchiveFormat.ZIP);
+    }
+}
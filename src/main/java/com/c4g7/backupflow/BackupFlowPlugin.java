@@ -1,5 +1,6 @@
 package com.c4g7.backupflow;
 
+import com.c4g7.backupflow.util.SourceRoot;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -9,18 +10,16 @@ import java.nio.file.*;
 import java.time.Instant;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.regex.Pattern;
 
 public class BackupFlowPlugin extends JavaPlugin {
     private BackupStorageService storage;
     private FileConfiguration cfg;
-    private int taskId = -1;
+    private com.c4g7.backupflow.jobs.JobScheduler jobs;
     private String serverId;
     private volatile boolean backupRunning = false;
     private String prefix;
     private long lastBackupStart = 0L;
     private long lastBackupEnd = 0L;
-    private java.util.List<String> cachedTimestamps = new java.util.concurrent.CopyOnWriteArrayList<>();
     private long lastTimestampCacheAt = 0L;
     private volatile String lastError = null;
 
@@ -30,22 +29,44 @@ public class BackupFlowPlugin extends JavaPlugin {
     private volatile boolean cancelRequested = false;
     private int watchdogTaskId = -1;
     private volatile Thread backupThread = null;
+    private final Object cancelLock = new Object(); // a cancel must not interrupt the worker once it moved on
     private final java.util.concurrent.atomic.AtomicLong filesCopiedThisRun = new java.util.concurrent.atomic.AtomicLong();
     private final java.util.concurrent.atomic.AtomicLong bytesCopiedThisRun = new java.util.concurrent.atomic.AtomicLong();
     private volatile long lastProgressAt = 0L;
     private volatile long totalFilesPlanned = 0L;
     private volatile long totalBytesPlanned = 0L;
     private java.util.Map<String, Long> planBreakdown = java.util.Collections.emptyMap();
-    private volatile String lastContentHash = null;
+    private com.c4g7.backupflow.incremental.ChunkIndex chunkIndex;
+    private final java.util.Map<String, com.c4g7.backupflow.util.FileStateIndex> fileStates = new java.util.concurrent.ConcurrentHashMap<>();
+    private com.c4g7.backupflow.metrics.MetricsServer metricsServer;
+    private final com.c4g7.backupflow.throttle.TickThrottle throttle = new com.c4g7.backupflow.throttle.TickThrottle(() -> backupRunning);
 
     public String pref() { return prefix; }
     public String getServerIdValue() { return serverId; }
     public String getLastPhase() { return lastPhase; }
     public long getLastPhaseAt() { return lastPhaseAt; }
     public boolean isCancelRequested() { return cancelRequested; }
-    public void requestCancel() { if (backupRunning) cancelRequested = true; }
+    /**
+     * Flags the running backup as cancelled and interrupts its thread, so whatever it is waiting
+     * for (copies, chunk reads, uploads) is interrupted too rather than finishing first.
+     */
+    public void requestCancel() {
+        synchronized (cancelLock) {
+            if (!backupRunning) return;
+            cancelRequested = true;
+            Thread t = backupThread;
+            if (t != null) t.interrupt();
+        }
+    }
     public String getLastError() { return lastError; }
-    private void updatePhase(String phase) { lastPhase = phase; lastPhaseAt = System.currentTimeMillis(); }
+    private void updatePhase(String phase) {
+        long now = System.currentTimeMillis();
+        String previous = lastPhase;
+        if (lastPhaseAt > 0 && !"IDLE".equals(previous) && !"DONE".equals(previous) && !"TIMEOUT".equals(previous)) {
+            com.c4g7.backupflow.metrics.Metrics.PHASE_SECONDS.observe(previous, (now - lastPhaseAt) / 1000.0);
+        }
+        lastPhase = phase; lastPhaseAt = now;
+    }
     public long getLastProgressAt() { return lastProgressAt; }
     public long getFilesCopiedThisRun() { return filesCopiedThisRun.get(); }
     public long getBytesCopiedThisRun() { return bytesCopiedThisRun.get(); }
@@ -57,22 +78,17 @@ public class BackupFlowPlugin extends JavaPlugin {
     public double getThroughputBytesPerSec() { long ms = getCurrentElapsedMs(); return ms > 0 ? (bytesCopiedThisRun.get() * 1000.0 / ms) : 0.0; }
     public long getEtaSeconds() { double thr = getThroughputBytesPerSec(); if (thr <= 0 || totalBytesPlanned == 0) return -1; long remaining = totalBytesPlanned - bytesCopiedThisRun.get(); return remaining <=0 ? 0 : (long)Math.ceil(remaining / thr); }
     public java.util.Map<String, Long> getPlanBreakdown() { return planBreakdown; }
+    public com.c4g7.backupflow.throttle.TickThrottle getThrottle() { return throttle; }
+    public int getMetricsPort() { var m = metricsServer; return m != null ? m.port() : -1; }
 
     @Override
     public void onEnable() {
         saveDefaultConfig();
         cfg = getConfig();
+        compileExclusions();
         serverId = detectServerId();
         try {
-            storage = new BackupStorageService(
-                    cfg.getString("s3.endpoint"),
-                    cfg.getBoolean("s3.secure", true),
-                    cfg.getString("s3.accessKey"),
-                    cfg.getString("s3.secretKey"),
-                    cfg.getString("s3.bucket"),
-                    cfg.getString("s3.rootDir"),
-                    serverId
-            );
+            storage = createStorage();
         } catch (Exception e) {
             getLogger().severe("Failed to init S3 storage: " + e.getMessage());
             getServer().getPluginManager().disablePlugin(this);
@@ -81,17 +97,80 @@ public class BackupFlowPlugin extends JavaPlugin {
         try { storage.createRoot(); } catch (Exception ignored) {}
         initPrefix();
         registerCommands();
-        scheduleAutoBackup();
+        configureThrottle();
+        checkHashAlgorithm();
+        getServer().getPluginManager().registerEvents(throttle, this);
+        jobs = new com.c4g7.backupflow.jobs.JobScheduler(getLogger(), java.time.ZoneId.systemDefault());
+        configureJobs();
         listOnStartup();
         startWatchdog();
+        startMetrics();
         getLogger().info("BackupFlow enabled. ServerId=" + serverId);
     }
 
     @Override
     public void onDisable() {
-        if (taskId != -1) Bukkit.getScheduler().cancelTask(taskId);
+        if (jobs != null) jobs.close();
+        if (chunkIndex != null) { try { chunkIndex.close(); } catch (IOException ignored) {} }
         if (storage != null) storage.close();
         if (watchdogTaskId != -1) Bukkit.getScheduler().cancelTask(watchdogTaskId);
+        resumeWorldSaving();
+        stopMetrics();
+    }
+
+    private void configureThrottle() {
+        throttle.configure(cfg.getBoolean("backup.throttle.enabled", true),
+                cfg.getDouble("backup.throttle.targetMspt", 40.0),
+                cfg.getDouble("backup.throttle.minMBps", 2.0),
+                cfg.getDouble("backup.throttle.maxMBps", 0.0));
+    }
+
+    /** Warns about an integrity.hashAlgorithm that backups cannot honour; they use sha256 instead. */
+    private void checkHashAlgorithm() {
+        String name = cfg.getString("integrity.hashAlgorithm", "sha256");
+        if (com.c4g7.backupflow.util.HashUtils.knownAlgorithm(name) != null) return;
+        getLogger().warning("integrity.hashAlgorithm '" + name + "' is not supported (sha256, blake3 or xxh64); manifests use sha256");
+    }
+
+    /** Applies metrics.enabled and (re)binds the scrape endpoint when metrics.port is set. */
+    private void startMetrics() {
+        stopMetrics();
+        boolean enabled = cfg.getBoolean("metrics.enabled", true);
+        com.c4g7.backupflow.metrics.Metrics.setEnabled(enabled);
+        int port = cfg.getInt("metrics.port", 0);
+        if (!enabled || port <= 0) return;
+        String bind = cfg.getString("metrics.bind", "127.0.0.1");
+        try {
+            metricsServer = com.c4g7.backupflow.metrics.MetricsServer.start(bind, port);
+            getLogger().info("Metrics endpoint: http://" + bind + ":" + metricsServer.port() + "/metrics");
+        } catch (IOException e) {
+            getLogger().warning("Metrics endpoint failed to bind " + bind + ":" + port + ": " + e.getMessage());
+        }
+    }
+
+    private void stopMetrics() {
+        if (metricsServer != null) { metricsServer.close(); metricsServer = null; }
+    }
+
+    private BackupStorageService createStorage() {
+        BackupStorageService s = new BackupStorageService(
+                cfg.getString("s3.endpoint"),
+                cfg.getBoolean("s3.secure", true),
+                cfg.getString("s3.accessKey"),
+                cfg.getString("s3.secretKey"),
+                cfg.getString("s3.bucket"),
+                cfg.getString("s3.rootDir"),
+                serverId,
+                cfg.getInt("backup.performance.connectionPoolSize", 10),
+                cfg.getInt("backup.performance.readTimeoutSeconds", 300),
+                cfg.getInt("backup.performance.writeTimeoutSeconds", 300)
+        );
+        s.setUploadConcurrency(cfg.getInt("backup.performance.maxConcurrentUploads", 3),
+                cfg.getInt("backup.performance.partRetries", 3));
+        s.setDownloadConcurrency(cfg.getInt("backup.performance.downloadStreams", 4),
+                Math.max(1, cfg.getInt("backup.performance.downloadSegmentMB", 16)) * 1024L * 1024L,
+                cfg.getInt("backup.performance.partRetries", 3));
+        return s;
     }
 
     private String detectServerId() {
@@ -115,8 +194,11 @@ public class BackupFlowPlugin extends JavaPlugin {
         if (!cfg.getBoolean("autoListOnStart", false)) return;
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
             try {
-                var list = storage.listBackups("full");
-                getLogger().info("Found " + list.size() + " backups (full)");
+                var catalog = storage.catalog();
+                catalog.ensureLoaded();
+                var list = catalog.entries(com.c4g7.backupflow.catalog.BackupCatalog.Type.FULL);
+                var inc = catalog.entries(com.c4g7.backupflow.catalog.BackupCatalog.Type.INC);
+                getLogger().info("Found " + list.size() + " backups (full)" + (inc.isEmpty() ? "" : ", " + inc.size() + " (incremental)"));
             } catch (Exception ex) {
                 getLogger().warning("List on start failed: " + ex.getMessage());
             }
@@ -132,19 +214,59 @@ public class BackupFlowPlugin extends JavaPlugin {
         }
     }
 
-    private void scheduleAutoBackup() {
-        if (!cfg.getBoolean("backup.schedule.enabled", true)) return;
-        long intervalMinutes = cfg.getLong("backup.schedule.intervalMinutes", 60L);
-        long ticks = intervalMinutes * 60L * 20L;
-        long jitter = cfg.getLong("backup.schedule.jitterSeconds", 30L) * 20L;
-        long delay = 100L + ThreadLocalRandom.current().nextLong(jitter + 1);
-        taskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(this, () -> {
-            if (backupRunning) {
-                getLogger().info("Skip scheduled backup: previous still running");
-                return;
-            }
-            startBackupAsync("scheduled", null);
-        }, delay, ticks);
+    /**
+     * Applies the jobs.* limits and off-peak window and (re)arms the schedules: backups on
+     * backup.schedule.cron or every intervalMinutes, retention (backup.retention.prune) and verify of
+     * the newest backup (verify.cron). Triggers only queue jobs; see {@link com.c4g7.backupflow.jobs.JobScheduler}.
+     */
+    private void configureJobs() {
+        jobs.setLimit(com.c4g7.backupflow.jobs.JobScheduler.Resource.DISK, cfg.getInt("jobs.maxDiskJobs", 1));
+        jobs.setLimit(com.c4g7.backupflow.jobs.JobScheduler.Resource.NETWORK, cfg.getInt("jobs.maxNetworkJobs", 2));
+        try {
+            jobs.setOffPeak(com.c4g7.backupflow.jobs.TimeWindow.parse(cfg.getString("jobs.offPeak", "")));
+        } catch (RuntimeException e) {
+            getLogger().warning("Ignoring jobs.offPeak: " + e.getMessage());
+            jobs.setOffPeak(null);
+        }
+        jobs.cancelSchedules();
+        if (cfg.getBoolean("backup.schedule.enabled", true)) {
+            var trigger = trigger("backup.schedule.cron", java.time.Duration.ofMinutes(Math.max(1L, cfg.getLong("backup.schedule.intervalMinutes", 60L))),
+                    java.time.Duration.ofSeconds(5));
+            if (trigger != null) jobs.schedule("backup", trigger, java.time.Duration.ofSeconds(Math.max(0L, cfg.getLong("backup.schedule.jitterSeconds", 30L))),
+                    () -> startBackupAsync("scheduled", null));
+        }
+        if (cfg.getBoolean("backup.retention.prune", false)) {
+            var trigger = trigger("backup.retention.cron", java.time.Duration.ofMinutes(Math.max(1L, cfg.getLong("backup.retention.intervalMinutes", 360L))),
+                    java.time.Duration.ofMinutes(5)); // well clear of startup and the first backup
+            if (trigger != null) jobs.schedule("retention", trigger, java.time.Duration.ofMinutes(1), () -> startRetentionAsync(java.util.Map.of(), null));
+        }
+        String verifyCron = cfg.getString("verify.cron", "");
+        if (verifyCron != null && !verifyCron.isBlank()) {
+            var trigger = trigger("verify.cron", null, null);
+            if (trigger != null) jobs.schedule("verify", trigger, java.time.Duration.ofMinutes(1), this::verifyNewestAsync);
+        }
+    }
+
+    /** The cron schedule at {@code cronPath}, else every {@code period} (null = no fallback); null when the cron does not parse. */
+    private com.c4g7.backupflow.jobs.JobScheduler.Trigger trigger(String cronPath, java.time.Duration period, java.time.Duration initialDelay) {
+        String cron = cfg.getString(cronPath, "");
+        if (cron == null || cron.isBlank()) return period == null ? null : com.c4g7.backupflow.jobs.JobScheduler.Trigger.every(period, initialDelay);
+        try {
+            return com.c4g7.backupflow.jobs.CronSchedule.parse(cron);
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Not scheduling " + cronPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public com.c4g7.backupflow.jobs.JobScheduler getJobs() { return jobs; }
+
+    /** Tells the issuer, if any, where a submitted job stands. */
+    private void reportSubmission(com.c4g7.backupflow.jobs.JobScheduler.Submission sub, org.bukkit.command.CommandSender sender, String what) {
+        if (sender == null || sub.started()) return;
+        if (sub.coalesced()) sender.sendMessage(pref() + "§e" + what + " is already queued; not adding another");
+        else if (!sub.waitingFor().isEmpty()) sender.sendMessage(pref() + "§e" + what + " queued behind: §f" + String.join(", ", sub.waitingFor()));
+        else sender.sendMessage(pref() + "§e" + what + " queued");
     }
 
     private void startWatchdog() {
@@ -157,8 +279,8 @@ public class BackupFlowPlugin extends JavaPlugin {
             if (hard > 0 && elapsed > hard) {
                 getLogger().warning("Backup watchdog timeout exceeded (" + elapsed + "ms). Marking as failed.");
                 lastError = "Timeout after " + elapsed + "ms phase=" + lastPhase;
+                requestCancel();
                 backupRunning = false;
-                cancelRequested = true;
                 updatePhase("TIMEOUT");
                 return;
             }
@@ -175,35 +297,52 @@ public class BackupFlowPlugin extends JavaPlugin {
     }
 
     public void runBackup(String reason) throws Exception {
+        if (isIncrementalMode()) {
+            runIncrementalBackup(reason);
+            return;
+        }
         Instant ts = Instant.now();
         lastBackupStart = System.currentTimeMillis();
         String pfx = storage.beginFullBackupKeyPrefix(ts);
         Path tempRoot = ensureTemp();
-        Path buildDir = Files.createTempDirectory(tempRoot, "bf-build-");
+        boolean streaming = cfg.getBoolean("backup.performance.streaming", false);
+        Path buildDir = streaming ? null : Files.createTempDirectory(tempRoot, "bf-build-");
         try {
-            updatePhase("COLLECT");
-            collectSources(buildDir);
-            if (cancelRequested) throw new RuntimeException("Cancelled");
-            updatePhase("COMPRESS");
             boolean wantHashes = cfg.getBoolean("integrity.hashes", true);
-            var comp = com.c4g7.backupflow.util.CompressionUtils.compress(buildDir, cfg.getString("backup.compression", "zip"), wantHashes);
-            String fileName = "full-" + ts.toEpochMilli() + "." + (cfg.getString("backup.compression", "zip").equalsIgnoreCase("gz") ? "tar.gz" : "zip");
-            if (cancelRequested) throw new RuntimeException("Cancelled");
-            updatePhase("UPLOAD_ARCHIVE");
-            int partSizeMB = cfg.getInt("backup.performance.uploadPartSizeMB", 64);
-            int bufferSizeMB = cfg.getInt("backup.performance.uploadBufferSizeMB", 8);
-            storage.uploadFile(comp.archive, pfx + fileName, partSizeMB * 1024 * 1024, bufferSizeMB * 1024 * 1024);
+            String hashAlgorithm = wantHashes ? com.c4g7.backupflow.util.HashUtils.algorithm(cfg.getString("integrity.hashAlgorithm", "sha256")) : null;
+            var format = com.c4g7.backupflow.util.ArchiveFormat.fromConfig(cfg.getString("backup.compression", "zip"));
+            java.util.Map<String,String> hashes;
+            String fileName = "full-" + ts.toEpochMilli() + "." + format.extension();
+            if (streaming) {
+                // COLLECT, COMPRESS and UPLOAD_ARCHIVE overlap: files are archived straight into the upload
+                updatePhase("STREAM");
+                hashes = streamBackup(pfx + fileName, hashAlgorithm, format);
+            } else {
+                updatePhase("COLLECT");
+                collectSources(buildDir);
+                if (cancelRequested) throw new RuntimeException("Cancelled");
+                updatePhase("COMPRESS");
+                var comp = com.c4g7.backupflow.util.CompressionUtils.compress(buildDir, format.extension(), hashAlgorithm,
+                        compressionLevel(format), compressThreads());
+                if (cancelRequested) throw new RuntimeException("Cancelled");
+                updatePhase("UPLOAD_ARCHIVE");
+                int partSizeMB = cfg.getInt("backup.performance.uploadPartSizeMB", 64);
+                int bufferSizeMB = cfg.getInt("backup.performance.uploadBufferSizeMB", 8);
+                storage.uploadFile(comp.archive, pfx + fileName, partSizeMB * 1024 * 1024, bufferSizeMB * 1024 * 1024);
+                hashes = comp.hashes;
+            }
             if (cfg.getBoolean("manifest.storeInBucket", true)) {
                 Path manifest;
                 updatePhase("WRITE_MANIFEST");
-                if (wantHashes && comp.hashes != null && !comp.hashes.isEmpty()) {
-                    manifest = com.c4g7.backupflow.util.ManifestBuilder.writeManifestWithHashes(tempRoot, storage.randomManifestName(ts), reason, serverId, List.of(fileName), comp.hashes);
-                } else {
-                    manifest = com.c4g7.backupflow.util.ManifestBuilder.writeSimpleManifest(tempRoot, storage.randomManifestName(ts), reason, serverId, List.of(fileName));
-                }
+                manifest = com.c4g7.backupflow.util.ManifestBuilder.writeManifest(tempRoot, storage.randomManifestName(ts), reason, serverId, List.of(fileName),
+                        wantHashes ? hashes : null, hashAlgorithm, format);
                 updatePhase("UPLOAD_MANIFEST");
                 storage.uploadFile(manifest, storage.manifestObjectName(manifest.getFileName().toString()));
+                if (wantHashes && cfg.getBoolean("manifest.binaryIndex", true)) {
+                    uploadManifestIndex(tempRoot, manifest.getFileName().toString(), pfx + fileName, format, hashAlgorithm, hashes);
+                }
             }
+            recordInCatalog(ts, com.c4g7.backupflow.catalog.BackupCatalog.Type.FULL, pfx + fileName);
             lastBackupEnd = System.currentTimeMillis();
             getLogger().info("Backup complete: " + fileName + " (reason=" + reason + ") took " + (lastBackupEnd - lastBackupStart) + "ms");
             refreshTimestampCacheAsync(true);
@@ -213,86 +352,316 @@ public class BackupFlowPlugin extends JavaPlugin {
         }
     }
 
-    public boolean startBackupAsync(String reason, org.bukkit.command.CommandSender initiator) {
-        if (backupRunning) {
-            if (initiator != null) initiator.sendMessage(pref() + "§cBackup already running");
-            return false;
+    /**
+     * Writes and uploads the binary manifest index next to the JSON manifest. Sizes and archive
+     * offsets come from the uploaded zip's central directory (one ranged read); tar archives have
+     * no directory, so theirs are recorded as unknown. A failure only costs the index: verify falls
+     * back to the JSON manifest.
+     */
+    private void uploadManifestIndex(Path tempRoot, String manifestName, String archiveObject, com.c4g7.backupflow.util.ArchiveFormat format,
+                                     String hashAlgorithm, java.util.Map<String,String> hashes) {
+        if (hashes == null || hashes.isEmpty()) return;
+        Path indexFile = tempRoot.resolve(BackupStorageService.manifestIndexName(manifestName));
+        try {
+            java.util.Map<String,long[]> located = new java.util.HashMap<>();
+            if (!format.isTar()) {
+                var zip = com.c4g7.backupflow.util.RemoteZip.open((offset, length) -> storage.openRange(archiveObject, offset, length), storage.objectSize(archiveObject));
+                for (var e : zip.entries()) located.put(e.name(), new long[]{e.size(), e.offset()});
+            }
+            java.util.List<com.c4g7.backupflow.util.ManifestIndex.Entry> entries = new java.util.ArrayList<>(hashes.size());
+            java.util.HexFormat hex = java.util.HexFormat.of();
+            for (var h : hashes.entrySet()) {
+                long[] at = located.getOrDefault(h.getKey(), new long[]{-1, -1});
+                entries.add(new com.c4g7.backupflow.util.ManifestIndex.Entry(h.getKey(), hex.parseHex(h.getValue()), at[0], at[1]));
+            }
+            com.c4g7.backupflow.util.ManifestIndex.write(indexFile, hashAlgorithm, entries);
+            storage.uploadFile(indexFile, storage.manifestObjectName(indexFile.getFileName().toString()));
+        } catch (Exception e) {
+            getLogger().warning("Manifest index skipped: " + e.getMessage());
+        } finally {
+            try { Files.deleteIfExists(indexFile); } catch (IOException ignored) { }
         }
-        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-            boolean started = false;
+    }
+
+    /**
+     * Streams the live source files through compression into a multipart upload. A producer
+     * thread reads and compresses while the calling thread uploads; the two are joined by a bounded
+     * in-memory pipe so nothing is staged on disk.
+     */
+    private java.util.Map<String,String> streamBackup(String objectName, String hashAlgorithm, com.c4g7.backupflow.util.ArchiveFormat format) throws Exception {
+        List<SourceRoot> roots = resolveSources();
+        int level = compressionLevel(format);
+        int threads = compressThreads();
+        int partSize = cfg.getInt("backup.performance.uploadPartSizeMB", 64) * 1024 * 1024;
+        int bufferMB = Math.max(2, cfg.getInt("backup.performance.streamBufferMB", 16));
+        Path tempDir = Path.of(cfg.getString("restore.tempDir", "plugins/BackupFlow/work/tmp")).toAbsolutePath().normalize();
+        var pipe = new com.c4g7.backupflow.util.BoundedPipe(1024 * 1024, bufferMB);
+        var listener = progressListener();
+        var result = new java.util.concurrent.CompletableFuture<java.util.Map<String,String>>();
+        var state = hashAlgorithm != null ? fileStateIndex("files-full-" + hashAlgorithm, hashAlgorithm) : null;
+        var nextState = state != null ? state.newWriter() : null;
+        Thread producer = new Thread(() -> {
+            try (var out = com.c4g7.backupflow.metrics.Metrics.OUTPUT.meter(pipe.sink())) {
+                result.complete(format.isTar()
+                        ? com.c4g7.backupflow.util.StreamingArchiver.writeTar(roots, com.c4g7.backupflow.util.CompressionUtils.encoder(format, out, level, threads), hashAlgorithm, tempDir, exclusions, nextState, listener)
+                        : com.c4g7.backupflow.util.StreamingArchiver.writeZip(roots, out, hashAlgorithm, level, threads, tempDir, exclusions, nextState, listener));
+            } catch (Throwable t) {
+                pipe.fail(t);
+                result.completeExceptionally(t);
+            }
+        }, "BackupFlow-stream");
+        producer.setDaemon(true);
+        producer.start();
+        try (var in = pipe.source(); nextState) {
             try {
-                cancelRequested = false;
-                updatePhase("INIT");
-                lastBackupStart = System.currentTimeMillis();
-                backupRunning = true; started = true;
-                filesCopiedThisRun.set(0L);
-                bytesCopiedThisRun.set(0L);
-                lastProgressAt = System.currentTimeMillis();
-                backupThread = Thread.currentThread();
-                // Pre-scan to estimate total files/bytes for ETA
+                storage.uploadStream(in, objectName, partSize);
+            } catch (Exception ex) {
+                pipe.fail(ex);
+                producer.interrupt();
+                // Prefer the producer's failure (e.g. Cancelled) over the resulting pipe error
+                if (result.isCompletedExceptionally()) unwrapStreamFailure(result);
+                throw ex;
+            }
+            var hashes = unwrapStreamFailure(result);
+            if (nextState != null) {
                 try {
-                    updatePhase("PRE_SCAN");
-                    long prescanStart = System.currentTimeMillis();
-                    var plan = planSources();
-                    long prescanTime = System.currentTimeMillis() - prescanStart;
-                    getLogger().info("Pre-scan completed in " + prescanTime + "ms");
-                    totalFilesPlanned = plan.files;
-                    totalBytesPlanned = plan.bytes;
-                    planBreakdown = plan.breakdown;
-                } catch (RuntimeException re) {
-                    if ("NO_CHANGES_DETECTED".equals(re.getMessage())) {
-                        if (initiator != null) initiator.sendMessage(pref() + "§aNo changes detected - backup skipped");
-                        getLogger().info("Backup skipped - no changes since last backup");
-                        return;
-                    }
-                    throw re;
-                } catch (Exception scanEx) {
-                    totalFilesPlanned = 0L; totalBytesPlanned = 0L;
-                    planBreakdown = java.util.Collections.emptyMap();
-                    getLogger().warning("Pre-scan failed: " + scanEx.getMessage() + " - continuing without ETA");
+                    nextState.commit();
+                } catch (IOException e) { // the backup is uploaded; the next one just re-hashes everything
+                    getLogger().warning("File state index not updated: " + e.getMessage());
                 }
-                if (initiator != null) initiator.sendMessage(pref() + "§7Backup started...");
-                runBackup(reason);
-                if (initiator != null) initiator.sendMessage(pref() + "§aBackup completed in §f" + getLastBackupDuration() + "ms");
-            } catch (Exception ex) {
-                lastError = ex.getMessage();
-                getLogger().warning("Backup failed (endpoint=" + cfg.getString("s3.endpoint") + ", bucket=" + cfg.getString("s3.bucket") + "): " + ex.getMessage());
-                if (initiator != null) initiator.sendMessage(pref() + "§cBackup failed: " + ex.getMessage());
-            } finally {
-                backupThread = null;
-                if (started) backupRunning = false;
-                updatePhase("IDLE");
+            }
+            return hashes;
+        }
+    }
+
+    /**
+     * Size/mtime/inode and hash of every file seen by the last backup of a kind, in the data folder;
+     * null when {@code backup.performance.fileStateIndex} is off.
+     */
+    private com.c4g7.backupflow.util.FileStateIndex fileStateIndex(String name, String algorithm) {
+        if (!cfg.getBoolean("backup.performance.fileStateIndex", true)) return null;
+        Path file = getDataFolder().toPath().resolve("state").resolve(name + ".idx");
+        return fileStates.computeIfAbsent(name, n -> com.c4g7.backupflow.util.FileStateIndex.open(file, algorithm));
+    }
+
+    /** Level on the codec's own scale: zstd has its own setting, deflate and gzip use compressionLevel. */
+    private int compressionLevel(com.c4g7.backupflow.util.ArchiveFormat format) {
+        return switch (format) {
+            case TAR_ZST -> cfg.getInt("backup.performance.zstdLevel", 3);
+            default -> cfg.getInt("backup.performance.compressionLevel", 6);
+        };
+    }
+
+    /** Compression worker threads (deflate for zip, zstd workers); 1 keeps single-threaded compression. */
+    private int compressThreads() {
+        if (!cfg.getBoolean("backup.performance.parallelCompress", false)) return 1;
+        int threads = cfg.getInt("backup.performance.compressThreads", 0);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    private com.c4g7.backupflow.util.ProgressListener progressListener() {
+        return new com.c4g7.backupflow.util.ProgressListener() {
+            @Override public void onFile(Path file, long bytes) {
+                filesCopiedThisRun.incrementAndGet();
+                bytesCopiedThisRun.addAndGet(bytes);
+                lastProgressAt = System.currentTimeMillis();
+            }
+            @Override public boolean isCancelled() { return cancelRequested; }
+        };
+    }
+
+    public boolean isIncrementalMode() {
+        return "incremental".equalsIgnoreCase(cfg.getString("backup.mode", "full"));
+    }
+
+    private void runIncrementalBackup(String reason) throws Exception {
+        Instant ts = Instant.now();
+        lastBackupStart = System.currentTimeMillis();
+        Path tempRoot = ensureTemp();
+        Path tempDir = tempRoot.toAbsolutePath().normalize();
+        updatePhase("CHUNK_UPLOAD");
+        var res = incrementalEngine().backup(ts, resolveSources(), tempDir, tempRoot, reason, serverId, progressListener());
+        if (cfg.getBoolean("manifest.storeInBucket", true)) {
+            updatePhase("WRITE_MANIFEST");
+            String indexName = res.indexObject.substring(res.indexObject.indexOf("/inc/") + 1);
+            Path manifest = com.c4g7.backupflow.util.ManifestBuilder.writeSimpleManifest(tempRoot, storage.randomManifestName(ts), reason, serverId, List.of(indexName));
+            updatePhase("UPLOAD_MANIFEST");
+            storage.uploadFile(manifest, storage.manifestObjectName(manifest.getFileName().toString()));
+        }
+        recordInCatalog(ts, com.c4g7.backupflow.catalog.BackupCatalog.Type.INC, res.indexObject);
+        lastBackupEnd = System.currentTimeMillis();
+        getLogger().info("Incremental backup complete: " + res.files + " files (" + res.bytes + " bytes), " + res.newChunks + " new chunks ("
+                + res.uploadedBytes + " bytes uploaded), " + res.reusedChunks + " reused (" + res.filesSkipped + " unchanged files and " + res.regionChunksSkipped + " unchanged region chunks not read) (reason=" + reason + ") took " + (lastBackupEnd - lastBackupStart) + "ms");
+        refreshTimestampCacheAsync(true);
+        updatePhase("DONE");
+    }
+
+    private synchronized com.c4g7.backupflow.incremental.IncrementalBackup incrementalEngine() throws IOException {
+        String id = stateId();
+        Path stateDir = getDataFolder().toPath().resolve("state");
+        var index = chunkIndex();
+        int maxChunk = Math.max(1, cfg.getInt("backup.chunkSizeMB", 32)) * 1024 * 1024;
+        int avgChunk = Math.max(64, cfg.getInt("backup.incremental.averageChunkKB", 1024)) * 1024;
+        var engine = new com.c4g7.backupflow.incremental.IncrementalBackup(storage, index, avgChunk, maxChunk,
+                cfg.getInt("backup.performance.compressionLevel", 6),
+                cfg.getInt("backup.performance.maxConcurrentUploads", 3), getLogger());
+        if (cfg.getBoolean("backup.incremental.regionAware", true)) engine.regionAware(stateDir.resolve("regions-" + id));
+        engine.fileState(fileStateIndex("files-" + id, com.c4g7.backupflow.util.HashUtils.SHA256));
+        engine.exclusions(exclusions);
+        engine.readThreads(ioThreads());
+        return engine;
+    }
+
+    /** State is kept per bucket/prefix so pointing the plugin at another bucket never trusts stale entries. */
+    private String stateId() {
+        String key = cfg.getString("s3.bucket") + "/" + storage.chunkPrefix();
+        return com.c4g7.backupflow.util.HashUtils.sha256(key.getBytes(java.nio.charset.StandardCharsets.UTF_8)).substring(0, 12);
+    }
+
+    /** Local index of the chunks in the bucket, shared by the incremental engine and the retention sweep. */
+    private synchronized com.c4g7.backupflow.incremental.ChunkIndex chunkIndex() throws IOException {
+        if (chunkIndex == null) {
+            chunkIndex = com.c4g7.backupflow.incremental.ChunkIndex.load(getDataFolder().toPath().resolve("state").resolve("chunks-" + stateId() + ".idx"));
+        }
+        return chunkIndex;
+    }
+
+    /**
+     * Adds a committed backup to the catalog. The backup itself is already safe in the bucket, so a
+     * failure here is only logged; the next catalog rebuild picks the backup up from the listing.
+     */
+    private void recordInCatalog(Instant ts, com.c4g7.backupflow.catalog.BackupCatalog.Type type, String objectName) {
+        try {
+            long size = -1;
+            try { size = storage.objectSize(objectName); } catch (Exception ignored) { }
+            storage.catalog().add(new com.c4g7.backupflow.catalog.BackupCatalog.Entry(ts.toEpochMilli(), type,
+                    objectName.substring(objectName.lastIndexOf('/') + 1), size));
+        } catch (Exception e) {
+            getLogger().warning("Catalog update failed for " + ts.toEpochMilli() + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isIncrementalBackup(String timestamp) throws Exception {
+        try {
+            var entry = storage.catalog().get(Long.parseLong(timestamp));
+            if (entry != null) return entry.type() == com.c4g7.backupflow.catalog.BackupCatalog.Type.INC;
+        } catch (NumberFormatException ignored) { }
+        return storage.exists(storage.incrementalIndexName(timestamp));
+    }
+
+    /** Full and incremental backup timestamps, oldest first, from the catalog. */
+    public java.util.List<String> listAllBackups() throws Exception {
+        storage.catalog().ensureLoaded();
+        return new java.util.ArrayList<>(storage.catalog().timestamps());
+    }
+
+    private static java.util.Map<String,String> unwrapStreamFailure(java.util.concurrent.CompletableFuture<java.util.Map<String,String>> result) throws Exception {
+        try {
+            return result.get();
+        } catch (java.util.concurrent.ExecutionException ee) {
+            if (ee.getCause() instanceof Exception e) throw e;
+            throw ee;
+        }
+    }
+
+    /**
+     * Queues a backup job. Requests made while a backup is queued are folded into it, so however
+     * often the schedule fires during a long run, at most one backup follows it.
+     */
+    public boolean startBackupAsync(String reason, org.bukkit.command.CommandSender initiator) {
+        var sub = jobs.submit(com.c4g7.backupflow.jobs.JobScheduler.Type.BACKUP, "backup", "backup (" + reason + ")", initiator != null,
+                () -> runBackupJob(reason, initiator));
+        if (initiator == null && sub.coalesced()) getLogger().info("Skip scheduled backup: one is already queued");
+        reportSubmission(sub, initiator, "Backup");
+        return !sub.coalesced();
+    }
+
+    private void runBackupJob(String reason, org.bukkit.command.CommandSender initiator) {
+        boolean started = false;
+        String result = "failed";
+        var allocation = com.c4g7.backupflow.metrics.Metrics.allocationScope();
+        try {
+            cancelRequested = false;
+            updatePhase("INIT");
+            lastBackupStart = System.currentTimeMillis();
+            backupRunning = true; started = true;
+            filesCopiedThisRun.set(0L);
+            bytesCopiedThisRun.set(0L);
+            lastProgressAt = System.currentTimeMillis();
+            backupThread = Thread.currentThread();
+            // Pre-scan to estimate total files/bytes for ETA
+            try {
+                updatePhase("PRE_SCAN");
+                long prescanStart = System.currentTimeMillis();
+                var plan = planSources();
+                long prescanTime = System.currentTimeMillis() - prescanStart;
+                getLogger().info("Pre-scan completed in " + prescanTime + "ms");
+                totalFilesPlanned = plan.files;
+                totalBytesPlanned = plan.bytes;
+                planBreakdown = plan.breakdown;
+            } catch (RuntimeException re) {
+                if ("NO_CHANGES_DETECTED".equals(re.getMessage())) {
+                    if (initiator != null) initiator.sendMessage(pref() + "§aNo changes detected - backup skipped");
+                    getLogger().info("Backup skipped - no changes since last backup");
+                    result = "skipped";
+                    return;
+                }
+                throw re;
+            } catch (Exception scanEx) {
                 totalFilesPlanned = 0L; totalBytesPlanned = 0L;
                 planBreakdown = java.util.Collections.emptyMap();
+                getLogger().warning("Pre-scan failed: " + scanEx.getMessage() + " - continuing without ETA");
             }
-        });
-        return true;
+            if (initiator != null) initiator.sendMessage(pref() + "§7Backup started...");
+            runBackup(reason);
+            if (pendingRootDigests != null) lastRootDigests = pendingRootDigests;
+            result = "success";
+            if (initiator != null) initiator.sendMessage(pref() + "§aBackup completed in §f" + getLastBackupDuration() + "ms");
+        } catch (Exception ex) {
+            lastError = cancelRequested ? "Cancelled" : ex.getMessage(); // an interrupted copy or upload reports its own exception
+            getLogger().warning("Backup failed (endpoint=" + cfg.getString("s3.endpoint") + ", bucket=" + cfg.getString("s3.bucket") + "): " + ex.getMessage());
+            if (initiator != null) initiator.sendMessage(pref() + "§cBackup failed: " + ex.getMessage());
+        } finally {
+            if (!"skipped".equals(result)) allocation.close();
+            com.c4g7.backupflow.metrics.Metrics.BACKUPS.inc(result);
+            pendingRootDigests = null;
+            synchronized (cancelLock) {
+                backupThread = null;
+                Thread.interrupted(); // clear a cancel's interrupt before the job thread is reused
+            }
+            if (started) backupRunning = false;
+            updatePhase("IDLE");
+            totalFilesPlanned = 0L; totalBytesPlanned = 0L;
+            planBreakdown = java.util.Collections.emptyMap();
+        }
     }
 
     public boolean isBackupRunning() { return backupRunning; }
     public long getLastBackupDuration() { return lastBackupEnd > lastBackupStart ? (lastBackupEnd - lastBackupStart) : 0L; }
     public long getLastBackupEnd() { return lastBackupEnd; }
 
+    /** Backup timestamps from the in-memory catalog, for tab completion; never blocks on the bucket. */
     public java.util.List<String> getCachedTimestamps() {
         int ttl = cfg.getInt("timestampCacheSeconds", 60);
         long now = System.currentTimeMillis();
-        if (ttl <= 0 || (now - lastTimestampCacheAt) > ttl * 1000L) {
+        if (!storage.catalog().isLoaded() || ttl <= 0 || (now - lastTimestampCacheAt) > ttl * 1000L) {
             refreshTimestampCacheAsync(false);
         }
-        return cachedTimestamps;
+        return storage.catalog().timestamps();
     }
 
     public void refreshTimestampCacheAsync(boolean force) {
         int ttl = cfg.getInt("timestampCacheSeconds", 60);
         long now = System.currentTimeMillis();
         if (!force && ttl > 0 && (now - lastTimestampCacheAt) < ttl * 1000L) return;
+        lastTimestampCacheAt = now; // one reload in flight at a time
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
             try {
-                var list = storage.listBackups("full");
-                list.sort(String::compareTo);
-                cachedTimestamps.clear();
-                cachedTimestamps.addAll(list);
+                storage.catalog().load(); // one GET of the catalog object; lists the bucket only if it is missing
                 lastTimestampCacheAt = System.currentTimeMillis();
+                if (force && storage.catalog().isReadOnly()) {
+                    getLogger().warning("The backup catalog was written by a newer BackupFlow version; it is left untouched and new backups are not recorded in it");
+                }
             } catch (Exception ex) {
                 lastError = ex.getMessage();
                 getLogger().warning("Timestamp cache refresh failed (endpoint=" + cfg.getString("s3.endpoint") + ", bucket=" + cfg.getString("s3.bucket") + "): " + ex.getMessage());
@@ -304,18 +673,11 @@ public class BackupFlowPlugin extends JavaPlugin {
         try {
             reloadConfig();
             cfg = getConfig();
+            compileExclusions();
             initPrefix();
             BackupStorageService old = this.storage;
             try {
-                this.storage = new BackupStorageService(
-                        cfg.getString("s3.endpoint"),
-                        cfg.getBoolean("s3.secure", true),
-                        cfg.getString("s3.accessKey"),
-                        cfg.getString("s3.secretKey"),
-                        cfg.getString("s3.bucket"),
-                        cfg.getString("s3.rootDir"),
-                        serverId
-                );
+                this.storage = createStorage();
                 try { this.storage.createRoot(); } catch (Exception ignored) {}
             } catch (Exception ex) {
                 getLogger().severe("Reload: failed to initialize new storage: " + ex.getMessage());
@@ -325,8 +687,15 @@ public class BackupFlowPlugin extends JavaPlugin {
             if (old != null) {
                 try { old.close(); } catch (Exception ignore) {}
             }
-            if (taskId != -1) { Bukkit.getScheduler().cancelTask(taskId); taskId = -1; }
-            scheduleAutoBackup();
+            synchronized (this) {
+                // The chunk index is keyed by bucket/prefix; reopen it lazily for the new storage
+                if (chunkIndex != null) { try { chunkIndex.close(); } catch (IOException ignore) {} chunkIndex = null; }
+                fileStates.clear();
+            }
+            configureThrottle();
+            checkHashAlgorithm();
+            configureJobs();
+            startMetrics();
             refreshTimestampCacheAsync(true);
             if (getCachedTimestamps().isEmpty()) getLogger().info("Post-reload: no backups detected yet (endpoint=" + cfg.getString("s3.endpoint") + ")");
             return true;
@@ -336,7 +705,14 @@ public class BackupFlowPlugin extends JavaPlugin {
         }
     }
 
-    private void collectSources(Path buildDir) throws IOException {
+    private static final List<String> SERVER_CONFIG_FILES = List.of(
+            // Comprehensive server configs
+            "server.properties", "bukkit.yml", "spigot.yml", "paper-global.yml", "paper-world-defaults.yml",
+            "purpur.yml", "pufferfish.yml", "airplane.yml",
+            // Permissions and player data
+            "permissions.yml", "ops.json", "whitelist.json", "banned-players.json", "banned-ips.json", "eula.txt");
+
+    private List<SourceRoot> resolveSources() throws IOException {
         List<String> worlds = cfg.getStringList("backup.include.worlds");
         boolean plugins = cfg.getBoolean("backup.include.plugins", true);
         boolean configs = cfg.getBoolean("backup.include.configs", true);
@@ -349,76 +725,182 @@ public class BackupFlowPlugin extends JavaPlugin {
             wildcard = true;
         }
 
+        List<SourceRoot> roots = new java.util.ArrayList<>();
         if (wildcard) {
             // Auto-detect all worlds
             try (var stream = Files.list(Path.of("."))) {
                 stream.filter(p -> Files.isDirectory(p) && Files.exists(p.resolve("level.dat")))
-                        .forEach(p -> {
-                            try { copyIfExists(p, buildDir.resolve("worlds").resolve(p.getFileName().toString())); } catch (IOException ignored) { }
-                        });
+                        .forEach(p -> roots.add(new SourceRoot(p, "worlds/" + p.getFileName())));
             }
             // Include all plugins
-            copyIfExists(Path.of("plugins"), buildDir.resolve("plugins"));
-            
-            // Include comprehensive server configs
-            copyIfExists(Path.of("server.properties"), buildDir.resolve("configs/server.properties"));
-            copyIfExists(Path.of("bukkit.yml"), buildDir.resolve("configs/bukkit.yml"));
-            copyIfExists(Path.of("spigot.yml"), buildDir.resolve("configs/spigot.yml"));
-            copyIfExists(Path.of("paper-global.yml"), buildDir.resolve("configs/paper-global.yml"));
-            copyIfExists(Path.of("paper-world-defaults.yml"), buildDir.resolve("configs/paper-world-defaults.yml"));
-            copyIfExists(Path.of("purpur.yml"), buildDir.resolve("configs/purpur.yml"));
-            copyIfExists(Path.of("pufferfish.yml"), buildDir.resolve("configs/pufferfish.yml"));
-            copyIfExists(Path.of("airplane.yml"), buildDir.resolve("configs/airplane.yml"));
-            
-            // Include permissions and player data
-            copyIfExists(Path.of("permissions.yml"), buildDir.resolve("configs/permissions.yml"));
-            copyIfExists(Path.of("ops.json"), buildDir.resolve("configs/ops.json"));
-            copyIfExists(Path.of("whitelist.json"), buildDir.resolve("configs/whitelist.json"));
-            copyIfExists(Path.of("banned-players.json"), buildDir.resolve("configs/banned-players.json"));
-            copyIfExists(Path.of("banned-ips.json"), buildDir.resolve("configs/banned-ips.json"));
-            copyIfExists(Path.of("eula.txt"), buildDir.resolve("configs/eula.txt"));
-            
+            roots.add(new SourceRoot(Path.of("plugins"), "plugins"));
+            for (String f : SERVER_CONFIG_FILES) roots.add(new SourceRoot(Path.of(f), "configs/" + f));
             // Include logs directory (filtered by exclusions)
-            copyIfExists(Path.of("logs"), buildDir.resolve("logs"));
-            
+            roots.add(new SourceRoot(Path.of("logs"), "logs"));
             // Include additional config directory if exists
-            copyIfExists(Path.of("config"), buildDir.resolve("config"));
-            
-            for (String ex : extra) {
-                if (ex.equals("*")) continue;
-                copyIfExists(Path.of(ex), buildDir.resolve("extra").resolve(ex));
+            roots.add(new SourceRoot(Path.of("config"), "config"));
+        } else {
+            for (String w : worlds) {
+                if (w.equals("*")) continue;
+                roots.add(new SourceRoot(Path.of(w), "worlds/" + w));
+            }
+            if (plugins) roots.add(new SourceRoot(Path.of("plugins"), "plugins"));
+            if (configs) {
+                for (String f : SERVER_CONFIG_FILES) roots.add(new SourceRoot(Path.of(f), "configs/" + f));
             }
-            return;
-        }
-
-        for (String w : worlds) {
-            if (w.equals("*")) continue;
-            copyIfExists(Path.of(w), buildDir.resolve("worlds").resolve(w));
-        }
-        if (plugins) copyIfExists(Path.of("plugins"), buildDir.resolve("plugins"));
-        if (configs) {
-            // Include comprehensive server configs
-            copyIfExists(Path.of("server.properties"), buildDir.resolve("configs/server.properties"));
-            copyIfExists(Path.of("bukkit.yml"), buildDir.resolve("configs/bukkit.yml"));
-            copyIfExists(Path.of("spigot.yml"), buildDir.resolve("configs/spigot.yml"));
-            copyIfExists(Path.of("paper-global.yml"), buildDir.resolve("configs/paper-global.yml"));
-            copyIfExists(Path.of("paper-world-defaults.yml"), buildDir.resolve("configs/paper-world-defaults.yml"));
-            copyIfExists(Path.of("purpur.yml"), buildDir.resolve("configs/purpur.yml"));
-            copyIfExists(Path.of("pufferfish.yml"), buildDir.resolve("configs/pufferfish.yml"));
-            copyIfExists(Path.of("airplane.yml"), buildDir.resolve("configs/airplane.yml"));
-            
-            // Include permissions and player data
-            copyIfExists(Path.of("permissions.yml"), buildDir.resolve("configs/permissions.yml"));
-            copyIfExists(Path.of("ops.json"), buildDir.resolve("configs/ops.json"));
-            copyIfExists(Path.of("whitelist.json"), buildDir.resolve("configs/whitelist.json"));
-            copyIfExists(Path.of("banned-players.json"), buildDir.resolve("configs/banned-players.json"));
-            copyIfExists(Path.of("banned-ips.json"), buildDir.resolve("configs/banned-ips.json"));
-            copyIfExists(Path.of("eula.txt"), buildDir.resolve("configs/eula.txt"));
         }
         for (String ex : extra) {
             if (ex.equals("*")) continue;
-            copyIfExists(Path.of(ex), buildDir.resolve("extra").resolve(ex));
+            roots.add(new SourceRoot(Path.of(ex), "extra/" + ex));
+        }
+        return roots;
+    }
+
+    private void collectSources(Path buildDir) throws IOException {
+        Path tempDir = Path.of(cfg.getString("restore.tempDir", "plugins/BackupFlow/work/tmp")).toAbsolutePath().normalize();
+        List<SourceRoot> roots = resolveSources();
+        if (cfg.getBoolean("backup.snapshot.enabled", true)) {
+            List<SourceRoot> worlds = roots.stream().filter(r -> r.archivePath().startsWith("worlds/")).toList();
+            if (!worlds.isEmpty()) {
+                snapshotWorlds(worlds, buildDir, tempDir);
+                roots = roots.stream().filter(r -> !worlds.contains(r)).toList();
+                updatePhase("COLLECT");
+            }
+        }
+        // Walker threads list directories and queue files; ioThreads virtual threads copy them.
+        // The bounded queue holds the walk back when the copies fall behind
+        int threads = ioThreads();
+        var queue = new java.util.concurrent.ArrayBlockingQueue<CopyTask>(threads * 64);
+        java.util.Set<Path> createdDirs = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        try (var copies = new com.c4g7.backupflow.util.TaskScope("copy", threads)) {
+            for (int i = 0; i < threads; i++) {
+                copies.fork(() -> {
+                    for (CopyTask t = queue.take(); t != CopyTask.END; t = queue.take()) copySource(t, buildDir, createdDirs);
+                    return null;
+                });
+            }
+            com.c4g7.backupflow.util.SourceWalker.walkParallel(roots, tempDir, exclusions, walkThreads(), (file, name, attrs) -> {
+                if (cancelRequested) throw new java.io.InterruptedIOException("Cancelled");
+                enqueue(queue, new CopyTask(file, name, attrs.size()), copies);
+            });
+            for (int i = 0; i < threads; i++) enqueue(queue, CopyTask.END, copies);
+            copies.join();
+        }
+    }
+
+    /** A file found by the walk, with the size its attributes reported. */
+    private record CopyTask(Path file, String name, long size) {
+        static final CopyTask END = new CopyTask(null, null, 0);
+    }
+
+    private static void enqueue(java.util.concurrent.BlockingQueue<CopyTask> queue, CopyTask task, com.c4g7.backupflow.util.TaskScope copies) throws IOException {
+        try {
+            while (!queue.offer(task, 100, java.util.concurrent.TimeUnit.MILLISECONDS)) copies.throwIfFailed(); // no consumers left to wait for
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Cancelled");
+        }
+    }
+
+    /**
+     * Copies one source file into the build directory; a file that vanished or cannot be read is
+     * skipped. Bytes are counted from the walk's attributes (or the bytes actually streamed when
+     * throttled), so no second stat is needed per file.
+     */
+    private void copySource(CopyTask task, Path buildDir, java.util.Set<Path> createdDirs) {
+        Path target = buildDir.resolve(task.name());
+        long bytes = task.size();
+        try {
+            Path parent = target.getParent();
+            if (createdDirs.add(parent)) {
+                try {
+                    Files.createDirectories(parent);
+                } catch (IOException e) {
+                    createdDirs.remove(parent);
+                    throw e;
+                }
+            }
+            if (com.c4g7.backupflow.throttle.IoThrottle.isLimited()) {
+                try (var in = com.c4g7.backupflow.throttle.IoThrottle.throttle(Files.newInputStream(task.file()))) {
+                    bytes = Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                Files.copy(task.file(), target, StandardCopyOption.REPLACE_EXISTING);
+                com.c4g7.backupflow.throttle.IoThrottle.DISK.acquire(bytes); // counted for the throttle's throughput sample
+            }
+        } catch (IOException ignored) {
+            return; // vanished or unreadable
         }
+        filesCopiedThisRun.incrementAndGet();
+        bytesCopiedThisRun.addAndGet(bytes);
+        lastProgressAt = System.currentTimeMillis();
+    }
+
+    /** Files copied, read or hashed at once, each on its own virtual thread. */
+    private int ioThreads() {
+        return Math.max(1, cfg.getInt("backup.performance.ioThreads", 16));
+    }
+
+    /** Directory walker threads for staged backups; 0 means one per CPU core. */
+    private int walkThreads() {
+        int threads = cfg.getInt("backup.performance.walkThreads", 0);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Pauses world saving, flushes every world to disk and captures the world roots into the build
+     * directory (see {@link com.c4g7.backupflow.util.WorldSnapshot}), then turns saving back on.
+     * Saving is off for the flush and the capture only, not for copying plugins and configs or for
+     * the compression and upload that follow. The capture is not throttled, to keep that window short.
+     */
+    private void snapshotWorlds(List<SourceRoot> worlds, Path buildDir, Path tempDir) throws IOException {
+        updatePhase("SNAPSHOT");
+        long pausedAt = System.currentTimeMillis();
+        try {
+            try {
+                Bukkit.getScheduler().callSyncMethod(this, () -> {
+                    for (org.bukkit.World w : Bukkit.getWorlds()) {
+                        if (w.isAutoSave()) { w.setAutoSave(false); savePausedWorlds.add(w); }
+                    }
+                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), "save-all flush");
+                    return null;
+                }).get(SAVE_PAUSE_TIMEOUT_SECONDS, java.util.concurrent.TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException("Interrupted while pausing world saving");
+            } catch (java.util.concurrent.ExecutionException | java.util.concurrent.TimeoutException e) {
+                getLogger().warning("Could not pause and flush world saving (" + e + "); capturing live world files");
+            }
+            var res = com.c4g7.backupflow.throttle.IoThrottle.unthrottled(() -> com.c4g7.backupflow.util.WorldSnapshot.capture(worlds, buildDir, tempDir, exclusions,
+                    cfg.getBoolean("backup.snapshot.hardlinks", true), progressListener()));
+            getLogger().info("World snapshot: " + res.files() + " files (" + res.bytes() + " bytes, " + res.linked() + " hard-linked, "
+                    + (res.reflinks() ? "rest reflinked" : "rest copied") + ") in " + res.millis() + "ms");
+        } finally {
+            // Queued behind the pause task, so it also undoes a pause that ran after a timeout
+            Bukkit.getScheduler().runTask(this, () -> {
+                resumeWorldSaving();
+                getLogger().info("World saving resumed after " + (System.currentTimeMillis() - pausedAt) + "ms");
+            });
+        }
+    }
+
+    private static final long SAVE_PAUSE_TIMEOUT_SECONDS = 30;
+    private final List<org.bukkit.World> savePausedWorlds = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+    /** Main thread only. */
+    private void resumeWorldSaving() {
+        for (org.bukkit.World w : savePausedWorlds) w.setAutoSave(true);
+        savePausedWorlds.clear();
+    }
+
+    /** Exclusion rules compiled once per config load and shared by the pre-scan and every backup path. */
+    private volatile com.c4g7.backupflow.util.ExclusionMatcher exclusions = com.c4g7.backupflow.util.ExclusionMatcher.NONE;
+
+    private void compileExclusions() {
+        List<String> patterns = cfg.getStringList("backup.exclude.patterns");
+        if (patterns.isEmpty()) patterns = com.c4g7.backupflow.util.ExclusionMatcher.DEFAULT_PATTERNS;
+        long maxSizeMB = cfg.getLong("backup.exclude.maxFileSizeMB", 100);
+        exclusions = com.c4g7.backupflow.util.ExclusionMatcher.compile(patterns, maxSizeMB > 0 ? maxSizeMB * 1024 * 1024 : 0);
     }
 
     // Planning structure
@@ -426,9 +908,21 @@ public class BackupFlowPlugin extends JavaPlugin {
         long files; 
         long bytes; 
         java.util.Map<String,Long> breakdown = new java.util.LinkedHashMap<>();
-        StringBuilder hashInput = new StringBuilder(); // For content hash
+        // Change detection: one running digest of path/size/mtime per include root, so memory stays
+        // constant however many files a root holds
+        java.util.Map<String,String> rootDigests = new java.util.LinkedHashMap<>();
+        java.util.Set<String> changedRoots = new java.util.LinkedHashSet<>();
+        String contentHash;
     }
 
+    /** Root digests of the last successful backup; a root whose digest matches is unchanged. */
+    private volatile java.util.Map<String,String> lastRootDigests = java.util.Collections.emptyMap();
+    private volatile java.util.Map<String,String> pendingRootDigests = null;
+    private volatile java.util.Set<String> lastChangedRoots = java.util.Collections.emptySet();
+
+    /** Include roots (as labelled in the pre-scan) that changed since the last successful backup. */
+    public java.util.Set<String> getLastChangedRoots() { return lastChangedRoots; }
+
     private PlanStats planSources() throws IOException {
         PlanStats ps = new PlanStats();
         List<String> worlds = cfg.getStringList("backup.include.worlds");
@@ -448,37 +942,38 @@ public class BackupFlowPlugin extends JavaPlugin {
         // Get temp dir path for exclusion
         String tempDirPath = cfg.getString("restore.tempDir", "plugins/BackupFlow/work/tmp");
         Path tempDir = Path.of(tempDirPath).toAbsolutePath().normalize();
-        
-        java.util.function.Consumer<Path> accumulator = p -> {
-            try {
-                if (Files.isRegularFile(p)) {
-                    // Skip files in temp directory
-                    Path normalized = p.toAbsolutePath().normalize();
-                    if (normalized.startsWith(tempDir)) {
-                        return; // Skip temp files
-                    }
-                    ps.files++;
-                    try { 
-                        long size = Files.size(p);
-                        ps.bytes += size;
-                        
-                        // Add to hash input: path + size + lastModified for change detection
-                        long lastMod = Files.getLastModifiedTime(p).toMillis();
-                        ps.hashInput.append(p.toString()).append(":").append(size).append(":").append(lastMod).append(";");
-                    } catch (IOException ignored) {}
-                }
-            } catch (Exception ignored) {}
-        };
+        var excl = exclusions;
+        // Oversized files are logged here rather than silently dropped by the walker
+        var scanExclusions = excl.withoutSizeLimit();
 
         java.util.function.BiConsumer<String, Path> rootWalk = (label, root) -> {
-            long beforeBytes = ps.bytes; long beforeFiles = ps.files;
             long scanStart = System.currentTimeMillis();
             getLogger().info("Pre-scanning: " + label + " at " + root.toAbsolutePath());
+            long[] counts = new long[2]; // files, bytes
+            java.security.MessageDigest md = com.c4g7.backupflow.util.HashUtils.newSha256();
+            java.nio.ByteBuffer rec = java.nio.ByteBuffer.allocate(16);
+            com.c4g7.backupflow.util.SourceWalker.AttributeConsumer accumulator = (p, attrs) -> {
+                if (excl.isOversized(attrs.size())) {
+                    getLogger().info("Excluding large file (" + attrs.size() / (1024 * 1024) + "MB): " + com.c4g7.backupflow.util.SourceWalker.matchPath(p));
+                    return;
+                }
+                counts[0]++;
+                counts[1] += attrs.size();
+                // path + size + lastModified for change detection, fed straight into the digest
+                md.update(p.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                rec.clear();
+                rec.putLong(attrs.size()).putLong(attrs.lastModifiedTime().toMillis());
+                md.update(rec.array());
+            };
             
             try {
                 // Timeout protection for slow scans
                 java.util.concurrent.CompletableFuture<Void> scanTask = java.util.concurrent.CompletableFuture.runAsync(() -> {
-                    walk(root, accumulator);
+                    try {
+                        com.c4g7.backupflow.util.SourceWalker.walkFiles(root, tempDir, scanExclusions, accumulator);
+                    } catch (IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
                 });
                 
                 // Wait max 10 seconds for each directory scan
@@ -486,192 +981,70 @@ public class BackupFlowPlugin extends JavaPlugin {
                 
             } catch (java.util.concurrent.TimeoutException e) {
                 getLogger().warning("Pre-scan timeout for " + label + " after 10s - skipping (may have large cache/data folders)");
+                ps.changedRoots.add(label); // unknown state counts as changed
                 return;
             } catch (Exception e) {
                 getLogger().warning("Pre-scan failed for " + label + ": " + e.getMessage());
+                ps.changedRoots.add(label);
                 return;
             }
             
-            long deltaBytes = ps.bytes - beforeBytes; long deltaFiles = ps.files - beforeFiles;
+            ps.files += counts[0];
+            ps.bytes += counts[1];
+            ps.rootDigests.put(label, toHex(md.digest()));
             long scanTime = System.currentTimeMillis() - scanStart;
-            getLogger().info("Pre-scan result: " + label + " -> " + deltaFiles + " files, " + deltaBytes + " bytes (" + scanTime + "ms)");
-            if (deltaFiles > 0 || deltaBytes > 0) ps.breakdown.put(label + "(" + deltaFiles + ")", deltaBytes);
+            getLogger().info("Pre-scan result: " + label + " -> " + counts[0] + " files, " + counts[1] + " bytes (" + scanTime + "ms)");
+            if (counts[0] > 0 || counts[1] > 0) ps.breakdown.put(label + "(" + counts[0] + ")", counts[1]);
         };
 
         if (wildcard) {
             try (var stream = Files.list(Path.of("."))) {
                 stream.filter(p -> Files.isDirectory(p) && Files.exists(p.resolve("level.dat")))
+                        .sorted()
                         .forEach(world -> rootWalk.accept("world:" + world.getFileName(), world));
             }
             rootWalk.accept("plugins", Path.of("plugins"));
-            // config roots (individual files)
-            for (String cfgFile : List.of("server.properties","bukkit.yml","spigot.yml","paper-global.yml")) {
-                Path p = Path.of(cfgFile); if (Files.exists(p) && Files.isRegularFile(p)) { ps.files++; try { ps.bytes += Files.size(p);} catch (IOException ignored) {} }
-            }
+            configRoots(rootWalk);
             for (String ex : extra) {
                 if (ex.equals("*")) continue;
                 rootWalk.accept("extra:" + ex, Path.of(ex));
             }
-            return ps;
+        } else {
+            for (String w : worlds) { if (!w.equals("*")) rootWalk.accept("world:" + w, Path.of(w)); }
+            if (plugins) rootWalk.accept("plugins", Path.of("plugins"));
+            if (configs) configRoots(rootWalk);
+            for (String ex : extra) { if (!ex.equals("*")) rootWalk.accept("extra:" + ex, Path.of(ex)); }
         }
 
-        for (String w : worlds) { if (!w.equals("*")) rootWalk.accept("world:" + w, Path.of(w)); }
-        if (plugins) rootWalk.accept("plugins", Path.of("plugins"));
-        if (configs) {
-            for (String cfgFile : List.of("server.properties","bukkit.yml","spigot.yml","paper-global.yml")) {
-                Path p = Path.of(cfgFile); if (Files.exists(p) && Files.isRegularFile(p)) { ps.files++; try { ps.bytes += Files.size(p);} catch (IOException ignored) {} }
-            }
+        // Combine the per-root digests and compare each root with the last successful backup
+        java.security.MessageDigest total = com.c4g7.backupflow.util.HashUtils.newSha256();
+        for (var e : ps.rootDigests.entrySet()) {
+            total.update((e.getKey() + "=" + e.getValue() + ";").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            if (!e.getValue().equals(lastRootDigests.get(e.getKey()))) ps.changedRoots.add(e.getKey());
         }
-        for (String ex : extra) { if (!ex.equals("*")) rootWalk.accept("extra:" + ex, Path.of(ex)); }
-        
-        // Compute content hash for change detection
-        try {
-            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
-            String contentHash = toHex(md.digest(ps.hashInput.toString().getBytes()));
-            ps.breakdown.put("ContentHash", (long)contentHash.hashCode()); // Store in breakdown for display
-            getLogger().info("Content hash: " + contentHash);
-            
-            // Check if content changed
-            if (cfg.getBoolean("backup.skipUnchanged", true) && contentHash.equals(lastContentHash)) {
-                getLogger().info("No changes detected - content hash matches previous backup");
-                throw new RuntimeException("NO_CHANGES_DETECTED");
-            }
-            
-            lastContentHash = contentHash;
-        } catch (java.security.NoSuchAlgorithmException e) {
-            getLogger().warning("Could not compute content hash: " + e.getMessage());
+        for (String previous : lastRootDigests.keySet()) {
+            if (!ps.rootDigests.containsKey(previous)) ps.changedRoots.add(previous); // root disappeared
         }
-        
-        return ps;
-    }
+        ps.contentHash = toHex(total.digest());
+        ps.breakdown.put("ContentHash", (long) ps.contentHash.hashCode()); // Store in breakdown for display
+        getLogger().info("Content hash: " + ps.contentHash + (lastRootDigests.isEmpty() ? "" : " changed roots: " + ps.changedRoots));
+        lastChangedRoots = java.util.Collections.unmodifiableSet(ps.changedRoots);
 
-    private boolean shouldExcludeFile(Path file, Path baseDir) {
-        try {
-            // Get exclusion patterns from config
-            List<String> patterns = cfg.getStringList("backup.exclude.patterns");
-            if (patterns.isEmpty()) {
-                // Default exclusions if none configured
-                patterns = List.of(
-                    "cache/**", "**/cache/**", "**/temp/**", "**/tmp/**", "plugins/BackupFlow/work/**",
-                    "logs/*.log.gz", "**/logs/*.log.gz", "world/session.lock", "**/session.lock", "**/uid.dat",
-                    ".git/**", ".idea/**", "*.iml", "**/dynmap/web/tiles/**", "**/BlueMap/web/data/**"
-                );
-            }
-            
-            // Get relative path for pattern matching
-            String relativePath = baseDir.relativize(file).toString().replace('\\', '/');
-            
-            // Check against patterns
-            for (String pattern : patterns) {
-                if (matchesGlobPattern(relativePath, pattern)) {
-                    return true;
-                }
-            }
-            
-            // Check file size limits
-            if (Files.isRegularFile(file)) {
-                long maxSizeMB = cfg.getLong("backup.exclude.maxFileSizeMB", 100);
-                if (maxSizeMB > 0) {
-                    long fileSizeMB = Files.size(file) / (1024 * 1024);
-                    if (fileSizeMB > maxSizeMB) {
-                        getLogger().info("Excluding large file (" + fileSizeMB + "MB): " + relativePath);
-                        return true;
-                    }
-                }
-            }
-            
-            return false;
-        } catch (Exception e) {
-            return false; // When in doubt, include the file
-        }
-    }
-    
-    private boolean matchesGlobPattern(String path, String pattern) {
-        // Convert glob pattern to regex
-        String regex = pattern
-            .replace(".", "\\.")
-            .replace("*", ".*")
-            .replace("?", ".")
-            .replace("/**", "/.*");
-        
-        // Handle ** (recursive directory matching)
-        regex = regex.replace(".*/..*", "(?:.*/)?.*");
-        
-        return Pattern.matches(regex, path);
-    }
-
-    private void walk(Path root, java.util.function.Consumer<Path> consumer) {
-        try {
-            if (!Files.exists(root)) return;
-            if (Files.isRegularFile(root)) { 
-                if (!shouldExcludeFile(root, Path.of("."))) {
-                    consumer.accept(root); 
-                }
-                return; 
-            }
-            
-            Files.walk(root)
-                .filter(p -> {
-                    try {
-                        // Apply comprehensive exclusion logic
-                        return !shouldExcludeFile(p, root.getParent() != null ? root.getParent() : Path.of("."));
-                    } catch (Exception e) {
-                        return true; // When in doubt, include
-                    }
-                })
-                .forEach(consumer);
-        } catch (Exception e) {
-            getLogger().warning("Failed to walk " + root + ": " + e.getMessage());
+        // Check if content changed
+        if (cfg.getBoolean("backup.skipUnchanged", true) && !lastRootDigests.isEmpty() && ps.changedRoots.isEmpty()) {
+            getLogger().info("No changes detected - content hash matches previous backup");
+            throw new RuntimeException("NO_CHANGES_DETECTED");
         }
+        // Only trusted once the backup actually succeeds (see startBackupAsync)
+        pendingRootDigests = ps.rootDigests;
+        return ps;
     }
 
-    private void copyIfExists(Path src, Path dest) throws IOException {
-        if (!Files.exists(src)) return;
-        
-        // Get temp dir for exclusion
-        String tempDirPath = cfg.getString("restore.tempDir", "plugins/BackupFlow/work/tmp");
-        Path tempDir = Path.of(tempDirPath).toAbsolutePath().normalize();
-        
-        if (Files.isDirectory(src)) {
-            Files.walk(src)
-                .filter(p -> {
-                    try {
-                        Path normalized = p.toAbsolutePath().normalize();
-                        return !normalized.startsWith(tempDir); // Skip temp directory
-                    } catch (Exception e) {
-                        return true; // Include if can't normalize
-                    }
-                })
-                .forEach(p -> {
-                try {
-                    Path rel = src.relativize(p);
-                    Path target = dest.resolve(rel.toString());
-                    if (Files.isDirectory(p)) {
-                        Files.createDirectories(target);
-                    } else {
-                        Files.createDirectories(target.getParent());
-                        Files.copy(p, target, StandardCopyOption.REPLACE_EXISTING);
-                        filesCopiedThisRun.incrementAndGet();
-                        try { bytesCopiedThisRun.addAndGet(Files.size(p)); } catch (IOException ignored) {}
-                        lastProgressAt = System.currentTimeMillis();
-                        if (cancelRequested) throw new RuntimeException("Cancelled");
-                    }
-                } catch (IOException ignored) { }
-                catch (RuntimeException rte) { throw rte; }
-            });
-        } else {
-            // Check if single file is in temp dir
-            Path normalized = src.toAbsolutePath().normalize();
-            if (normalized.startsWith(tempDir)) {
-                return; // Skip temp file
-            }
-            
-            Files.createDirectories(dest.getParent());
-            Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
-            filesCopiedThisRun.incrementAndGet();
-            try { bytesCopiedThisRun.addAndGet(Files.size(src)); } catch (IOException ignored) {}
-            lastProgressAt = System.currentTimeMillis();
-            if (cancelRequested) throw new RuntimeException("Cancelled");
+    /** Each server config file is scanned as its own small root. */
+    private void configRoots(java.util.function.BiConsumer<String, Path> rootWalk) {
+        for (String cfgFile : SERVER_CONFIG_FILES) {
+            Path p = Path.of(cfgFile);
+            if (Files.isRegularFile(p)) rootWalk.accept("config:" + cfgFile, p);
         }
     }
 
@@ -684,7 +1057,8 @@ public class BackupFlowPlugin extends JavaPlugin {
     public BackupStorageService getStorage() { return storage; }
 
     public void restoreBackupAsync(String timestamp, java.util.Set<String> sections, boolean force, org.bukkit.command.CommandSender sender) {
-        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+        var sub = jobs.submit(com.c4g7.backupflow.jobs.JobScheduler.Type.RESTORE, timestamp + " " + new java.util.TreeSet<>(sections) + (force ? " force" : ""),
+                "restore " + timestamp, true, () -> {
             try {
                 doRestore(timestamp, sections, force);
                 sender.sendMessage("§aRestore complete for " + timestamp);
@@ -693,16 +1067,40 @@ public class BackupFlowPlugin extends JavaPlugin {
                 getLogger().warning("Restore failed: " + ex.getMessage());
             }
         });
+        reportSubmission(sub, sender, "Restore");
     }
 
     private void doRestore(String timestamp, java.util.Set<String> sections, boolean force) throws Exception {
+        if (isIncrementalBackup(timestamp)) {
+            incrementalEngine().restore(timestamp, com.c4g7.backupflow.util.ZipExtractUtils.buildSelector(sections), Path.of("."), force, ensureTemp());
+            return;
+        }
         String keyPrefix = storage.beginFullBackupKeyPrefix(Instant.ofEpochMilli(Long.parseLong(timestamp)));
-        String archiveNameZip = "full-" + timestamp + ".zip";
+        String archiveObject = findFullArchive(keyPrefix, timestamp);
+        String archiveName = archiveObject.substring(archiveObject.lastIndexOf('/') + 1);
+        var format = com.c4g7.backupflow.util.ArchiveFormat.fromName(archiveName);
+        var selector = com.c4g7.backupflow.util.ZipExtractUtils.buildSelector(sections);
+        if (cfg.getBoolean("restore.extractInPlace", true)) {
+            // entries go straight to their final path (temp file + rename), no download or staging tree
+            Path root = Path.of(".");
+            java.util.function.Predicate<String> wanted = force ? selector : name -> selector.test(name) && !Files.exists(root.resolve(name));
+            if (format.isTar() || !restoreRanged(archiveObject, root, wanted)) {
+                try (java.io.InputStream in = storage.openObjectParallel(archiveObject)) {
+                    com.c4g7.backupflow.util.ZipExtractUtils.extractInPlace(in, format, root, selector, force);
+                }
+            }
+            return;
+        }
         java.nio.file.Path tempRoot = ensureTemp();
-        java.nio.file.Path dl = tempRoot.resolve(archiveNameZip);
-        storage.downloadFile(keyPrefix + archiveNameZip, dl);
         java.nio.file.Path extractDir = java.nio.file.Files.createTempDirectory(tempRoot, "bf-restore-");
-        com.c4g7.backupflow.util.ZipExtractUtils.extractFiltered(dl, extractDir, com.c4g7.backupflow.util.ZipExtractUtils.buildSelector(sections));
+        if (format.isTar() || !restoreRanged(archiveObject, extractDir, selector)) {
+            try (var walk = Files.walk(extractDir)) {
+                walk.sorted(java.util.Comparator.reverseOrder()).filter(p -> !p.equals(extractDir)).forEach(p -> p.toFile().delete());
+            }
+            java.nio.file.Path dl = tempRoot.resolve(archiveName);
+            storage.downloadFile(archiveObject, dl);
+            com.c4g7.backupflow.util.ZipExtractUtils.extractFiltered(dl, format, extractDir, selector);
+        }
         java.nio.file.Files.walk(extractDir).forEach(p -> {
             try {
                 if (java.nio.file.Files.isDirectory(p)) return;
@@ -715,102 +1113,269 @@ public class BackupFlowPlugin extends JavaPlugin {
         });
     }
 
-    public void verifyBackupAsync(String timestamp, java.util.Set<String> sections, org.bukkit.command.CommandSender sender) {
-        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+    /**
+     * Extracts the selected entries of a zip archive with ranged GETs: the central directory first,
+     * then only the byte ranges of matching entries, {@code restore.parallelRanges} at a time.
+     * Returns false when the archive cannot be read this way, so the caller falls back to reading
+     * it whole; files already written by then are complete.
+     */
+    private boolean restoreRanged(String archiveObject, Path dest, java.util.function.Predicate<String> selector) {
+        int threads = Math.max(0, cfg.getInt("restore.parallelRanges", 4));
+        if (threads == 0) return false;
+        try {
+            long size = storage.objectSize(archiveObject);
+            var zip = com.c4g7.backupflow.util.RemoteZip.open((offset, length) -> storage.openRange(archiveObject, offset, length), size);
+            long fetched = zip.extract(selector, dest, threads, null);
+            getLogger().info("Ranged restore fetched " + (fetched / (1024 * 1024)) + " MB of " + (size / (1024 * 1024)) + " MB archive");
+            return true;
+        } catch (Exception e) {
+            getLogger().warning("Ranged restore unavailable (" + e.getMessage() + "), reading the whole archive");
+            return false;
+        }
+    }
+
+    public void verifyBackupAsync(String timestamp, java.util.Set<String> sections, Integer samplePercent, org.bukkit.command.CommandSender sender) {
+        int sample = Math.max(1, Math.min(100, samplePercent != null ? samplePercent : cfg.getInt("verify.samplePercent", 100)));
+        String key = timestamp + " " + (sections == null ? "[]" : new java.util.TreeSet<>(sections)) + " " + sample;
+        var sub = jobs.submit(com.c4g7.backupflow.jobs.JobScheduler.Type.VERIFY, key, "verify " + timestamp, sender != null, () -> {
             try {
-                var result = doVerify(timestamp, sections);
-                sender.sendMessage("§eVerification: files=" + result.total + " ok=" + result.matched + " mismatched=" + result.mismatched + " missing=" + result.missing);
+                var result = doVerify(timestamp, sections, sample);
+                String sampled = result.candidates > result.total ? " §8(sampled " + result.total + " of " + result.candidates + ")" : "";
+                String line = "Verification of " + timestamp + ": files=" + result.total + " ok=" + result.matched + " mismatched=" + result.mismatched + " missing=" + result.missing;
+                if (sender == null) {
+                    if (result.mismatched + result.missing > 0) getLogger().warning(line + "; problems: " + String.join(", ", result.problems.stream().limit(10).toList()));
+                    else getLogger().info(line + (result.candidates > result.total ? " (sampled " + result.total + " of " + result.candidates + ")" : ""));
+                    return;
+                }
+                sender.sendMessage("§eVerification: files=" + result.total + " ok=" + result.matched + " mismatched=" + result.mismatched + " missing=" + result.missing + sampled);
                 if (!result.problems.isEmpty()) {
                     sender.sendMessage("§cProblem samples: " + String.join(", ", result.problems.stream().limit(10).toList()));
                 }
             } catch (Exception ex) {
-                sender.sendMessage("§cVerify failed: " + ex.getMessage());
+                if (sender != null) sender.sendMessage("§cVerify failed: " + ex.getMessage());
+                else getLogger().warning("Scheduled verify of " + timestamp + " failed: " + ex.getMessage());
             }
         });
+        reportSubmission(sub, sender, "Verify");
+    }
+
+    /** Scheduled verify (verify.cron) of the newest backup, at verify.samplePercent. */
+    private void verifyNewestAsync() {
+        try {
+            storage.catalog().ensureLoaded();
+        } catch (Exception e) {
+            getLogger().warning("Scheduled verify skipped: " + e.getMessage());
+            return;
+        }
+        java.util.List<String> all = storage.catalog().timestamps();
+        if (all.isEmpty()) return;
+        verifyBackupAsync(all.get(all.size() - 1), null, null, null);
     }
 
-    private static final class VerifyStats { int total; int matched; int mismatched; int missing; java.util.List<String> problems = new java.util.ArrayList<>(); }
+    private static final class VerifyStats { int total; int candidates; int matched; int mismatched; int missing; java.util.List<String> problems = new java.util.ArrayList<>(); }
 
-    private VerifyStats doVerify(String timestamp, java.util.Set<String> sections) throws Exception {
+    /**
+     * Checks the archive entries against the manifest hashes. With {@code verify.streaming} nothing is
+     * written to disk: zip entries are hashed straight from ranged GETs, {@code verify.parallelRanges}
+     * ranges at a time, and other formats from the (parallel) object stream. {@code samplePercent}
+     * below 100 checks a random subset; for zips only the sampled entries are fetched.
+     */
+    private VerifyStats doVerify(String timestamp, java.util.Set<String> sections, int samplePercent) throws Exception {
+        if (isIncrementalBackup(timestamp)) {
+            var r = incrementalEngine().verify(timestamp, com.c4g7.backupflow.util.ZipExtractUtils.buildSelector(sections), ensureTemp());
+            VerifyStats stats = new VerifyStats();
+            stats.total = r.total; stats.candidates = r.total; stats.matched = r.matched; stats.mismatched = r.mismatched; stats.missing = r.missing;
+            stats.problems.addAll(r.problems);
+            return stats;
+        }
         String keyPrefix = storage.beginFullBackupKeyPrefix(Instant.ofEpochMilli(Long.parseLong(timestamp)));
-        String archiveNameZip = "full-" + timestamp + ".zip";
-        java.nio.file.Path tempRoot = ensureTemp();
-        java.nio.file.Path dl = tempRoot.resolve(archiveNameZip);
-        storage.downloadFile(keyPrefix + archiveNameZip, dl);
+        String archiveObject = findFullArchive(keyPrefix, timestamp);
+        String archiveName = archiveObject.substring(archiveObject.lastIndexOf('/') + 1);
+        var format = com.c4g7.backupflow.util.ArchiveFormat.fromName(archiveName);
         java.util.List<String> manifests = storage.listManifests();
         String manifestForTs = null;
         for (String m : manifests) if (m.contains(timestamp)) { manifestForTs = m; break; }
-        java.util.Map<String,String> hashes = new java.util.HashMap<>();
+        // expected digests: binary-searched in the manifest index when there is one, else streamed from the JSON manifest
+        java.util.function.Function<String,String> expected = name -> null;
+        String hashAlgorithm = com.c4g7.backupflow.util.HashUtils.SHA256;
+        boolean haveHashes = false;
         if (manifestForTs != null) {
-            java.nio.file.Path mf = tempRoot.resolve(manifestForTs);
-            storage.downloadFile(storage.manifestObjectName(manifestForTs), mf);
-            String json = java.nio.file.Files.readString(mf);
-            int idx = json.indexOf("\"hashes\":");
-            if (idx >= 0) {
-                String sub = json.substring(idx);
-                int open = sub.indexOf('{');
-                int close = sub.indexOf('}');
-                if (open >=0 && close>open) {
-                    String body = sub.substring(open+1, close);
-                    for (String pair : body.split(",")) {
-                        int c = pair.indexOf(':');
-                        if (c>0) {
-                            String k = pair.substring(0,c).replace("\"","" ).trim();
-                            String v = pair.substring(c+1).replace("\"","" ).trim();
-                            if (!k.isEmpty() && !v.isEmpty()) hashes.put(k, v);
-                        }
-                    }
+            String indexObject = storage.manifestObjectName(BackupStorageService.manifestIndexName(manifestForTs));
+            if (storage.exists(indexObject)) {
+                com.c4g7.backupflow.util.ManifestIndex index;
+                try (java.io.InputStream in = storage.openObject(indexObject)) {
+                    index = com.c4g7.backupflow.util.ManifestIndex.wrap(in.readAllBytes());
                 }
+                hashAlgorithm = index.algorithm();
+                expected = index::hexDigest;
+                haveHashes = index.size() > 0;
+            } else {
+                java.util.Map<String,String> hashes = new java.util.HashMap<>();
+                var header = com.c4g7.backupflow.util.ManifestReader.read(storage.openObject(storage.manifestObjectName(manifestForTs)), hashes::put);
+                if (header.format() != null) format = header.format();
+                hashAlgorithm = header.hashAlgorithm();
+                expected = hashes::get;
+                haveHashes = !hashes.isEmpty();
             }
         }
         VerifyStats stats = new VerifyStats();
         java.util.function.Predicate<String> selector = com.c4g7.backupflow.util.ZipExtractUtils.buildSelector(sections);
-        try (java.io.InputStream in = java.nio.file.Files.newInputStream(dl); java.util.zip.ZipInputStream zis = new java.util.zip.ZipInputStream(in)) {
-            java.util.zip.ZipEntry e;
-            while ((e = zis.getNextEntry()) != null) {
-                if (e.isDirectory()) continue;
-                String name = e.getName();
-                if (!selector.test(name)) continue;
+        String verifyAlgorithm = hashAlgorithm;
+        java.util.function.Function<String,String> expectedHash = expected;
+        boolean checkHashes = haveHashes;
+        // may run on several range threads at once; an entry is only counted once it was read in full
+        com.c4g7.backupflow.util.ZipExtractUtils.EntryConsumer check = (name, data) -> {
+            String problem = null;
+            boolean ok = false;
+            if (checkHashes) {
+                String want = expectedHash.apply(name);
+                if (want == null) {
+                    problem = "not-in-manifest:" + name;
+                } else {
+                    java.security.MessageDigest md = com.c4g7.backupflow.util.HashUtils.newDigest(verifyAlgorithm);
+                    byte[] buf = new byte[64 * 1024];
+                    int r;
+                    while ((r = data.read(buf)) != -1) md.update(buf, 0, r);
+                    ok = want.equalsIgnoreCase(toHex(md.digest()));
+                    if (!ok) problem = "mismatch:" + name;
+                }
+            }
+            synchronized (stats) {
                 stats.total++;
-                if (hashes.isEmpty()) continue;
-                if (!hashes.containsKey(name)) { stats.missing++; stats.problems.add("not-in-manifest:"+name); continue; }
-                java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
-                byte[] buf = new byte[8192]; int r;
-                while ((r = zis.read(buf)) != -1) md.update(buf,0,r);
-                String calc = toHex(md.digest());
-                String expected = hashes.get(name);
-                if (expected.equalsIgnoreCase(calc)) stats.matched++; else { stats.mismatched++; stats.problems.add("mismatch:"+name); }
+                if (!checkHashes) return;
+                if (ok) stats.matched++;
+                else if (problem.startsWith("mismatch:")) { stats.mismatched++; stats.problems.add(problem); }
+                else { stats.missing++; stats.problems.add(problem); }
             }
+        };
+        if (!cfg.getBoolean("verify.streaming", true)) {
+            java.nio.file.Path dl = ensureTemp().resolve(archiveName);
+            storage.downloadFile(archiveObject, dl);
+            com.c4g7.backupflow.util.ZipExtractUtils.forEachEntry(dl, format, sampled(selector, samplePercent, stats), check);
+            return stats;
+        }
+        if (!format.isTar()) {
+            int threads = Math.max(1, cfg.getInt("verify.parallelRanges", 4));
+            long size = -1;
+            com.c4g7.backupflow.util.RemoteZip zip = null;
+            try {
+                size = storage.objectSize(archiveObject);
+                zip = com.c4g7.backupflow.util.RemoteZip.open((offset, length) -> storage.openRange(archiveObject, offset, length), size);
+            } catch (Exception e) {
+                // only an unreadable directory (or no range support) falls back; damaged entries are counted below
+                getLogger().warning("Ranged verify unavailable (" + e.getMessage() + "), streaming the whole archive");
+            }
+            if (zip != null) {
+                java.util.List<String> candidates = new java.util.ArrayList<>();
+                for (var e : zip.entries()) if (!e.name().endsWith("/") && selector.test(e.name())) candidates.add(e.name());
+                stats.candidates = candidates.size();
+                java.util.Set<String> chosen = new java.util.HashSet<>(candidates);
+                if (samplePercent < 100) {
+                    java.util.Collections.shuffle(candidates);
+                    chosen = new java.util.HashSet<>(candidates.subList(0, (int) Math.ceil(candidates.size() * samplePercent / 100.0)));
+                }
+                long fetched = zip.forEachEntry(chosen::contains, threads, null, check, (name, damage) -> {
+                    synchronized (stats) {
+                        stats.total++;
+                        stats.mismatched++;
+                        stats.problems.add("mismatch:" + name);
+                    }
+                    getLogger().warning("Verify: " + damage.getMessage());
+                });
+                getLogger().info("Verify read " + (fetched / (1024 * 1024)) + " MB of " + (size / (1024 * 1024)) + " MB archive");
+                return stats;
+            }
+        }
+        try (java.io.InputStream in = storage.openObjectParallel(archiveObject)) {
+            com.c4g7.backupflow.util.ZipExtractUtils.forEachEntry(in, format, sampled(selector, samplePercent, stats), check);
         }
         return stats;
     }
 
+    /** {@code selector} narrowed to a random {@code percent} of the entries; counts candidates into {@code stats}. */
+    private static java.util.function.Predicate<String> sampled(java.util.function.Predicate<String> selector, int percent, VerifyStats stats) {
+        return name -> {
+            if (!selector.test(name)) return false;
+            stats.candidates++;
+            return percent >= 100 || ThreadLocalRandom.current().nextInt(100) < percent;
+        };
+    }
+
+    /** Object name of a full backup's archive; its extension tells the format (older backups are always zip). */
+    private String findFullArchive(String keyPrefix, String timestamp) throws Exception {
+        String base = "full-" + timestamp + ".";
+        for (String name : storage.listObjectNames(keyPrefix)) {
+            String file = name.substring(name.lastIndexOf('/') + 1);
+            if (file.startsWith(base) && com.c4g7.backupflow.util.ArchiveFormat.fromName(file) != null) return name;
+        }
+        return keyPrefix + base + "zip";
+    }
+
     private String toHex(byte[] bytes) {
         StringBuilder sb = new StringBuilder(bytes.length*2);
         for (byte b: bytes) sb.append(String.format("%02x", b));
         return sb.toString();
     }
 
-    public java.util.List<String> retentionPlan(Integer keepDays, Integer max) throws Exception {
-        java.util.List<String> all = storage.listBackups("full");
-        java.util.List<String> sorted = new java.util.ArrayList<>(all);
-        sorted.sort(String::compareTo);
-        long now = System.currentTimeMillis();
-        java.util.List<String> candidates = new java.util.ArrayList<>();
-        for (String ts : sorted) {
-            try {
-                long t = Long.parseLong(ts);
-                boolean old = (keepDays != null && keepDays > 0 && now - t > keepDays*86400000L);
-                candidates.add((old?"old:" : "") + ts);
-            } catch (NumberFormatException ignored) { }
-        }
-        if (max != null && max > 0 && sorted.size() > max) {
-            int removeCount = sorted.size() - max;
-            for (int i=0;i<removeCount && i<sorted.size();i++) {
-                String ts = sorted.get(i);
-                if (!candidates.contains(ts)) candidates.add("excess:"+ts);
+    /**
+     * The retention policy from backup.retention.keepLast/keepHourly/keepDaily/keepWeekly/keepMonthly;
+     * entries of {@code overrides} ("last", "hourly", ...) replace single counts for one run.
+     */
+    public com.c4g7.backupflow.retention.RetentionPolicy retentionPolicy(java.util.Map<String,Integer> overrides) {
+        java.util.function.ToIntFunction<String> count = rule -> overrides.getOrDefault(rule,
+                cfg.getInt("backup.retention.keep" + Character.toUpperCase(rule.charAt(0)) + rule.substring(1), 0));
+        return new com.c4g7.backupflow.retention.RetentionPolicy(count.applyAsInt("last"), count.applyAsInt("hourly"),
+                count.applyAsInt("daily"), count.applyAsInt("weekly"), count.applyAsInt("monthly"));
+    }
+
+    public com.c4g7.backupflow.retention.RetentionPolicy.Plan retentionPlan(java.util.Map<String,Integer> overrides) throws Exception {
+        storage.catalog().ensureLoaded();
+        return retentionPolicy(overrides).apply(storage.catalog().entries(), java.time.ZoneId.systemDefault());
+    }
+
+    /** Queues a retention job; it never runs alongside a backup (both hold the backup set). */
+    public boolean startRetentionAsync(java.util.Map<String,Integer> overrides, org.bukkit.command.CommandSender sender) {
+        var sub = jobs.submit(com.c4g7.backupflow.jobs.JobScheduler.Type.RETENTION, "retention " + new java.util.TreeMap<>(overrides), "retention",
+                sender != null, () -> runRetention(overrides, sender));
+        reportSubmission(sub, sender, "Retention");
+        return !sub.coalesced();
+    }
+
+    /**
+     * Deletes the backups the retention policy expires, then the chunks no remaining incremental
+     * backup references. Runs as a retention job, which never overlaps a backup: a running backup
+     * may reuse chunks the sweep would consider unreferenced.
+     */
+    private void runRetention(java.util.Map<String,Integer> overrides, org.bukkit.command.CommandSender sender) {
+        try {
+            var policy = retentionPolicy(overrides);
+            if (policy.keepsEverything()) {
+                if (sender != null) sender.sendMessage(pref() + "§eNo retention rules set (backup.retention.keep*); nothing deleted");
+                return;
             }
+            var plan = retentionPlan(overrides);
+            if (plan.expire().isEmpty()) {
+                if (sender != null) sender.sendMessage(pref() + "§aRetention: nothing expired §7(" + plan.keep().size() + " kept)");
+                return;
+            }
+            if (sender != null) sender.sendMessage(pref() + "§7Retention: deleting " + plan.expire().size() + " expired backups...");
+            long start = System.currentTimeMillis();
+            var executor = new com.c4g7.backupflow.retention.RetentionExecutor(storage, chunkIndex(),
+                    cfg.getInt("backup.retention.deleteThreads", 4), getLogger());
+            var res = executor.run(plan);
+            String summary = res.backups() + " backups (" + res.objects() + " objects, " + (res.bytes() / (1024 * 1024)) + " MB"
+                    + (res.chunks() > 0 ? ", " + res.chunks() + " unreferenced chunks" : "") + ") in " + (System.currentTimeMillis() - start) + "ms, "
+                    + plan.keep().size() + " kept";
+            getLogger().info("Retention deleted " + summary + (res.failures().isEmpty() ? "" : "; " + res.failures().size() + " failures, first: " + res.failures().get(0)));
+            if (sender != null) {
+                sender.sendMessage(pref() + "§aRetention deleted §f" + summary);
+                if (!res.failures().isEmpty()) sender.sendMessage(pref() + "§c" + res.failures().size() + " failures, first: " + res.failures().get(0));
+            }
+            refreshTimestampCacheAsync(true);
+        } catch (Exception ex) {
+            lastError = ex.getMessage();
+            getLogger().warning("Retention failed: " + ex.getMessage());
+            if (sender != null) sender.sendMessage(pref() + "§cRetention failed: " + ex.getMessage());
         }
-        return candidates;
     }
 }
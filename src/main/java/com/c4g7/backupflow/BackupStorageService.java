@@ -1,7 +1,6 @@
 package com.c4g7.backupflow;
 
-import io.minio.*;
-import io.minio.messages.Item;
+import com.c4g7.backupflow.catalog.BackupCatalog;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,20 +9,26 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
  * Storage abstraction for BackupFlow.
  * Layout:
  *   <rootDir>/backups/<serverId>/full/<timestamp>/<archiveFile>
- *   <rootDir>/backups/<serverId>/inc/<timestamp>/<archiveFile>   (future incremental)
+ *   <rootDir>/backups/<serverId>/inc/<timestamp>/index.json      (incremental: file -> chunk references)
+ *   <rootDir>/backups/<serverId>/chunks/<aa>/<sha256>             (content-addressed chunks, deflated)
+ *   <rootDir>/backups/<serverId>/catalog.json                     (list of committed backups, see BackupCatalog)
  *   <rootDir>/manifests/<serverId>-<timestamp>.json
+ *   <rootDir>/manifests/<serverId>-<timestamp>.idx         (optional binary index of the manifest hashes)
  */
 public class BackupStorageService implements AutoCloseable {
-    private final MinioClient client;
-    private final String bucket;
+    private final ObjectStore store;
     private final String rootDir;
     private final String serverId;
+    private volatile ParallelDownloader downloader;
+    private static final String MANIFEST_INDEX_SUFFIX = ".idx";
+    private final BackupCatalog catalog = new BackupCatalog(this);
 
     public BackupStorageService(String endpoint, boolean secure, String access, String secret, String bucket, String rootDir, String serverId) {
         this(endpoint, secure, access, secret, bucket, rootDir, serverId, 10, 300, 300);
@@ -31,99 +36,186 @@ public class BackupStorageService implements AutoCloseable {
 
     public BackupStorageService(String endpoint, boolean secure, String access, String secret, String bucket, String rootDir, String serverId, 
                                int connectionPoolSize, int readTimeoutSeconds, int writeTimeoutSeconds) {
-        if (endpoint == null || access == null || secret == null || bucket == null) throw new IllegalArgumentException("Missing S3 config");
-        this.bucket = bucket;
+        this(new MinioObjectStore(endpoint, secure, access, secret, bucket, connectionPoolSize, readTimeoutSeconds, writeTimeoutSeconds), rootDir, serverId);
+    }
+
+    /** Backup layout on top of any {@link ObjectStore}, e.g. a local stand-in for benchmarks. */
+    public BackupStorageService(ObjectStore store, String rootDir, String serverId) {
+        if (store == null) throw new IllegalArgumentException("Missing S3 config");
+        this.store = store;
         this.rootDir = (rootDir == null || rootDir.isBlank()) ? "FlowStack/BackupFlow" : rootDir.replaceAll("^/+|/+$", "");
         this.serverId = (serverId == null || serverId.isBlank()) ? "default" : serverId;
-        
-        // Configure HTTP client with performance settings
-        okhttp3.OkHttpClient httpClient = new okhttp3.OkHttpClient.Builder()
-            .connectionPool(new okhttp3.ConnectionPool(connectionPoolSize, 5, java.util.concurrent.TimeUnit.MINUTES))
-            .readTimeout(readTimeoutSeconds, java.util.concurrent.TimeUnit.SECONDS)
-            .writeTimeout(writeTimeoutSeconds, java.util.concurrent.TimeUnit.SECONDS)
-            .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-            .build();
-        
-        MinioClient.Builder builder = MinioClient.builder()
-            .credentials(access, secret)
-            .httpClient(httpClient);
-            
-        String ep = endpoint.trim();
-        try {
-            if (ep.startsWith("http://") || ep.startsWith("https://")) builder = builder.endpoint(ep);
-            else if (ep.contains(":")) {
-                int last = ep.lastIndexOf(':');
-                String host = ep.substring(0, last);
-                int port = Integer.parseInt(ep.substring(last + 1));
-                builder = builder.endpoint(host, port, secure);
-            } else builder = builder.endpoint(ep, secure ? 443 : 9000, secure);
-        } catch (Exception e) { builder = builder.endpoint(ep); }
-        this.client = builder.build();
+    }
+
+    /**
+     * Enables parallel multipart uploads: archives larger than one part are sent with up to
+     * {@code concurrentParts} parts in flight, each retried up to {@code partRetries} times.
+     * A value of 1 keeps the sequential {@code putObject} path.
+     */
+    public void setUploadConcurrency(int concurrentParts, int partRetries) {
+        store.setUploadConcurrency(concurrentParts, partRetries);
+    }
+
+    /**
+     * Enables parallel downloads: objects larger than one segment of {@code segmentSize} bytes are
+     * fetched with up to {@code streams} range GETs at once, each retried up to {@code retries}
+     * times. A value of 1 keeps the single {@code getObject} stream.
+     */
+    public void setDownloadConcurrency(int streams, long segmentSize, int retries) {
+        downloader = new ParallelDownloader(store, streams, segmentSize, retries);
     }
 
     public String beginFullBackupKeyPrefix(Instant ts) {
         return rootDir + "/backups/" + serverId + "/full/" + ts.toEpochMilli() + "/";
     }
 
+    public String beginIncrementalBackupKeyPrefix(Instant ts) {
+        return rootDir + "/backups/" + serverId + "/inc/" + ts.toEpochMilli() + "/";
+    }
+
+    /** Folder holding every backup of one type, {@code <timestamp>/...} below it. */
+    public String backupTypePrefix(BackupCatalog.Type type) {
+        return rootDir + "/backups/" + serverId + "/" + type.dir() + "/";
+    }
+
+    public String incrementalIndexName(String timestamp) {
+        return rootDir + "/backups/" + serverId + "/inc/" + timestamp + "/index.json";
+    }
+
+    public String chunkPrefix() {
+        return rootDir + "/backups/" + serverId + "/chunks/";
+    }
+
+    public String chunkObjectName(String hash) {
+        return chunkPrefix() + hash.substring(0, 2) + "/" + hash;
+    }
+
+    /** The catalog of this server's backups, see {@link BackupCatalog}. */
+    public String catalogObjectName() {
+        return rootDir + "/backups/" + serverId + "/catalog.json";
+    }
+
+    public BackupCatalog catalog() { return catalog; }
+
     public String manifestObjectName(String baseName) {
         return rootDir + "/manifests/" + baseName;
     }
 
+    /** Prefix shared by this server's manifests, {@code <serverId>-<timestamp>-<id>.json} and {@code .idx}. */
+    public String serverManifestPrefix() {
+        return manifestObjectName(serverId + "-");
+    }
+
     public void uploadFile(Path file, String objectName) throws Exception {
         uploadFile(file, objectName, 64 * 1024 * 1024, 8 * 1024 * 1024); // Default: 64MB part, 8MB buffer
     }
 
     public void uploadFile(Path file, String objectName, int partSize, int bufferSize) throws Exception {
-        long fileSize = Files.size(file);
-        // Use larger buffer for better performance with large files
-        int effectiveBufferSize = Math.max(bufferSize, 4 * 1024 * 1024); // Minimum 4MB buffer
-        try (InputStream in = new java.io.BufferedInputStream(Files.newInputStream(file), effectiveBufferSize)) {
-            client.putObject(PutObjectArgs.builder()
-                    .bucket(bucket)
-                    .object(objectName)
-                    .stream(in, fileSize, partSize)
-                    .contentType("application/octet-stream")
-                    .build());
-        }
+        store.putFile(file, objectName, partSize, bufferSize);
+    }
+
+    /**
+     * Uploads a stream of unknown length as a multipart object. Only one part of {@code partSize}
+     * bytes is buffered at a time (one per concurrent part with parallel uploads enabled), so
+     * memory stays bounded regardless of the object size.
+     */
+    public void uploadStream(InputStream in, String objectName, int partSize) throws Exception {
+        store.putStream(in, objectName, partSize);
+    }
+
+    public void uploadBytes(byte[] data, String objectName) throws Exception {
+        store.putBytes(data, objectName);
+    }
+
+    public InputStream openObject(String objectName) throws Exception {
+        return store.get(objectName);
+    }
+
+    /**
+     * Like {@link #openObject}, but a large object is read through several range GETs fetched ahead
+     * of the reader (see {@link #setDownloadConcurrency}). Costs an extra stat, so meant for archives.
+     */
+    public InputStream openObjectParallel(String objectName) throws Exception {
+        ParallelDownloader d = downloader;
+        if (d == null) return store.get(objectName);
+        long size = store.size(objectName);
+        return d.splits(size) ? d.open(objectName, size) : store.get(objectName);
+    }
+
+    /** {@code length} bytes of an object starting at {@code offset}. */
+    public InputStream openRange(String objectName, long offset, long length) throws Exception {
+        return store.getRange(objectName, offset, length);
+    }
+
+    public boolean exists(String objectName) throws Exception {
+        return store.exists(objectName);
+    }
+
+    public long objectSize(String objectName) throws Exception {
+        return store.size(objectName);
+    }
+
+    /** Lists every object key below the prefix (recursive). */
+    public List<String> listObjectNames(String prefix) throws Exception {
+        return store.list(prefix, true);
     }
 
+    /** Every object key below the prefix (recursive) with its size in bytes. */
+    public Map<String, Long> listObjectSizes(String prefix) throws Exception {
+        return store.listSizes(prefix);
+    }
+
+    /**
+     * Deletes up to {@link ObjectStore#DELETE_BATCH} objects with one multi-object request; callers
+     * with more split them and may run the batches concurrently.
+     */
+    public void deleteObjects(List<String> objectNames) throws Exception {
+        store.delete(objectNames);
+    }
+
+    /**
+     * Downloads an object to {@code dest}. With parallel downloads enabled, large objects are split
+     * into range GETs written into a preallocated file, and a failed download resumes the missing
+     * segments when it is repeated.
+     */
     public void downloadFile(String objectName, Path dest) throws Exception {
         Files.createDirectories(dest.getParent());
-        try (InputStream in = client.getObject(GetObjectArgs.builder().bucket(bucket).object(objectName).build());
+        ParallelDownloader d = downloader;
+        if (d != null) {
+            long size = store.size(objectName);
+            if (d.splits(size)) {
+                d.download(objectName, size, dest);
+                return;
+            }
+        }
+        try (InputStream in = store.get(objectName);
              OutputStream out = Files.newOutputStream(dest)) {
             in.transferTo(out);
         }
     }
 
+    /**
+     * Timestamps of the backups of one type ({@code full} or {@code inc}), oldest first, from a
+     * delimiter listing of the timestamp folders. Prefer {@link #catalog()}; this is its fallback.
+     */
     public List<String> listBackups(String type) throws Exception { // type: full | inc
         String prefix = rootDir + "/backups/" + serverId + "/" + (type == null ? "full" : type) + "/";
-        Iterable<Result<Item>> results = client.listObjects(ListObjectsArgs.builder().bucket(bucket).recursive(true).prefix(prefix).build());
-        List<String> entries = new ArrayList<>();
-        for (Result<Item> r : results) {
-            Item it = r.get();
-            String key = it.objectName();
-            if (!key.startsWith(prefix)) continue;
-            // Collect top-level timestamp folder names
-            String rest = key.substring(prefix.length());
-            int slash = rest.indexOf('/');
-            if (slash > 0) {
-                String ts = rest.substring(0, slash);
-                if (!entries.contains(ts)) entries.add(ts);
-            }
+        java.util.TreeSet<String> entries = new java.util.TreeSet<>(java.util.Comparator.comparingInt(String::length).thenComparing(java.util.Comparator.naturalOrder()));
+        for (String dir : store.listPrefixes(prefix)) {
+            if (!dir.startsWith(prefix)) continue;
+            String ts = dir.substring(prefix.length()).replaceAll("/+$", "");
+            if (!ts.isEmpty() && !ts.contains("/")) entries.add(ts);
         }
-        return entries;
+        return new ArrayList<>(entries);
     }
 
     public List<String> listManifests() throws Exception {
         String prefix = rootDir + "/manifests/";
-        Iterable<Result<Item>> results = client.listObjects(ListObjectsArgs.builder().bucket(bucket).recursive(false).prefix(prefix).build());
         List<String> names = new ArrayList<>();
-        for (Result<Item> r : results) {
-            Item it = r.get();
-            String key = it.objectName();
+        for (String key : store.list(prefix, false)) {
             if (!key.startsWith(prefix)) continue;
             String rest = key.substring(prefix.length());
-            if (!rest.isBlank() && !rest.contains("/")) names.add(rest);
+            if (!rest.isBlank() && !rest.contains("/") && !rest.endsWith(MANIFEST_INDEX_SUFFIX)) names.add(rest);
         }
         return names;
     }
@@ -132,18 +224,20 @@ public class BackupStorageService implements AutoCloseable {
         return serverId + "-" + ts.toEpochMilli() + "-" + UUID.randomUUID().toString().substring(0,8) + ".json";
     }
 
+    /** Name of the binary index (see {@code ManifestIndex}) that accompanies a manifest. */
+    public static String manifestIndexName(String manifestName) {
+        return (manifestName.endsWith(".json") ? manifestName.substring(0, manifestName.length() - 5) : manifestName) + MANIFEST_INDEX_SUFFIX;
+    }
+
     public void createRoot() {
         // Put a tiny marker to validate credentials and root path; ignore failures
-        try (InputStream in = new java.io.ByteArrayInputStream(new byte[]{0})) {
-            client.putObject(PutObjectArgs.builder()
-                    .bucket(bucket)
-                    .object(rootDir + "/.init")
-                    .stream(in, 1, -1)
-                    .contentType("application/octet-stream")
-                    .build());
+        try {
+            store.putBytes(new byte[]{0}, rootDir + "/.init");
         } catch (Exception ignored) { }
     }
 
     @Override
-    public void close() { }
+    public void close() {
+        store.close();
+    }
 }
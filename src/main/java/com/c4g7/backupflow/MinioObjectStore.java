@@ -0,0 +1,211 @@
+package com.c4g7.backupflow;
+
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+import io.minio.*;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** {@link ObjectStore} on an S3-compatible endpoint through the MinIO client. */
+final class MinioObjectStore implements ObjectStore {
+    private final MinioClient client;
+    private final MinioAsyncClient asyncClient;
+    private final String bucket;
+    private volatile MultipartUploader multipart;
+
+    MinioObjectStore(String endpoint, boolean secure, String access, String secret, String bucket,
+                     int connectionPoolSize, int readTimeoutSeconds, int writeTimeoutSeconds) {
+        if (endpoint == null || access == null || secret == null || bucket == null) throw new IllegalArgumentException("Missing S3 config");
+        this.bucket = bucket;
+
+        // Configure HTTP client with performance settings
+        // Parallel part uploads go through the async client, whose dispatcher caps requests per host
+        okhttp3.Dispatcher dispatcher = new okhttp3.Dispatcher();
+        dispatcher.setMaxRequestsPerHost(Math.max(5, connectionPoolSize));
+        okhttp3.OkHttpClient httpClient = new okhttp3.OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new okhttp3.ConnectionPool(connectionPoolSize, 5, java.util.concurrent.TimeUnit.MINUTES))
+            .readTimeout(readTimeoutSeconds, java.util.concurrent.TimeUnit.SECONDS)
+            .writeTimeout(writeTimeoutSeconds, java.util.concurrent.TimeUnit.SECONDS)
+            .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
+            .build();
+
+        MinioClient.Builder builder = MinioClient.builder()
+            .credentials(access, secret)
+            .httpClient(httpClient);
+        MinioAsyncClient.Builder asyncBuilder = MinioAsyncClient.builder()
+            .credentials(access, secret)
+            .httpClient(httpClient);
+
+        String ep = endpoint.trim();
+        try {
+            if (ep.startsWith("http://") || ep.startsWith("https://")) {
+                builder = builder.endpoint(ep);
+                asyncBuilder = asyncBuilder.endpoint(ep);
+            } else if (ep.contains(":")) {
+                int last = ep.lastIndexOf(':');
+                String host = ep.substring(0, last);
+                int port = Integer.parseInt(ep.substring(last + 1));
+                builder = builder.endpoint(host, port, secure);
+                asyncBuilder = asyncBuilder.endpoint(host, port, secure);
+            } else {
+                builder = builder.endpoint(ep, secure ? 443 : 9000, secure);
+                asyncBuilder = asyncBuilder.endpoint(ep, secure ? 443 : 9000, secure);
+            }
+        } catch (Exception e) {
+            builder = builder.endpoint(ep);
+            asyncBuilder = asyncBuilder.endpoint(ep);
+        }
+        this.client = builder.build();
+        this.asyncClient = asyncBuilder.build();
+    }
+
+    @Override
+    public void setUploadConcurrency(int concurrentParts, int partRetries) {
+        this.multipart = concurrentParts > 1 ? new MultipartUploader(asyncClient, bucket, concurrentParts, partRetries) : null;
+    }
+
+    @Override
+    public void putFile(Path file, String key, int partSize, int bufferSize) throws Exception {
+        long fileSize = Files.size(file);
+        MultipartUploader mp = multipart;
+        if (mp != null && fileSize > MultipartUploader.effectivePartSize(fileSize, partSize)) {
+            mp.uploadFile(file, key, partSize);
+            return;
+        }
+        // Use larger buffer for better performance with large files
+        int effectiveBufferSize = Math.max(bufferSize, 4 * 1024 * 1024); // Minimum 4MB buffer
+        IoThrottle.UPLOAD.acquire(fileSize);
+        long t = Metrics.UPLOAD.begin();
+        try (InputStream in = new java.io.BufferedInputStream(Files.newInputStream(file), effectiveBufferSize)) {
+            client.putObject(PutObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(key)
+                    .stream(in, fileSize, partSize)
+                    .contentType("application/octet-stream")
+                    .build());
+        } finally {
+            Metrics.UPLOAD.end(t, fileSize);
+        }
+    }
+
+    @Override
+    public void putStream(InputStream in, String key, int partSize) throws Exception {
+        MultipartUploader mp = multipart;
+        if (mp != null) {
+            mp.uploadStream(in, key, partSize);
+            return;
+        }
+        long effectivePartSize = Math.max(partSize, 5L * 1024 * 1024); // S3 minimum part size
+        client.putObject(PutObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .stream(in, -1, effectivePartSize)
+                .contentType("application/octet-stream")
+                .build());
+    }
+
+    @Override
+    public void putBytes(byte[] data, String key) throws Exception {
+        IoThrottle.UPLOAD.acquire(data.length);
+        long t = Metrics.UPLOAD.begin();
+        try (InputStream in = new java.io.ByteArrayInputStream(data)) {
+            client.putObject(PutObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(key)
+                    .stream(in, data.length, -1)
+                    .contentType("application/octet-stream")
+                    .build());
+        } finally {
+            Metrics.UPLOAD.end(t, data.length);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws Exception {
+        return client.getObject(GetObjectArgs.builder().bucket(bucket).object(key).build());
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws Exception {
+        return client.getObject(GetObjectArgs.builder().bucket(bucket).object(key).offset(offset).length(length).build());
+    }
+
+    @Override
+    public boolean exists(String key) throws Exception {
+        try {
+            client.statObject(StatObjectArgs.builder().bucket(bucket).object(key).build());
+            return true;
+        } catch (io.minio.errors.ErrorResponseException e) {
+            String code = e.errorResponse() != null ? e.errorResponse().code() : null;
+            if ("NoSuchKey".equals(code) || "NoSuchObject".equals(code)) return false;
+            throw e;
+        }
+    }
+
+    @Override
+    public long size(String key) throws Exception {
+        return client.statObject(StatObjectArgs.builder().bucket(bucket).object(key).build()).size();
+    }
+
+    @Override
+    public List<String> list(String prefix, boolean recursive) throws Exception {
+        Iterable<Result<Item>> results = client.listObjects(ListObjectsArgs.builder().bucket(bucket).recursive(recursive).prefix(prefix).build());
+        List<String> names = new ArrayList<>();
+        for (Result<Item> r : results) {
+            Item it = r.get();
+            if (!it.isDir()) names.add(it.objectName());
+        }
+        return names;
+    }
+
+    @Override
+    public Map<String, Long> listSizes(String prefix) throws Exception {
+        Iterable<Result<Item>> results = client.listObjects(ListObjectsArgs.builder().bucket(bucket).recursive(true).prefix(prefix).build());
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (Result<Item> r : results) {
+            Item it = r.get();
+            if (!it.isDir()) sizes.put(it.objectName(), it.size());
+        }
+        return sizes;
+    }
+
+    @Override
+    public void delete(List<String> keys) throws Exception {
+        if (keys.isEmpty()) return;
+        if (keys.size() > DELETE_BATCH) throw new IllegalArgumentException("At most " + DELETE_BATCH + " keys per delete, got " + keys.size());
+        List<DeleteObject> objects = new ArrayList<>(keys.size());
+        for (String k : keys) objects.add(new DeleteObject(k));
+        // The request is only sent, and only failed keys are reported (quiet mode), as the results are iterated
+        Iterable<Result<DeleteError>> results = client.removeObjects(RemoveObjectsArgs.builder().bucket(bucket).objects(objects).quiet(true).build());
+        int failed = 0;
+        String first = null;
+        for (Result<DeleteError> r : results) {
+            DeleteError e = r.get();
+            if (first == null) first = e.objectName() + " (" + e.code() + ": " + e.message() + ")";
+            failed++;
+        }
+        if (failed > 0) throw new IOException("Failed to delete " + failed + " of " + keys.size() + " objects, first: " + first);
+    }
+
+    @Override
+    public List<String> listPrefixes(String prefix) throws Exception {
+        Iterable<Result<Item>> results = client.listObjects(ListObjectsArgs.builder().bucket(bucket).recursive(false).prefix(prefix).build());
+        List<String> prefixes = new ArrayList<>();
+        for (Result<Item> r : results) {
+            Item it = r.get();
+            if (it.isDir()) prefixes.add(it.objectName());
+        }
+        return prefixes;
+    }
+}
@@ -0,0 +1,197 @@
+package com.c4g7.backupflow;
+
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+import com.c4g7.backupflow.util.TaskScope;
+import com.google.common.collect.HashMultimap;
+import io.minio.MinioAsyncClient;
+import io.minio.messages.Part;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+/**
+ * Multipart uploads with several parts in flight at once, built on the low-level
+ * create/upload-part/complete calls. {@code putObject} sends parts one after another over a single
+ * connection, which leaves most of a high-latency link idle. Each part is sent from its own
+ * virtual thread (see {@link TaskScope}). A part that fails is retried on its own; the upload is
+ * only aborted once a part has exhausted its retries, and the other parts are interrupted then.
+ */
+final class MultipartUploader {
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+
+    /** Exposes the protected multipart primitives of the async client. */
+    private static final class PartClient extends MinioAsyncClient {
+        PartClient(MinioAsyncClient client) { super(client); }
+
+        String create(String bucket, String object) throws Exception {
+            HashMultimap<String,String> headers = HashMultimap.create();
+            headers.put("Content-Type", "application/octet-stream");
+            return createMultipartUploadAsync(bucket, null, object, headers, HashMultimap.create()).get().result().uploadId();
+        }
+
+        String uploadPart(String bucket, String object, String uploadId, int partNumber, byte[] data, int length) throws Exception {
+            return uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber, HashMultimap.create(), HashMultimap.create()).get().etag();
+        }
+
+        void complete(String bucket, String object, String uploadId, Part[] parts) throws Exception {
+            completeMultipartUploadAsync(bucket, null, object, uploadId, parts, HashMultimap.create(), HashMultimap.create()).get();
+        }
+
+        void abort(String bucket, String object, String uploadId) throws Exception {
+            abortMultipartUploadAsync(bucket, null, object, uploadId, HashMultimap.create(), HashMultimap.create()).get();
+        }
+    }
+
+    private final PartClient client;
+    private final String bucket;
+    private final int concurrency;
+    private final int maxRetries;
+    private volatile LongConsumer partListener;
+
+    MultipartUploader(MinioAsyncClient client, String bucket, int concurrency, int maxRetries) {
+        this.client = new PartClient(client);
+        this.bucket = bucket;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /** Called with the byte count of every part once it is uploaded. */
+    void setPartListener(LongConsumer listener) { this.partListener = listener; }
+
+    static long effectivePartSize(long objectSize, long partSize) {
+        long size = Math.max(MIN_PART_SIZE, partSize);
+        if (objectSize > 0) size = Math.max(size, (objectSize + MAX_PARTS - 1) / MAX_PARTS);
+        return size;
+    }
+
+    /** Uploads a file, reading each part with a positional read so parts never share a stream. */
+    void uploadFile(Path file, String object, long partSize) throws Exception {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long ps = effectivePartSize(size, partSize);
+            int parts = (int) ((size + ps - 1) / ps);
+            String uploadId = client.create(bucket, object);
+            try (TaskScope scope = new TaskScope("upload-part", concurrency)) {
+                List<Future<Part>> futures = new ArrayList<>(parts);
+                for (int i = 0; i < parts; i++) {
+                    final int partNumber = i + 1;
+                    final long offset = i * ps;
+                    final int length = (int) Math.min(ps, size - offset);
+                    futures.add(scope.fork(() -> {
+                        byte[] data = new byte[length];
+                        long t = Metrics.READ.begin();
+                        readFully(ch, ByteBuffer.wrap(data), offset);
+                        Metrics.READ.end(t, length);
+                        IoThrottle.DISK.acquire(length);
+                        return uploadWithRetry(object, uploadId, partNumber, data, length);
+                    }));
+                }
+                scope.join();
+                client.complete(bucket, object, uploadId, collect(futures));
+            } catch (Exception e) {
+                abortQuietly(object, uploadId);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Uploads a stream of unknown length. Parts are read from the stream in order and uploaded in
+     * parallel; at most {@code concurrency} parts are in flight, plus the one being read.
+     */
+    void uploadStream(InputStream in, String object, long partSize) throws Exception {
+        int ps = (int) Math.min(Integer.MAX_VALUE - 16, Math.max(MIN_PART_SIZE, partSize));
+        String uploadId = client.create(bucket, object);
+        try (TaskScope scope = new TaskScope("upload-part", concurrency)) {
+            List<Future<Part>> futures = new ArrayList<>();
+            int partNumber = 0;
+            while (true) {
+                byte[] data = new byte[ps];
+                int length = in.readNBytes(data, 0, ps);
+                if (length == 0 && partNumber > 0) break;
+                final int number = ++partNumber;
+                if (number > MAX_PARTS) throw new IOException("Stream exceeds " + MAX_PARTS + " parts; increase uploadPartSizeMB");
+                futures.add(scope.fork(() -> uploadWithRetry(object, uploadId, number, data, length)));
+                if (length < ps) break;
+                // fail fast instead of reading the rest of the stream after a part gave up
+                if (scope.isCancelled()) break;
+            }
+            scope.join();
+            client.complete(bucket, object, uploadId, collect(futures));
+        } catch (Exception e) {
+            abortQuietly(object, uploadId);
+            throw e;
+        }
+    }
+
+    private Part uploadWithRetry(String object, String uploadId, int partNumber, byte[] data, int length) throws Exception {
+        IoThrottle.UPLOAD.acquire(length);
+        Exception last = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                Metrics.PART_RETRIES.inc(null);
+                Thread.sleep(Math.min(10_000L, 500L << (attempt - 1)));
+            }
+            long start = System.nanoTime();
+            long t = Metrics.UPLOAD.begin();
+            Metrics.UPLOAD_PARTS_IN_FLIGHT.add(1);
+            boolean ok = false;
+            try {
+                String etag = client.uploadPart(bucket, object, uploadId, partNumber, data, length);
+                ok = true;
+                LongConsumer l = partListener;
+                if (l != null) l.accept(length);
+                return new Part(partNumber, etag);
+            } catch (InterruptedException ie) {
+                throw ie;
+            } catch (Exception e) {
+                last = e;
+            } finally {
+                Metrics.UPLOAD_PARTS_IN_FLIGHT.add(-1);
+                Metrics.UPLOAD.end(t, ok ? length : 0);
+                Metrics.PART_UPLOAD_SECONDS.observe(null, (System.nanoTime() - start) / 1e9);
+            }
+        }
+        throw new IOException("Part " + partNumber + " failed after " + (maxRetries + 1) + " attempts: " + rootMessage(last), last);
+    }
+
+    private static Part[] collect(List<Future<Part>> futures) throws Exception {
+        Part[] parts = new Part[futures.size()];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                parts[i] = futures.get(i).get();
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof Exception e) throw e;
+                throw ee;
+            }
+        }
+        return parts;
+    }
+
+    private void abortQuietly(String object, String uploadId) {
+        try { client.abort(bucket, object, uploadId); } catch (Exception ignored) { }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int r = ch.read(buf, pos + buf.position());
+            if (r < 0) throw new IOException("File shrank while uploading");
+        }
+    }
+
+    private static String rootMessage(Throwable t) {
+        while (t != null && t.getCause() != null && t.getCause() != t) t = t.getCause();
+        return t == null ? "unknown" : t.getMessage();
+    }
+}
@@ -0,0 +1,56 @@
+package com.c4g7.backupflow;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Object storage backend behind {@link BackupStorageService}. Keys are full object names within one
+ * bucket; the backup layout (root dir, server id, key naming) is applied by the service, so a
+ * backend only moves bytes. {@link MinioObjectStore} is the production implementation.
+ */
+public interface ObjectStore extends AutoCloseable {
+
+    /** Most keys one multi-object delete request may carry (the S3 limit). */
+    int DELETE_BATCH = 1000;
+
+    /** Uploads a file; backends may split it into {@code partSize} multipart parts. */
+    void putFile(Path file, String key, int partSize, int bufferSize) throws Exception;
+
+    /** Uploads a stream of unknown length as a multipart object. */
+    void putStream(InputStream in, String key, int partSize) throws Exception;
+
+    void putBytes(byte[] data, String key) throws Exception;
+
+    InputStream get(String key) throws Exception;
+
+    /** {@code length} bytes starting at {@code offset}. */
+    InputStream getRange(String key, long offset, long length) throws Exception;
+
+    boolean exists(String key) throws Exception;
+
+    /** Size of the object in bytes. */
+    long size(String key) throws Exception;
+
+    /** Keys of the objects below {@code prefix}; without {@code recursive} only direct children. */
+    List<String> list(String prefix, boolean recursive) throws Exception;
+
+    /** Keys of all objects below {@code prefix} (recursive) with their sizes in bytes. */
+    Map<String, Long> listSizes(String prefix) throws Exception;
+
+    /**
+     * Deletes up to {@link #DELETE_BATCH} keys with one multi-object request. Missing keys count as
+     * deleted; if any other key fails, an {@link java.io.IOException} names it after the rest are gone.
+     */
+    void delete(List<String> keys) throws Exception;
+
+    /** Common prefixes one level below {@code prefix} ("directories", ending in {@code /}), via a delimiter listing. */
+    List<String> listPrefixes(String prefix) throws Exception;
+
+    /** See {@link BackupStorageService#setUploadConcurrency}; ignored by backends without parallel uploads. */
+    default void setUploadConcurrency(int concurrentParts, int partRetries) { }
+
+    @Override
+    default void close() { }
+}
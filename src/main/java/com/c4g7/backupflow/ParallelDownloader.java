@@ -0,0 +1,220 @@
+package com.c4g7.backupflow;
+
+import com.c4g7.backupflow.util.TaskScope;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads with several range GETs in flight at once. A single {@code getObject} stream is bound
+ * by the round-trip time of a high-latency link; splitting the object into segments keeps several
+ * connections busy, each segment on its own virtual thread. A segment that fails part-way is resumed from its last received byte, and a
+ * file download that gives up keeps its finished segments, so the next attempt only fetches the
+ * missing ones.
+ */
+final class ParallelDownloader {
+    private static final String PARTIAL_SUFFIX = ".bf-part";
+    private static final String SEGMENTS_SUFFIX = ".bf-segments";
+
+    private final ObjectStore store;
+    private final int streams;
+    private final long segmentSize;
+    private final int maxRetries;
+
+    ParallelDownloader(ObjectStore store, int streams, long segmentSize, int maxRetries) {
+        this.store = store;
+        this.streams = Math.max(1, streams);
+        this.segmentSize = Math.max(1024 * 1024, segmentSize);
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /** Whether an object of {@code size} bytes is worth splitting. */
+    boolean splits(long size) {
+        return streams > 1 && size > segmentSize;
+    }
+
+    /**
+     * Downloads {@code key} into {@code dest}. Segments are written with positional writes into a
+     * preallocated {@code dest.bf-part} file; the indices of finished segments are appended to
+     * {@code dest.bf-segments} once their data is forced to disk, and a later call for the same
+     * object picks the journal up to resume.
+     */
+    void download(String key, long size, Path dest) throws Exception {
+        Path partial = dest.resolveSibling(dest.getFileName() + PARTIAL_SUFFIX);
+        Path journal = dest.resolveSibling(dest.getFileName() + SEGMENTS_SUFFIX);
+        int segments = (int) ((size + segmentSize - 1) / segmentSize);
+        String header = key + " " + size + " " + segmentSize;
+        BitSet done = readJournal(journal, header, partial, size);
+        if (done.isEmpty()) Files.writeString(journal, header + "\n", StandardCharsets.UTF_8);
+        try (FileChannel ch = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel log = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             TaskScope scope = new TaskScope("download", Math.min(streams, segments))) {
+            if (ch.size() != size) ch.truncate(0).write(ByteBuffer.wrap(new byte[1]), size - 1); // preallocate (sparse where supported)
+            for (int i = done.nextClearBit(0); i < segments; i = done.nextClearBit(i + 1)) {
+                final int index = i;
+                final long offset = index * segmentSize;
+                final long length = Math.min(segmentSize, size - offset);
+                scope.fork(() -> {
+                    fetch(key, offset, length, (buf, pos) -> {
+                        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+                    });
+                    // on disk before it is journaled, or a resume after a crash could trust a hole of zeros
+                    ch.force(false);
+                    synchronized (log) {
+                        log.write(ByteBuffer.wrap((index + "\n").getBytes(StandardCharsets.UTF_8)));
+                    }
+                    return null;
+                });
+            }
+            scope.join();
+            ch.force(false);
+        }
+        Files.move(partial, dest, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(journal);
+    }
+
+    /**
+     * Streams {@code key} in order while up to {@code streams} following segments are fetched
+     * ahead into memory, for consumers that decode as they read (in-place restore).
+     */
+    InputStream open(String key, long size) {
+        return new ReadAheadStream(key, size);
+    }
+
+    private interface SegmentSink {
+        /** Consumes {@code buf}, which holds the bytes starting at object offset {@code position}. */
+        void write(ByteBuffer buf, long position) throws IOException;
+    }
+
+    /** Fetches one range, resuming from the last received byte after a failure. */
+    private void fetch(String key, long offset, long length, SegmentSink sink) throws Exception {
+        long received = 0;
+        Exception last = null;
+        byte[] buf = new byte[256 * 1024];
+        for (int attempt = 0; attempt <= maxRetries && received < length; attempt++) {
+            if (attempt > 0) Thread.sleep(Math.min(10_000L, 500L << (attempt - 1)));
+            try (InputStream in = store.getRange(key, offset + received, length - received)) {
+                int n;
+                while (received < length && (n = in.read(buf, 0, (int) Math.min(buf.length, length - received))) > 0) {
+                    sink.write(ByteBuffer.wrap(buf, 0, n), offset + received);
+                    received += n;
+                    attempt = 0; // progress: the retry budget is for consecutive failures
+                }
+                if (received < length) throw new IOException("Range ended after " + received + " of " + length + " bytes");
+            } catch (InterruptedException | InterruptedIOException ie) {
+                throw ie;
+            } catch (Exception e) {
+                last = e;
+            }
+        }
+        if (received < length) {
+            throw new IOException("Segment at " + offset + " failed after " + (maxRetries + 1) + " attempts: " + (last == null ? "no data" : last.getMessage()), last);
+        }
+    }
+
+    /** Finished segments from an earlier attempt at the same object, or none. */
+    private BitSet readJournal(Path journal, String header, Path partial, long size) throws IOException {
+        BitSet done = new BitSet();
+        if (!Files.exists(journal) || !Files.exists(partial) || Files.size(partial) != size) return done;
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(header)) return done;
+        for (String line : lines.subList(1, lines.size())) {
+            try {
+                done.set(Integer.parseInt(line.trim()));
+            } catch (NumberFormatException ignored) { } // torn last line
+        }
+        return done;
+    }
+
+    private static ExecutorService newPool() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("BackupFlow-download-", 0).factory());
+    }
+
+    private final class ReadAheadStream extends InputStream {
+        private final String key;
+        private final long size;
+        private final ExecutorService pool;
+        private final ArrayDeque<Future<byte[]>> window = new ArrayDeque<>();
+        private long nextOffset;
+        private byte[] current = new byte[0];
+        private int pos;
+        private boolean closed;
+
+        ReadAheadStream(String key, long size) {
+            this.key = key;
+            this.size = size;
+            this.pool = newPool(); // the read-ahead window bounds the segments in flight
+            fill();
+        }
+
+        private void fill() {
+            while (window.size() < streams && nextOffset < size) {
+                final long offset = nextOffset;
+                final int length = (int) Math.min(segmentSize, size - offset);
+                nextOffset += length;
+                window.add(pool.submit(() -> {
+                    byte[] data = new byte[length];
+                    fetch(key, offset, length, (buf, at) -> buf.get(data, (int) (at - offset), buf.remaining()));
+                    return data;
+                }));
+            }
+        }
+
+        private boolean advance() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (pos < current.length) return true;
+            Future<byte[]> next = window.poll();
+            if (next == null) return false;
+            try {
+                current = next.get();
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException io) throw io;
+                throw new IOException(ee.getCause().getMessage(), ee.getCause());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading");
+            }
+            pos = 0;
+            fill();
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return advance() ? current[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!advance()) return -1;
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            pool.shutdownNow();
+            window.clear();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.c4g7.backupflow.catalog;
+
+import com.c4g7.backupflow.BackupStorageService;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The list of a server's backups, kept as one small object in the bucket
+ * ({@code backups/<serverId>/catalog.json}) and mirrored in memory. Every committed backup is
+ * added to both, so listing, retention and tab completion never walk the backup objects. Only when
+ * the catalog object is missing or malformed is it rebuilt from a delimiter listing of the
+ * {@code full/} and {@code inc/} timestamp folders.
+ * <p>
+ * A catalog written by a newer version is never overwritten: the in-memory view is then built by
+ * listing and the catalog stays {@linkplain #isReadOnly() read-only}, so an older build sharing the
+ * bucket cannot discard what the newer one recorded.
+ */
+public final class BackupCatalog {
+    public enum Type {
+        FULL("full"), INC("inc");
+
+        private final String dir;
+
+        Type(String dir) { this.dir = dir; }
+
+        /** Folder name in the backup layout. */
+        public String dir() { return dir; }
+
+        static Type of(String dir) { return "inc".equals(dir) ? INC : FULL; }
+    }
+
+    /**
+     * One backup. {@code object} is the archive (full) or index (incremental) file name inside the
+     * timestamp folder and {@code size} its length in bytes; both are null / -1 for backups that
+     * were found by listing rather than recorded at commit.
+     */
+    public record Entry(long timestamp, Type type, String object, long size) {}
+
+    private static final int VERSION = 1;
+
+    private final BackupStorageService storage;
+    private final TreeMap<Long, Entry> entries = new TreeMap<>(); // guarded by this
+    private volatile List<String> timestamps = List.of(); // oldest first, for lock-free readers
+    private volatile boolean loaded;
+    private volatile boolean readOnly;
+
+    public BackupCatalog(BackupStorageService storage) {
+        this.storage = storage;
+    }
+
+    public boolean isLoaded() { return loaded; }
+
+    /** True while the catalog object was written by a newer version; changes are then kept in memory only. */
+    public boolean isReadOnly() { return readOnly; }
+
+    /**
+     * Reads the catalog object, rebuilding it by listing when there is none or it is malformed. A
+     * failure to fetch the object is thrown rather than taken for a missing catalog.
+     */
+    public synchronized void load() throws Exception {
+        String key = storage.catalogObjectName();
+        if (storage.exists(key)) {
+            byte[] data;
+            try (InputStream in = storage.openObject(key)) {
+                data = in.readAllBytes();
+            }
+            try {
+                replace(read(new java.io.ByteArrayInputStream(data)));
+                readOnly = false;
+                return;
+            } catch (NewerVersionException e) {
+                readOnly = true;
+                replace(listed());
+                return;
+            } catch (IOException | IllegalStateException e) {
+                // malformed: fall through and rebuild
+            }
+        }
+        readOnly = false;
+        rebuild();
+    }
+
+    /** Loads the catalog unless it already is. */
+    public void ensureLoaded() throws Exception {
+        if (!loaded) load();
+    }
+
+    /**
+     * Replaces the catalog with what a delimiter listing of the timestamp folders finds and writes it
+     * back. Details recorded at commit are kept for backups that are still there.
+     */
+    public synchronized void rebuild() throws Exception {
+        replace(listed());
+        save();
+    }
+
+    private List<Entry> listed() throws Exception {
+        List<Entry> found = new ArrayList<>();
+        for (Type type : Type.values()) {
+            for (String ts : storage.listBackups(type.dir())) {
+                long t;
+                try { t = Long.parseLong(ts); } catch (NumberFormatException e) { continue; }
+                Entry known = entries.get(t);
+                found.add(known != null && known.type() == type ? known : new Entry(t, type, null, -1));
+            }
+        }
+        return found;
+    }
+
+    /** Records a committed backup. */
+    public synchronized void add(Entry entry) throws Exception {
+        ensureLoaded();
+        entries.put(entry.timestamp(), entry);
+        publish();
+        save();
+    }
+
+    /** Drops deleted backups. */
+    public synchronized void remove(Collection<Long> removed) throws Exception {
+        ensureLoaded();
+        if (!entries.keySet().removeAll(removed)) return;
+        publish();
+        save();
+    }
+
+    public synchronized Entry get(long timestamp) {
+        return entries.get(timestamp);
+    }
+
+    /** All backups, oldest first. */
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /** Backups of one type, oldest first. */
+    public synchronized List<Entry> entries(Type type) {
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : entries.values()) if (e.type() == type) out.add(e);
+        return out;
+    }
+
+    /** Newest first, skipping {@code offset} backups; for paging through long histories. */
+    public synchronized List<Entry> page(int offset, int limit) {
+        List<Entry> out = new ArrayList<>(Math.max(0, limit));
+        NavigableMap<Long, Entry> desc = entries.descendingMap();
+        int i = 0;
+        for (Entry e : desc.values()) {
+            if (i++ < offset) continue;
+            if (out.size() >= limit) break;
+            out.add(e);
+        }
+        return out;
+    }
+
+    public synchronized int size() { return entries.size(); }
+
+    /** Timestamps of all backups, oldest first; an immutable snapshot safe to read from any thread. */
+    public List<String> timestamps() { return timestamps; }
+
+    private void replace(Collection<Entry> all) {
+        entries.clear();
+        for (Entry e : all) entries.put(e.timestamp(), e);
+        publish();
+        loaded = true;
+    }
+
+    private void publish() {
+        List<String> ts = new ArrayList<>(entries.size());
+        for (Long t : entries.keySet()) ts.add(Long.toString(t));
+        timestamps = List.copyOf(ts);
+    }
+
+    private void save() throws Exception {
+        if (readOnly) return;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64 + entries.size() * 64);
+        try (JsonWriter w = new JsonWriter(new OutputStreamWriter(buf, StandardCharsets.UTF_8))) {
+            w.beginObject();
+            w.name("version").value(VERSION);
+            w.name("backups").beginArray();
+            for (Entry e : entries.values()) {
+                w.beginObject();
+                w.name("ts").value(e.timestamp());
+                w.name("type").value(e.type().dir());
+                if (e.object() != null) w.name("object").value(e.object());
+                if (e.size() >= 0) w.name("size").value(e.size());
+                w.endObject();
+            }
+            w.endArray();
+            w.endObject();
+        }
+        storage.uploadBytes(buf.toByteArray(), storage.catalogObjectName());
+    }
+
+    private static List<Entry> read(InputStream in) throws IOException {
+        List<Entry> out = new ArrayList<>();
+        JsonReader r = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "version" -> {
+                    int v = r.nextInt();
+                    if (v > VERSION) throw new NewerVersionException(v);
+                }
+                case "backups" -> {
+                    r.beginArray();
+                    while (r.hasNext()) out.add(readEntry(r));
+                    r.endArray();
+                }
+                default -> r.skipValue();
+            }
+        }
+        r.endObject();
+        return out;
+    }
+
+    private static Entry readEntry(JsonReader r) throws IOException {
+        long ts = -1, size = -1;
+        String type = "full", object = null;
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "ts" -> ts = r.nextLong();
+                case "type" -> type = r.nextString();
+                case "object" -> object = r.nextString();
+                case "size" -> size = r.nextLong();
+                default -> r.skipValue();
+            }
+        }
+        r.endObject();
+        if (ts < 0) throw new IOException("Catalog entry without timestamp");
+        return new Entry(ts, Type.of(type), object, size);
+    }
+
+    private static final class NewerVersionException extends IOException {
+        NewerVersionException(int version) { super("Catalog version " + version + " is newer than supported"); }
+    }
+}
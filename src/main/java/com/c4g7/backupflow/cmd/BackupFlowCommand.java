@@ -28,9 +28,7 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
             switch (sub) {
                 case "backup":
                     require(sender, "backupflow.backup");
-                    if (plugin.startBackupAsync("manual", sender)) {
-                        sender.sendMessage(plugin.pref() + "§7Backup queued.");
-                    }
+                    plugin.startBackupAsync("manual", sender); // reports queueing itself
                     return true;
                 case "restore":
                     require(sender, "backupflow.restore");
@@ -58,63 +56,72 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
                 case "verify":
                     require(sender, "backupflow.verify");
                     if (args.length < 2) {
-                        sender.sendMessage("§cUsage: /" + label + " verify <timestamp> [--select worlds,plugins,configs,extra]");
+                        sender.sendMessage("§cUsage: /" + label + " verify <timestamp> [--select worlds,plugins,configs,extra] [--sample <percent>]");
                         return true;
                     }
                     String vts = args[1];
                     java.util.Set<String> vSections = new java.util.LinkedHashSet<>();
+                    Integer sample = null;
                     for (int i=2;i<args.length;i++) {
                         if (args[i].equalsIgnoreCase("--select") && i+1 < args.length) {
                             for (String seg : args[++i].split(",")) {
                                 seg = seg.trim().toLowerCase();
                                 if (!seg.isEmpty()) vSections.add(seg);
                             }
+                        } else if (args[i].equalsIgnoreCase("--sample") && i+1 < args.length) {
+                            try { sample = Integer.parseInt(args[++i].replace("%", "")); } catch (NumberFormatException ignored) { }
                         }
                     }
-                    sender.sendMessage(plugin.pref() + "§7Verify queued §f" + vts + (vSections.isEmpty()?" §8(all sections)":" §8sections=" + vSections));
-                    plugin.verifyBackupAsync(vts, vSections, sender);
+                    sender.sendMessage(plugin.pref() + "§7Verify queued §f" + vts + (vSections.isEmpty()?" §8(all sections)":" §8sections=" + vSections) + (sample != null ? " §8sample=" + sample + "%" : ""));
+                    plugin.verifyBackupAsync(vts, vSections, sample, sender);
                     return true;
                 case "retention":
                     require(sender, "backupflow.retention");
-                    if (args.length >= 2 && args[1].equalsIgnoreCase("plan")) {
-                        Integer keepDays = null; Integer max = null;
+                    if (args.length >= 2 && (args[1].equalsIgnoreCase("plan") || args[1].equalsIgnoreCase("run"))) {
+                        java.util.Map<String,Integer> overrides = new java.util.HashMap<>();
                         for (int i=2;i<args.length;i++) {
-                            if (args[i].equalsIgnoreCase("--keepDays") && i+1<args.length) { keepDays = Integer.parseInt(args[++i]); }
-                            else if (args[i].equalsIgnoreCase("--max") && i+1<args.length) { max = Integer.parseInt(args[++i]); }
+                            String rule = RETENTION_FLAGS.get(args[i].toLowerCase());
+                            if (rule != null && i+1<args.length) overrides.put(rule, Integer.parseInt(args[++i]));
+                        }
+                        if (args[1].equalsIgnoreCase("run")) {
+                            plugin.startRetentionAsync(overrides, sender);
+                            return true;
                         }
                         try {
-                            java.util.List<String> plan = plugin.retentionPlan(keepDays, max);
-                            sender.sendMessage(plugin.pref() + "§bRetention plan §7(" + plan.size() + "):");
-                            for (int pi=0; pi<plan.size(); pi++) sender.sendMessage("§7 - §f" + plan.get(pi));
+                            var plan = plugin.retentionPlan(overrides);
+                            sendRetentionPlan(sender, label, plan, plugin.retentionPolicy(overrides).keepsEverything());
                         } catch (Exception ex) {
                             sender.sendMessage(plugin.pref() + "§cRetention plan failed: " + ex.getMessage());
                         }
                         return true;
                     }
-                    sender.sendMessage(plugin.pref() + "§cUsage: /" + label + " retention plan [--keepDays N] [--max N]");
+                    sender.sendMessage(plugin.pref() + "§cUsage: /" + label + " retention <plan|run> [--last N] [--hourly N] [--daily N] [--weekly N] [--monthly N]");
                     return true;
                 case "list":
                     require(sender, "backupflow.list");
-                    var list = plugin.getStorage().listBackups("full");
-                    sender.sendMessage(plugin.pref() + "§bBackups §7(" + list.size() + "):");
-                    if (list.isEmpty()) {
-                        sender.sendMessage("§8 (none)");
-                    } else {
-                        // Sort timestamps in descending order (newest first)
-                        list.sort((a, b) -> Long.compare(Long.parseLong(b), Long.parseLong(a)));
-                        for (String timestamp : list) {
+                    int page = 1;
+                    boolean rebuild = false;
+                    for (int i = 1; i < args.length; i++) {
+                        if (args[i].equalsIgnoreCase("--rebuild")) rebuild = true;
+                        else try { page = Math.max(1, Integer.parseInt(args[i])); } catch (NumberFormatException ignored) { }
+                    }
+                    var catalog = plugin.getStorage().catalog();
+                    if (rebuild || !catalog.isLoaded()) {
+                        // first use or explicit rebuild needs the bucket: answer from an async task
+                        int p = page;
+                        boolean full = rebuild;
+                        sender.sendMessage(plugin.pref() + "§7" + (full ? "Rebuilding" : "Loading") + " backup catalog...");
+                        org.bukkit.Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
                             try {
-                                long epochSeconds = Long.parseLong(timestamp);
-                                Instant instant = Instant.ofEpochSecond(epochSeconds);
-                                String humanDate = instant.atZone(ZoneId.systemDefault())
-                                    .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                                sender.sendMessage("§7  " + humanDate + " §8(unix: " + timestamp + ")");
-                            } catch (NumberFormatException e) {
-                                // Fallback to raw timestamp if parsing fails
-                                sender.sendMessage("§7  " + timestamp);
+                                if (full) catalog.rebuild(); else catalog.ensureLoaded();
+                                sendBackupPage(sender, label, catalog, p);
+                            } catch (Exception ex) {
+                                sender.sendMessage("§cList failed: " + ex.getMessage());
                             }
-                        }
+                        });
+                        return true;
                     }
+                    sendBackupPage(sender, label, catalog, page);
                     return true;
                 case "manifests":
                     require(sender, "backupflow.manifests");
@@ -160,16 +167,27 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
                             }
                         }
                     }
+                    var changed = plugin.getLastChangedRoots();
+                    if (!changed.isEmpty()) sender.sendMessage("§7ChangedRoots: §f" + String.join(", ", changed));
                     long lpAge = System.currentTimeMillis() - plugin.getLastProgressAt();
                     if (plugin.isBackupRunning()) sender.sendMessage("§7LastProgressMs: §f" + lpAge);
                     if (plugin.getLastError() != null) sender.sendMessage("§7LastError: §c" + plugin.getLastError());
                     sender.sendMessage("§7Timeout(s): §f" + c.getLong("backup.hardTimeoutSeconds", 600L));
                     // Performance settings
                     sender.sendMessage("§bPerformance:");
+                    sender.sendMessage("§7Format: §f" + com.c4g7.backupflow.util.ArchiveFormat.fromConfig(c.getString("backup.compression", "zip")).extension());
                     sender.sendMessage("§7CompressionLevel: §f" + c.getInt("backup.performance.compressionLevel", 6));
                     sender.sendMessage("§7UploadPartSizeMB: §f" + c.getInt("backup.performance.uploadPartSizeMB", 64));
                     sender.sendMessage("§7UploadBufferSizeMB: §f" + c.getInt("backup.performance.uploadBufferSizeMB", 8));
                     sender.sendMessage("§7ParallelCompress: §f" + c.getBoolean("backup.performance.parallelCompress", false));
+                    sender.sendMessage("§7Streaming: §f" + c.getBoolean("backup.performance.streaming", false));
+                    sender.sendMessage("§7ConcurrentUploads: §f" + c.getInt("backup.performance.maxConcurrentUploads", 3));
+                    if (com.c4g7.backupflow.metrics.Metrics.isEnabled()) {
+                        sender.sendMessage("§bMetrics:" + (plugin.getMetricsPort() > 0 ? " §8(http://" + c.getString("metrics.bind", "127.0.0.1") + ":" + plugin.getMetricsPort() + "/metrics)" : ""));
+                        var summary = com.c4g7.backupflow.metrics.Metrics.summary();
+                        if (summary.isEmpty()) sender.sendMessage("§8 (nothing recorded yet)");
+                        summary.forEach((k, v) -> sender.sendMessage("§7" + k + ": §f" + v));
+                    }
                     return true;
                 case "status":
                     require(sender, "backupflow.status");
@@ -187,6 +205,8 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
                             if (eta >= 0) sender.sendMessage("§7ETA: §f" + eta + "s");
                         }
                     }
+                    if (plugin.getThrottle().isEnabled()) sender.sendMessage("§7Throttle: §f" + plugin.getThrottle().describe());
+                    sendJobs(sender);
                     long dur = plugin.getLastBackupDuration();
                     if (dur > 0) sender.sendMessage("§7Last duration: §f" + dur + "ms");
                     long end = plugin.getLastBackupEnd();
@@ -197,7 +217,7 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
                     require(sender, "backupflow.cancel");
                     if (!plugin.isBackupRunning()) { sender.sendMessage(plugin.pref() + "§cNo running backup"); return true; }
                     plugin.requestCancel();
-                    sender.sendMessage(plugin.pref() + "§eCancel requested – backup will stop at next safe phase boundary");
+                    sender.sendMessage(plugin.pref() + "§eCancel requested – copies and transfers in progress are being interrupted");
                     return true;
                 case "reload":
                     require(sender, "backupflow.reload");
@@ -220,13 +240,81 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
         throw new RuntimeException("Missing permission: " + node);
     }
 
+    /** Running and queued jobs, and when the schedules fire next. */
+    private void sendJobs(CommandSender sender) {
+        var jobs = plugin.getJobs();
+        var all = jobs.jobs();
+        if (!all.isEmpty()) {
+            sender.sendMessage("§7Jobs:");
+            long now = System.currentTimeMillis();
+            for (var j : all) {
+                String state;
+                if (j.startedAt() != null) state = "§erunning §8" + ((now - j.startedAt().toEpochMilli()) / 1000) + "s";
+                else if (j.notBefore().toEpochMilli() > now) state = "§8waiting until " + j.notBefore().atZone(ZoneId.systemDefault()).format(DateTimeFormatter.ofPattern("HH:mm"));
+                else state = "§7queued";
+                sender.sendMessage("§7 - §f" + j.label() + " " + state + (j.manual() ? "" : " §8(scheduled)"));
+            }
+        }
+        StringBuilder next = new StringBuilder();
+        for (String name : List.of("backup", "retention", "verify")) {
+            var in = jobs.untilNext(name);
+            if (in != null) next.append(next.length() > 0 ? ", " : "").append(name).append(" in ").append(in.toMinutes()).append("m");
+        }
+        if (next.length() > 0) sender.sendMessage("§7Next: §f" + next + (jobs.offPeak() != null ? " §8(off-peak " + jobs.offPeak() + ")" : ""));
+    }
+
+    private static final int LIST_PAGE_SIZE = 15;
+
+    /** One page of the catalog, newest first. */
+    private void sendBackupPage(CommandSender sender, String label, com.c4g7.backupflow.catalog.BackupCatalog catalog, int page) {
+        int total = catalog.size();
+        int pages = Math.max(1, (total + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE);
+        page = Math.min(page, pages);
+        sender.sendMessage(plugin.pref() + "§bBackups §7(" + total + ")" + (pages > 1 ? " §8page " + page + "/" + pages : "") + ":");
+        if (total == 0) {
+            sender.sendMessage("§8 (none)");
+            return;
+        }
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        for (var e : catalog.page((page - 1) * LIST_PAGE_SIZE, LIST_PAGE_SIZE)) {
+            String humanDate = Instant.ofEpochMilli(e.timestamp()).atZone(ZoneId.systemDefault()).format(fmt);
+            String kind = e.type() == com.c4g7.backupflow.catalog.BackupCatalog.Type.INC ? " §3inc" : "";
+            String size = e.size() >= 0 ? " §8" + (e.size() / (1024 * 1024)) + " MB" : "";
+            sender.sendMessage("§7  " + humanDate + kind + size + " §8(" + e.timestamp() + ")");
+        }
+        if (page < pages) sender.sendMessage("§8 /" + label + " list " + (page + 1) + " for older backups");
+    }
+
+    /** Retention command flags and the policy rule each overrides; --keepDays and --max are the older names. */
+    private static final java.util.Map<String,String> RETENTION_FLAGS = java.util.Map.of(
+            "--last", "last", "--max", "last", "--hourly", "hourly", "--daily", "daily", "--keepdays", "daily",
+            "--weekly", "weekly", "--monthly", "monthly");
+    private static final int PLAN_LINES = 20;
+
+    private void sendRetentionPlan(CommandSender sender, String label, com.c4g7.backupflow.retention.RetentionPolicy.Plan plan, boolean keepsEverything) {
+        sender.sendMessage(plugin.pref() + "§bRetention plan §7(keep " + plan.keep().size() + ", delete " + plan.expire().size() + "):");
+        if (keepsEverything) {
+            sender.sendMessage("§e No retention rules set (backup.retention.keep*); everything is kept");
+            return;
+        }
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        for (int i = 0; i < plan.expire().size() && i < PLAN_LINES; i++) {
+            var e = plan.expire().get(i);
+            String kind = e.type() == com.c4g7.backupflow.catalog.BackupCatalog.Type.INC ? " §3inc" : "";
+            sender.sendMessage("§c - §f" + Instant.ofEpochMilli(e.timestamp()).atZone(ZoneId.systemDefault()).format(fmt) + kind + " §8(" + e.timestamp() + ")");
+        }
+        if (plan.expire().size() > PLAN_LINES) sender.sendMessage("§8   ... and " + (plan.expire().size() - PLAN_LINES) + " more");
+        if (!plan.expire().isEmpty()) sender.sendMessage("§8 /" + label + " retention run deletes them");
+    }
+
     private void sendHelp(CommandSender s) {
         s.sendMessage(plugin.pref() + "§bCommands:");
         s.sendMessage("§f/backupflow backup §7- run full backup");
-        s.sendMessage("§f/backupflow list §7- list backup timestamps (sorted, human-readable)");
+        s.sendMessage("§f/backupflow list [page] [--rebuild] §7- list backups, newest first (--rebuild re-lists the bucket)");
         s.sendMessage("§f/backupflow restore <ts> [--select worlds,plugins,...] [--force] §7- restore backup");
-        s.sendMessage("§f/backupflow verify <ts> [--select ...] §7- verify archive hashes");
-        s.sendMessage("§f/backupflow retention plan [--keepDays N] [--max N] §7- retention preview");
+        s.sendMessage("§f/backupflow verify <ts> [--select ...] [--sample %] §7- verify archive hashes");
+        s.sendMessage("§f/backupflow retention plan [--last N] [--hourly N] [--daily N] [--weekly N] [--monthly N] §7- retention preview");
+        s.sendMessage("§f/backupflow retention run [same options] §7- delete expired backups and unreferenced chunks");
         s.sendMessage("§f/backupflow manifests §7- list manifest files");
         s.sendMessage("§f/backupflow version §7- show plugin version");
         s.sendMessage("§f/backupflow status §7- show running/last backup info");
@@ -248,7 +336,7 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
         } else if (args[0].equalsIgnoreCase("restore") || args[0].equalsIgnoreCase("verify")) {
             // suggest flags
             String last = args[args.length-1].toLowerCase();
-            for (String opt : List.of("--select","--force")) {
+            for (String opt : args[0].equalsIgnoreCase("verify") ? List.of("--select","--sample") : List.of("--select","--force")) {
                 if (opt.startsWith(last)) out.add(opt);
             }
             // after --select provide section suggestions
@@ -267,10 +355,10 @@ public class BackupFlowCommand implements CommandExecutor, TabCompleter {
             }
         } else if (args[0].equalsIgnoreCase("retention") && args.length >=2 ) {
             if (args.length == 2) {
-                if ("plan".startsWith(args[1].toLowerCase())) out.add("plan");
+                for (String sub : List.of("plan","run")) if (sub.startsWith(args[1].toLowerCase())) out.add(sub);
             } else {
                 String last = args[args.length-1].toLowerCase();
-                for (String opt : List.of("--keepDays","--max")) if (opt.startsWith(last)) out.add(opt);
+                for (String opt : List.of("--last","--hourly","--daily","--weekly","--monthly")) if (opt.startsWith(last)) out.add(opt);
             }
         }
         return out;
@@ -0,0 +1,85 @@
+package com.c4g7.backupflow.incremental;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local record of which chunk hashes already exist in the bucket, so the incremental engine can
+ * skip an upload without a HEAD request per chunk. Stored as one hex hash per line and appended to
+ * as chunks are uploaded; a missing file means "unknown" and is rebuilt from a single listing.
+ */
+public final class ChunkIndex implements AutoCloseable {
+    private final Path file;
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    private BufferedWriter appender;
+
+    private ChunkIndex(Path file) { this.file = file; }
+
+    public static ChunkIndex load(Path file) throws IOException {
+        ChunkIndex idx = new ChunkIndex(file);
+        if (Files.exists(file)) {
+            try (var lines = Files.lines(file, StandardCharsets.US_ASCII)) {
+                lines.map(String::trim).filter(l -> !l.isEmpty()).forEach(idx.known::add);
+            }
+        }
+        return idx;
+    }
+
+    public boolean isPresent() { return Files.exists(file); }
+    public int size() { return known.size(); }
+    public boolean contains(String hash) { return known.contains(hash); }
+
+    public synchronized void add(String hash) throws IOException {
+        if (!known.add(hash)) return;
+        if (appender == null) {
+            Files.createDirectories(file.getParent());
+            appender = Files.newBufferedWriter(file, StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        appender.write(hash);
+        appender.write('\n');
+    }
+
+    /** Replaces the whole index, e.g. after bootstrapping from a bucket listing. */
+    public synchronized void replaceAll(Collection<String> hashes) throws IOException {
+        closeAppender();
+        known.clear();
+        known.addAll(hashes);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.US_ASCII)) {
+            for (String h : known) { w.write(h); w.write('\n'); }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forgets chunks that are about to be deleted from the bucket, so the next backup uploads them
+     * again instead of referencing them. An index that was never written stays unwritten.
+     */
+    public synchronized void removeAll(Collection<String> hashes) throws IOException {
+        if (!isPresent() || !known.removeAll(hashes)) return;
+        replaceAll(new ArrayList<>(known));
+    }
+
+    public synchronized void flush() throws IOException {
+        if (appender != null) appender.flush();
+    }
+
+    private void closeAppender() throws IOException {
+        if (appender != null) { appender.close(); appender = null; }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeAppender();
+    }
+}
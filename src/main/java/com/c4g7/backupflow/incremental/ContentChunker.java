@@ -0,0 +1,126 @@
+package com.c4g7.backupflow.incremental;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking (FastCDC style gear hash with normalized chunking). Cut points depend
+ * only on the bytes around them, so an insertion or edit only changes the chunks it touches and
+ * every other chunk keeps its hash. The gear table is seeded with a fixed constant: changing it
+ * would re-chunk every file and defeat deduplication against existing backups.
+ */
+public final class ContentChunker {
+    private static final long[] GEAR = new long[256];
+    static {
+        SplittableRandom rnd = new SplittableRandom(0x4246_4344_4331_0001L);
+        for (int i = 0; i < GEAR.length; i++) GEAR[i] = rnd.nextLong();
+    }
+
+    public interface ChunkConsumer {
+        void accept(byte[] buf, int off, int len) throws IOException;
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall;
+    private final long maskLarge;
+
+    public ContentChunker(int avgSize, int maxSize) {
+        this.avgSize = Integer.highestOneBit(Math.max(4096, avgSize));
+        this.maxSize = Math.max(this.avgSize * 2, maxSize);
+        this.minSize = this.avgSize / 4;
+        int bits = Integer.numberOfTrailingZeros(this.avgSize);
+        this.maskSmall = topBits(bits + 2);
+        this.maskLarge = topBits(bits - 2);
+    }
+
+    private static long topBits(int n) {
+        return ((1L << n) - 1) << (64 - n);
+    }
+
+    public int maxSize() { return maxSize; }
+
+    /**
+     * A working buffer for {@link #split(InputStream, byte[], ChunkConsumer)} of a stream expected
+     * to hold {@code sizeHint} bytes: the whole stream if it is small, otherwise a few average
+     * chunks. Only a stretch without a cut point needs more, up to {@link #maxSize()}, and
+     * {@code split} grows the buffer for that when it happens.
+     */
+    public byte[] newBuffer(long sizeHint) {
+        return new byte[bufferSize(sizeHint)];
+    }
+
+    /** Length {@link #newBuffer} would allocate for {@code sizeHint}; at most {@link #standardBufferSize()}. */
+    public int bufferSize(long sizeHint) {
+        long want = sizeHint < standardBufferSize() ? sizeHint + 1 : standardBufferSize(); // +1 so the first read already sees the end
+        return (int) Math.max(8192L, want);
+    }
+
+    /** Buffer length for a stream larger than a few average chunks. */
+    public int standardBufferSize() {
+        return Math.min(maxSize, avgSize * 4);
+    }
+
+    /** Splits the stream into chunks; the consumer's buffer is reused after it returns. */
+    public void split(InputStream in, ChunkConsumer consumer) throws IOException {
+        split(in, new byte[standardBufferSize()], consumer);
+    }
+
+    /**
+     * Splits the stream into chunks using {@code buf} as working buffer, which grows (up to
+     * {@link #maxSize()}) only if a chunk does not fit. Chunks are handed out in place and the
+     * unread tail is only moved to the front when a cut point cannot be decided without reading
+     * more, not after every chunk. The consumer's buffer is reused after it returns.
+     *
+     * @return the buffer used, possibly grown, for the caller to reuse
+     */
+    public byte[] split(InputStream in, byte[] buf, ChunkConsumer consumer) throws IOException {
+        int start = 0, end = 0;
+        boolean eof = false;
+        while (true) {
+            int cut = cutPoint(buf, start, end - start, eof);
+            if (cut > 0) {
+                consumer.accept(buf, start, cut);
+                start += cut;
+                continue;
+            }
+            if (eof) return buf;
+            // Undecided: compact the unread tail, grow if it fills the buffer, and read more
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buf.length) buf = java.util.Arrays.copyOf(buf, (int) Math.min(maxSize, 2L * buf.length));
+            int r = in.readNBytes(buf, end, buf.length - end);
+            end += r;
+            if (end < buf.length) eof = true;
+        }
+    }
+
+    /**
+     * Length of the chunk starting at {@code off} given {@code len} available bytes, or -1 when
+     * more bytes are needed to decide (the stream has not ended and no cut point was found before
+     * the available bytes run out, short of {@link #maxSize()}). 0 only for an empty, ended stream.
+     */
+    private int cutPoint(byte[] buf, int off, int len, boolean eof) {
+        int limit = Math.min(len, maxSize);
+        boolean decided = eof || limit == maxSize;
+        if (limit <= minSize) return decided ? limit : -1;
+        int normal = off + Math.min(avgSize, limit);
+        int stop = off + limit;
+        long h = 0;
+        int i = off + minSize;
+        for (; i < normal; i++) {
+            h = (h << 1) + GEAR[buf[i] & 0xFF];
+            if ((h & maskSmall) == 0) return i + 1 - off;
+        }
+        for (; i < stop; i++) {
+            h = (h << 1) + GEAR[buf[i] & 0xFF];
+            if ((h & maskLarge) == 0) return i + 1 - off;
+        }
+        return decided ? limit : -1;
+    }
+}
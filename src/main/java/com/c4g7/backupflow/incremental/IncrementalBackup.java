@@ -0,0 +1,563 @@
+package com.c4g7.backupflow.incremental;
+
+import com.c4g7.backupflow.BackupStorageService;
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+import com.c4g7.backupflow.util.ProgressListener;
+import com.c4g7.backupflow.util.SourceRoot;
+import com.c4g7.backupflow.util.SourceWalker;
+import com.c4g7.backupflow.util.TaskScope;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Incremental backups on top of a content-addressed chunk store. Every file is split into
+ * content-defined chunks; each distinct chunk is uploaded once (deflated) under
+ * {@code chunks/<aa>/<sha256>}, and a backup is just an index object listing the chunk hashes of
+ * every file. A mostly idle server therefore uploads only the chunks that actually changed.
+ * <p>
+ * Anvil region files are split along Minecraft chunk boundaries instead: each chunk payload is
+ * one stored chunk, and chunks whose header location and timestamp match the previous backup are
+ * reused without being read. Restore rebuilds the {@code .mca} file from those payloads.
+ */
+public final class IncrementalBackup {
+    private static final HexFormat HEX = HexFormat.of();
+    private static final int INDEX_VERSION = 1;
+
+    public static final class FileEntry {
+        public final String path;
+        public final long size;
+        public final long mtime;
+        public final String sha256; // null for region entries (rebuilt, not byte-identical)
+        public final List<String> chunks;
+        public final List<RegionChunk> region; // non-null for region-aware entries
+        FileEntry(String path, long size, long mtime, String sha256, List<String> chunks, List<RegionChunk> region) {
+            this.path = path; this.size = size; this.mtime = mtime; this.sha256 = sha256; this.chunks = chunks; this.region = region;
+        }
+    }
+
+    public record RegionChunk(int index, int timestamp, String hash) {}
+
+    public static final class Result {
+        public String indexObject;
+        public long files;
+        public long bytes;
+        public long newChunks;
+        public long uploadedBytes;
+        public long reusedChunks;
+        public long regionChunksSkipped; // unchanged region chunks reused without reading
+        public long filesSkipped; // unchanged files reused from the file state index without reading
+    }
+
+    public static final class VerifyResult {
+        public int total; public int matched; public int mismatched; public int missing;
+        public final List<String> problems = new ArrayList<>();
+    }
+
+    private final BackupStorageService storage;
+    private final ChunkIndex index;
+    private final ContentChunker chunker;
+    private final int compressionLevel;
+    private final int concurrency;
+    private final Logger logger;
+    private int readThreads = 1;
+    private RegionStateCache regionState;
+    private com.c4g7.backupflow.util.FileStateIndex fileState;
+    private com.c4g7.backupflow.util.ExclusionMatcher exclusions = com.c4g7.backupflow.util.ExclusionMatcher.NONE;
+
+    public IncrementalBackup(BackupStorageService storage, ChunkIndex index, int avgChunkSize, int maxChunkSize, int compressionLevel, int concurrency, Logger logger) {
+        this.storage = storage;
+        this.index = index;
+        this.chunker = new ContentChunker(avgChunkSize, maxChunkSize);
+        this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+        this.concurrency = Math.max(1, concurrency);
+        this.logger = logger;
+    }
+
+    /** Enables sector-level handling of {@code .mca} files, caching per-region state in {@code stateDir}. */
+    public IncrementalBackup regionAware(Path stateDir) {
+        this.regionState = stateDir != null ? new RegionStateCache(stateDir) : null;
+        return this;
+    }
+
+    /**
+     * Reuses the recorded hash and chunk list of files whose size, mtime and file key are unchanged
+     * since the last backup, instead of reading and re-chunking them. The index is rewritten after
+     * every successful backup.
+     */
+    public IncrementalBackup fileState(com.c4g7.backupflow.util.FileStateIndex fileState) {
+        this.fileState = fileState;
+        return this;
+    }
+
+    /**
+     * Reads, chunks and hashes up to {@code threads} files at once (region files stay on the
+     * walking thread). Entries then appear in the index in completion order rather than walk order.
+     */
+    public IncrementalBackup readThreads(int threads) {
+        this.readThreads = Math.max(1, threads);
+        return this;
+    }
+
+    /** Leaves files matched by {@code exclusions} out of backups. */
+    public IncrementalBackup exclusions(com.c4g7.backupflow.util.ExclusionMatcher exclusions) {
+        this.exclusions = exclusions;
+        return this;
+    }
+
+    /** Seeds the local chunk index from one bucket listing when it does not exist yet. */
+    public void ensureIndex() throws Exception {
+        if (index.isPresent()) return;
+        List<String> names = storage.listObjectNames(storage.chunkPrefix());
+        List<String> hashes = new ArrayList<>(names.size());
+        for (String n : names) hashes.add(n.substring(n.lastIndexOf('/') + 1));
+        index.replaceAll(hashes);
+        logger.info("Chunk index initialized from bucket: " + hashes.size() + " chunks");
+    }
+
+    public Result backup(Instant ts, List<SourceRoot> roots, Path skipDir, Path workDir, String reason, String serverId, ProgressListener listener) throws Exception {
+        ensureIndex();
+        Path indexFile = Files.createTempFile(workDir, "bf-inc-", ".json");
+        try (BackupRun run = new BackupRun(); var nextState = fileState != null ? fileState.newWriter() : null) {
+            run.nextState = nextState;
+            try (JsonWriter w = new JsonWriter(Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8))) {
+                w.beginObject();
+                w.name("version").value(INDEX_VERSION);
+                w.name("type").value("incremental");
+                w.name("timestamp").value(ts.toEpochMilli());
+                w.name("serverId").value(serverId);
+                w.name("reason").value(reason);
+                w.name("chunkHash").value("sha256");
+                w.name("chunkCompression").value("deflate");
+                w.name("files").beginArray();
+                SourceWalker.walk(roots, skipDir, exclusions, (file, name) -> {
+                    if (listener != null && listener.isCancelled()) throw new IOException("Cancelled");
+                    run.checkFailure();
+                    if (regionState != null && RegionFile.isRegionFile(name)) {
+                        long size = run.addRegion(w, file, name);
+                        if (size >= 0) { run.fileDone(file, size, listener); return; }
+                    }
+                    // Other files are read, chunked and hashed concurrently; entries land in the index as they finish
+                    run.readers.fork(() -> {
+                        long size = run.addFile(w, file, name);
+                        if (size >= 0) run.fileDone(file, size, listener); // else vanished
+                        return null;
+                    });
+                });
+                run.readers.join();
+                w.endArray();
+                w.endObject();
+            }
+            // Wait for every chunk upload before publishing the index that references them
+            run.awaitUploads();
+            index.flush();
+            run.checkFailure();
+            run.result.files = run.files.get();
+            run.result.bytes = run.bytes.get();
+            run.result.newChunks = run.newChunks.get();
+            run.result.reusedChunks = run.reusedChunks.get();
+            run.result.filesSkipped = run.filesSkipped.get();
+            run.result.uploadedBytes = run.uploadedBytes.get();
+            run.result.indexObject = storage.beginIncrementalBackupKeyPrefix(ts) + "index.json";
+            storage.uploadFile(indexFile, run.result.indexObject);
+            if (nextState != null) {
+                try {
+                    nextState.commit();
+                } catch (IOException e) { // the backup is uploaded; the next one just reads every file again
+                    logger.warning("File state index not updated: " + e.getMessage());
+                }
+            }
+            return run.result;
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+    }
+
+    /**
+     * Reader and upload scopes and counters for one backup run. Files are read by {@code readers}
+     * and chunks uploaded by {@code uploads}, both on virtual threads; a failure in either, or an
+     * interrupt of the backup thread, cancels the run.
+     */
+    private final class BackupRun implements AutoCloseable {
+        final Result result = new Result();
+        final TaskScope readers = new TaskScope("chunk-read", readThreads);
+        final TaskScope uploads = new TaskScope("chunk-upload", concurrency);
+        final Set<String> pending = ConcurrentHashMap.newKeySet();
+        // Chunker buffers of finished reads, reused by the next file: at most one per reader in use,
+        // and never one that split() had to grow, so a long run does not keep maxSize buffers alive
+        final java.util.concurrent.ConcurrentLinkedDeque<byte[]> buffers = new java.util.concurrent.ConcurrentLinkedDeque<>();
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong newChunks = new AtomicLong();
+        final AtomicLong reusedChunks = new AtomicLong();
+        final AtomicLong filesSkipped = new AtomicLong();
+        final AtomicLong uploadedBytes = new AtomicLong();
+        com.c4g7.backupflow.util.FileStateIndex.Writer nextState;
+
+        void checkFailure() throws IOException {
+            uploads.throwIfFailed();
+            readers.throwIfFailed();
+        }
+
+        void fileDone(Path file, long size, ProgressListener listener) {
+            files.incrementAndGet();
+            bytes.addAndGet(size);
+            if (listener != null) listener.onFile(file, size);
+        }
+
+        /**
+         * Hashes a chunk and schedules its upload unless the bucket already has it. Unless
+         * {@code owned}, the bytes are copied first, since the caller reuses {@code buf}.
+         */
+        String submit(byte[] buf, int off, int len, boolean owned) throws IOException {
+            MessageDigest cd = sha256();
+            cd.update(buf, off, len);
+            String hash = HEX.formatHex(cd.digest());
+            if (index.contains(hash) || !pending.add(hash)) {
+                reusedChunks.incrementAndGet();
+                return hash;
+            }
+            newChunks.incrementAndGet();
+            byte[] raw = owned && off == 0 && len == buf.length ? buf : java.util.Arrays.copyOfRange(buf, off, off + len);
+            uploads.fork(() -> {
+                Metrics.CHUNK_UPLOADS_IN_FLIGHT.add(1);
+                try {
+                    byte[] packed = deflate(raw);
+                    storage.uploadBytes(packed, storage.chunkObjectName(hash));
+                    index.add(hash);
+                    uploadedBytes.addAndGet(packed.length);
+                    return null;
+                } catch (InterruptedException | java.io.InterruptedIOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Chunk upload failed: " + e.getMessage(), e);
+                } finally {
+                    Metrics.CHUNK_UPLOADS_IN_FLIGHT.add(-1);
+                }
+            });
+            return hash;
+        }
+
+        long addFile(JsonWriter w, Path file, String name) throws IOException {
+            java.nio.file.attribute.BasicFileAttributes attrs;
+            try { attrs = Files.readAttributes(file, java.nio.file.attribute.BasicFileAttributes.class); } catch (IOException e) { return -1; }
+            long mtime = attrs.lastModifiedTime().toMillis();
+            var known = fileState != null ? fileState.lookup(name) : null;
+            if (known != null && known.hash() != null && known.matches(attrs) && known.chunks().stream().allMatch(index::contains)) {
+                filesSkipped.incrementAndGet();
+                reusedChunks.addAndGet(known.chunks().size());
+                writeFileEntry(w, name, known.size(), mtime, known.hash(), known.chunks());
+                if (nextState != null) nextState.put(name, attrs, known.hash(), known.chunks());
+                return known.size();
+            }
+            MessageDigest fileDigest = sha256();
+            List<String> chunks = new ArrayList<>();
+            long[] size = {0};
+            byte[] buffer = buffers.poll();
+            if (buffer == null || buffer.length < chunker.bufferSize(attrs.size())) buffer = chunker.newBuffer(attrs.size());
+            try (InputStream in = IoThrottle.throttle(Metrics.READ.meter(Files.newInputStream(file)))) {
+                buffer = chunker.split(in, buffer, (buf, off, len) -> {
+                    fileDigest.update(buf, off, len);
+                    size[0] += len;
+                    chunks.add(submit(buf, off, len, false));
+                });
+            } catch (java.nio.file.NoSuchFileException vanished) {
+                return -1;
+            } finally {
+                if (buffer.length <= chunker.standardBufferSize()) buffers.push(buffer);
+            }
+            String hash = HEX.formatHex(fileDigest.digest());
+            writeFileEntry(w, name, size[0], mtime, hash, chunks);
+            // attrs were read before the content, so a concurrent write leaves a newer mtime and forces a re-read
+            if (nextState != null) nextState.put(name, attrs, hash, chunks);
+            return size[0];
+        }
+
+        private void writeFileEntry(JsonWriter w, String name, long size, long mtime, String sha256, List<String> chunks) throws IOException {
+            synchronized (w) {
+                writeEntry(w, name, size, mtime, sha256, chunks);
+            }
+        }
+
+        private void writeEntry(JsonWriter w, String name, long size, long mtime, String sha256, List<String> chunks) throws IOException {
+            w.beginObject();
+            w.name("path").value(name);
+            w.name("size").value(size);
+            w.name("mtime").value(mtime);
+            w.name("sha256").value(sha256);
+            w.name("chunks").beginArray();
+            for (String c : chunks) w.value(c);
+            w.endArray();
+            w.endObject();
+        }
+
+        /**
+         * Stores a region file chunk by chunk. Returns -1 when the file is not a readable region
+         * file, in which case the caller falls back to content-defined chunking.
+         */
+        long addRegion(JsonWriter w, Path file, String name) throws IOException {
+            long mtime;
+            long size;
+            RegionStateCache.State previous = regionState.load(name);
+            RegionStateCache.State next = new RegionStateCache.State();
+            List<RegionChunk> chunks = new ArrayList<>();
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.READ)) {
+                mtime = Files.getLastModifiedTime(file).toMillis();
+                size = ch.size();
+                RegionFile rf = RegionFile.readHeader(ch);
+                if (rf == null) return -1;
+                for (int i = 0; i < RegionFile.CHUNKS; i++) {
+                    if (!rf.isPresent(i)) continue;
+                    String hash = null;
+                    if (previous != null && previous.hashes[i] != null
+                            && previous.locations[i] == rf.location(i) && previous.timestamps[i] == rf.timestamp(i)
+                            && index.contains(previous.hashes[i])) {
+                        hash = previous.hashes[i];
+                        result.regionChunksSkipped++;
+                        reusedChunks.incrementAndGet();
+                    } else {
+                        byte[] payload;
+                        long t = Metrics.READ.begin();
+                        try {
+                            payload = rf.readPayload(ch, i);
+                        } catch (IOException corrupt) {
+                            Metrics.READ.end(t, 0);
+                            return -1; // torn or damaged region: keep the raw bytes instead
+                        }
+                        Metrics.READ.end(t, payload.length);
+                        IoThrottle.DISK.acquire(payload.length);
+                        hash = submit(payload, 0, payload.length, true);
+                    }
+                    next.locations[i] = rf.location(i);
+                    next.timestamps[i] = rf.timestamp(i);
+                    next.hashes[i] = hash;
+                    chunks.add(new RegionChunk(i, rf.timestamp(i), hash));
+                }
+            } catch (java.nio.file.NoSuchFileException vanished) {
+                return -1;
+            }
+            synchronized (w) {
+                w.beginObject();
+                w.name("path").value(name);
+                w.name("size").value(size);
+                w.name("mtime").value(mtime);
+                w.name("format").value("anvil");
+                w.name("region").beginArray();
+                for (RegionChunk c : chunks) {
+                    w.beginArray().value(c.index()).value(c.timestamp()).value(c.hash()).endArray();
+                }
+                w.endArray();
+                w.endObject();
+            }
+            // Only hashes of chunks the bucket already has are reused next time (see index.contains above)
+            regionState.save(name, next);
+            return size;
+        }
+
+        void awaitUploads() throws IOException {
+            uploads.join();
+        }
+
+        @Override
+        public void close() {
+            readers.close();
+            uploads.close();
+        }
+    }
+
+    public int restore(String timestamp, Predicate<String> selector, Path destRoot, boolean force, Path workDir) throws Exception {
+        Path root = destRoot.toAbsolutePath().normalize();
+        int[] restored = {0};
+        forEachFile(timestamp, workDir, entry -> {
+            if (selector != null && !selector.test(entry.path)) return;
+            Path target = root.resolve(entry.path).normalize();
+            if (!target.startsWith(root)) return; // security
+            if (!force && Files.exists(target)) return;
+            Files.createDirectories(target.getParent());
+            Path tmp = com.c4g7.backupflow.util.FileUtils.createSiblingTemp(target.getParent());
+            try {
+                if (entry.region != null) {
+                    rebuildRegion(entry, tmp);
+                } else {
+                    String calc;
+                    try (OutputStream out = Files.newOutputStream(tmp)) {
+                        calc = readFile(entry, out);
+                    }
+                    if (!calc.equalsIgnoreCase(entry.sha256)) throw new IOException("Hash mismatch restoring " + entry.path);
+                }
+                com.c4g7.backupflow.util.FileUtils.copyPermissions(target, tmp);
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                restored[0]++;
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        });
+        return restored[0];
+    }
+
+    public VerifyResult verify(String timestamp, Predicate<String> selector, Path workDir) throws Exception {
+        VerifyResult stats = new VerifyResult();
+        forEachFile(timestamp, workDir, entry -> {
+            if (selector != null && !selector.test(entry.path)) return;
+            stats.total++;
+            try {
+                if (entry.region != null) {
+                    // Region entries have no whole-file hash; every chunk hash is checked instead
+                    for (RegionChunk c : entry.region) readChunk(c.hash(), OutputStream.nullOutputStream(), null);
+                    stats.matched++;
+                    return;
+                }
+                String calc = readFile(entry, OutputStream.nullOutputStream());
+                if (calc.equalsIgnoreCase(entry.sha256)) stats.matched++;
+                else { stats.mismatched++; stats.problems.add("mismatch:" + entry.path); }
+            } catch (IOException ex) {
+                stats.missing++;
+                stats.problems.add("unreadable:" + entry.path + " (" + ex.getMessage() + ")");
+            }
+        });
+        return stats;
+    }
+
+    interface EntryHandler {
+        void accept(FileEntry entry) throws IOException;
+    }
+
+    /** Streams the index of a backup, so memory use does not grow with the number of files. */
+    void forEachFile(String timestamp, Path workDir, EntryHandler handler) throws Exception {
+        Path indexFile = Files.createTempFile(workDir, "bf-inc-", ".json");
+        try {
+            storage.downloadFile(storage.incrementalIndexName(timestamp), indexFile);
+            try (JsonReader r = new JsonReader(Files.newBufferedReader(indexFile, StandardCharsets.UTF_8))) {
+                r.beginObject();
+                while (r.hasNext()) {
+                    if (!r.nextName().equals("files")) { r.skipValue(); continue; }
+                    r.beginArray();
+                    while (r.hasNext()) handler.accept(readEntry(r));
+                    r.endArray();
+                }
+                r.endObject();
+            }
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+    }
+
+    private static FileEntry readEntry(JsonReader r) throws IOException {
+        String path = null, sha = null;
+        long size = 0, mtime = 0;
+        List<String> chunks = new ArrayList<>();
+        List<RegionChunk> region = null;
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "path" -> path = r.nextString();
+                case "size" -> size = r.nextLong();
+                case "mtime" -> mtime = r.nextLong();
+                case "sha256" -> sha = r.nextString();
+                case "chunks" -> {
+                    r.beginArray();
+                    while (r.peek() != JsonToken.END_ARRAY) chunks.add(r.nextString());
+                    r.endArray();
+                }
+                case "region" -> {
+                    region = new ArrayList<>();
+                    r.beginArray();
+                    while (r.hasNext()) {
+                        r.beginArray();
+                        region.add(new RegionChunk(r.nextInt(), r.nextInt(), r.nextString()));
+                        r.endArray();
+                    }
+                    r.endArray();
+                }
+                default -> r.skipValue();
+            }
+        }
+        r.endObject();
+        if (path == null || (sha == null && region == null)) throw new IOException("Malformed index entry");
+        return new FileEntry(path, size, mtime, sha, chunks, region);
+    }
+
+    /** Reassembles a file from its chunks, checking every chunk hash; returns the file's SHA-256. */
+    private String readFile(FileEntry entry, OutputStream out) throws IOException {
+        MessageDigest fileDigest = sha256();
+        for (String hash : entry.chunks) readChunk(hash, out, fileDigest);
+        return HEX.formatHex(fileDigest.digest());
+    }
+
+    private void rebuildRegion(FileEntry entry, Path dest) throws IOException {
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(dest,
+                java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.CREATE);
+             RegionFile.Writer writer = new RegionFile.Writer(ch)) {
+            for (RegionChunk c : entry.region) {
+                java.io.ByteArrayOutputStream payload = new java.io.ByteArrayOutputStream();
+                readChunk(c.hash(), payload, null);
+                writer.write(c.index(), c.timestamp(), payload.toByteArray());
+            }
+        }
+    }
+
+    private void readChunk(String hash, OutputStream out, MessageDigest fileDigest) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        MessageDigest cd = sha256();
+        try (InputStream in = new InflaterInputStream(storage.openObject(storage.chunkObjectName(hash)))) {
+            int r;
+            while ((r = in.read(buf)) != -1) {
+                cd.update(buf, 0, r);
+                if (fileDigest != null) fileDigest.update(buf, 0, r);
+                out.write(buf, 0, r);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Missing chunk " + hash + ": " + e.getMessage(), e);
+        }
+        if (!HEX.formatHex(cd.digest()).equals(hash)) throw new IOException("Corrupt chunk " + hash);
+    }
+
+    private byte[] deflate(byte[] raw) throws IOException {
+        long t = Metrics.COMPRESS.begin();
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater, 64 * 1024)) {
+                dos.write(raw);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+            Metrics.COMPRESS.end(t, raw.length);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return Metrics.HASH.meter(MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
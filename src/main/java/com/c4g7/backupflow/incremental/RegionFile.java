@@ -0,0 +1,114 @@
+package com.c4g7.backupflow.incremental;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Minimal reader/writer for the Anvil region format ({@code .mca}). A region file starts with two
+ * 4 KiB tables of 1024 entries: the chunk locations (3-byte sector offset, 1-byte sector count)
+ * and the chunk save timestamps. Each chunk's payload starts at its sector offset with a 4-byte
+ * length followed by a compression-type byte and the compressed NBT.
+ */
+public final class RegionFile {
+    public static final int SECTOR = 4096;
+    public static final int CHUNKS = 1024;
+    private static final int HEADER = 2 * SECTOR;
+
+    final int[] locations = new int[CHUNKS];
+    final int[] timestamps = new int[CHUNKS];
+    private final long fileSize;
+
+    private RegionFile(long fileSize) { this.fileSize = fileSize; }
+
+    public static boolean isRegionFile(String name) {
+        return name.endsWith(".mca");
+    }
+
+    /** Reads the header tables, or returns null when the file does not look like a sane region file. */
+    public static RegionFile readHeader(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < HEADER) return null;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER);
+        readFully(ch, buf, 0);
+        buf.flip();
+        RegionFile rf = new RegionFile(size);
+        for (int i = 0; i < CHUNKS; i++) rf.locations[i] = buf.getInt();
+        for (int i = 0; i < CHUNKS; i++) rf.timestamps[i] = buf.getInt();
+        for (int i = 0; i < CHUNKS; i++) {
+            if (!rf.isPresent(i)) continue;
+            long end = (long) (sectorOffset(rf.locations[i]) + sectorCount(rf.locations[i])) * SECTOR;
+            if (sectorOffset(rf.locations[i]) < 2 || end > size) return null;
+        }
+        return rf;
+    }
+
+    static int sectorOffset(int location) { return location >>> 8; }
+    static int sectorCount(int location) { return location & 0xFF; }
+
+    public boolean isPresent(int i) {
+        return locations[i] != 0 && sectorCount(locations[i]) > 0;
+    }
+
+    public int location(int i) { return locations[i]; }
+    public int timestamp(int i) { return timestamps[i]; }
+
+    /** Returns the chunk's length-prefixed payload (length field, compression type and data). */
+    public byte[] readPayload(FileChannel ch, int i) throws IOException {
+        long pos = (long) sectorOffset(locations[i]) * SECTOR;
+        ByteBuffer lenBuf = ByteBuffer.allocate(4);
+        readFully(ch, lenBuf, pos);
+        lenBuf.flip();
+        int length = lenBuf.getInt();
+        long maxLength = (long) sectorCount(locations[i]) * SECTOR - 4;
+        if (length <= 0 || length > maxLength || pos + 4 + length > fileSize) {
+            throw new IOException("Corrupt chunk " + i + " (length " + length + ")");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length + 4);
+        readFully(ch, payload, pos);
+        return payload.array();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int r = ch.read(buf, pos + buf.position());
+            if (r < 0) throw new IOException("Unexpected end of region file");
+        }
+    }
+
+    /**
+     * Rebuilds a region file from chunk payloads. Payloads are laid out back to back from sector 2
+     * in chunk-index order, so the result is equivalent to (but not byte-identical with) the source.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final FileChannel ch;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER);
+        private long nextSector = 2;
+
+        public Writer(FileChannel ch) throws IOException {
+            this.ch = ch;
+            ch.truncate(0);
+        }
+
+        public void write(int index, int timestamp, byte[] payload) throws IOException {
+            if (index < 0 || index >= CHUNKS) throw new IOException("Bad chunk index " + index);
+            int sectors = (payload.length + SECTOR - 1) / SECTOR;
+            if (sectors > 0xFF) throw new IOException("Chunk " + index + " too large for region sector table");
+            long pos = nextSector * SECTOR;
+            ByteBuffer data = ByteBuffer.allocate(sectors * SECTOR);
+            data.put(payload);
+            data.clear(); // write the zero padding up to the sector boundary too
+            while (data.hasRemaining()) pos += ch.write(data, pos);
+            header.putInt(index * 4, (int) (nextSector << 8) | sectors);
+            header.putInt(SECTOR + index * 4, timestamp);
+            nextSector += sectors;
+        }
+
+        @Override
+        public void close() throws IOException {
+            header.position(0);
+            long pos = 0;
+            while (header.hasRemaining()) pos += ch.write(header, pos);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.c4g7.backupflow.incremental;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+
+/**
+ * Remembers, per region file, the location entry, timestamp and chunk hash of every chunk seen in
+ * the last backup. A chunk whose location and timestamp are unchanged is reused by hash without
+ * reading its sectors. One small file per region keeps lookups on disk instead of on the heap.
+ */
+final class RegionStateCache {
+    private static final int MAGIC = 0x42465247; // "BFRG"
+    private static final HexFormat HEX = HexFormat.of();
+
+    static final class State {
+        final int[] locations = new int[RegionFile.CHUNKS];
+        final int[] timestamps = new int[RegionFile.CHUNKS];
+        final String[] hashes = new String[RegionFile.CHUNKS];
+    }
+
+    private final Path dir;
+
+    RegionStateCache(Path dir) { this.dir = dir; }
+
+    private Path fileFor(String archivePath) {
+        String id = HEX.formatHex(sha1(archivePath.getBytes(StandardCharsets.UTF_8)));
+        return dir.resolve(id.substring(0, 2)).resolve(id + ".rs");
+    }
+
+    State load(String archivePath) {
+        Path f = fileFor(archivePath);
+        if (!Files.exists(f)) return null;
+        try (InputStream raw = Files.newInputStream(f); DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(raw))) {
+            if (in.readInt() != MAGIC) return null;
+            State s = new State();
+            byte[] hash = new byte[32];
+            for (int i = 0; i < RegionFile.CHUNKS; i++) {
+                s.locations[i] = in.readInt();
+                s.timestamps[i] = in.readInt();
+                if (in.readBoolean()) {
+                    in.readFully(hash);
+                    s.hashes[i] = HEX.formatHex(hash);
+                }
+            }
+            return s;
+        } catch (IOException e) {
+            return null; // a damaged cache entry only costs a full read of the region
+        }
+    }
+
+    void save(String archivePath, State s) throws IOException {
+        Path f = fileFor(archivePath);
+        Files.createDirectories(f.getParent());
+        Path tmp = f.resolveSibling(f.getFileName() + ".tmp");
+        try (OutputStream raw = Files.newOutputStream(tmp); DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(raw))) {
+            out.writeInt(MAGIC);
+            for (int i = 0; i < RegionFile.CHUNKS; i++) {
+                out.writeInt(s.locations[i]);
+                out.writeInt(s.timestamps[i]);
+                out.writeBoolean(s.hashes[i] != null);
+                if (s.hashes[i] != null) out.write(HEX.parseHex(s.hashes[i]));
+            }
+        }
+        Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] sha1(byte[] data) {
+        try {
+            return java.security.MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.c4g7.backupflow.jobs;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A classic five-field cron expression, {@code minute hour day-of-month month day-of-week}, with
+ * {@code *}, lists, ranges, steps ({@code *}{@code /15}, {@code 1-5/2}), month and weekday names
+ * and the {@code @hourly}/{@code @daily}/{@code @weekly}/{@code @monthly} shorthands. As in cron,
+ * a day matches when day-of-month <em>or</em> day-of-week matches if both are restricted; a field
+ * starting with {@code *} (such as {@code *}{@code /2}) counts as unrestricted, so then both must match.
+ */
+public final class CronSchedule implements JobScheduler.Trigger {
+    private static final List<String> MONTHS = List.of("JAN","FEB","MAR","APR","MAY","JUN","JUL","AUG","SEP","OCT","NOV","DEC");
+    private static final List<String> DAYS = List.of("SUN","MON","TUE","WED","THU","FRI","SAT");
+
+    private final String expression;
+    private final BitSet minutes, hours, days, months, weekdays;
+    private final boolean anyDay, anyWeekday;
+
+    private CronSchedule(String expression, String[] f) {
+        this.expression = expression;
+        this.minutes = field(f[0], 0, 59, null, 0);
+        this.hours = field(f[1], 0, 23, null, 0);
+        this.days = field(f[2], 1, 31, null, 0);
+        this.months = field(f[3], 1, 12, MONTHS, 1);
+        BitSet dow = field(f[4], 0, 7, DAYS, 0);
+        if (dow.get(7)) dow.set(0); // 7 is Sunday too
+        this.weekdays = dow;
+        this.anyDay = f[2].startsWith("*");
+        this.anyWeekday = f[4].startsWith("*");
+    }
+
+    /** Parses {@code expression}; throws {@link IllegalArgumentException} naming the bad field. */
+    public static CronSchedule parse(String expression) {
+        String e = expression.trim();
+        String expanded = switch (e.toLowerCase(Locale.ROOT)) {
+            case "@hourly" -> "0 * * * *";
+            case "@daily", "@midnight" -> "0 0 * * *";
+            case "@weekly" -> "0 0 * * 0";
+            case "@monthly" -> "0 0 1 * *";
+            default -> e;
+        };
+        String[] f = expanded.split("\\s+");
+        if (f.length != 5) throw new IllegalArgumentException("Cron expression needs 5 fields (minute hour day month weekday): " + expression);
+        return new CronSchedule(e, f);
+    }
+
+    /** The first matching minute strictly after {@code after}, or null if none within five years. */
+    @Override
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime t = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = after.plusYears(5);
+        while (t.isBefore(limit)) {
+            if (!months.get(t.getMonthValue())) {
+                t = t.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(t)) {
+                t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(t.getHour())) {
+                t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(t.getMinute()) || !t.toLocalDateTime().isAfter(after.toLocalDateTime())) {
+                t = t.plusMinutes(1); // (the second check skips wall-clock times repeated when DST ends)
+            } else {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private boolean dayMatches(ZonedDateTime t) {
+        boolean dom = days.get(t.getDayOfMonth());
+        boolean dow = weekdays.get(t.getDayOfWeek().getValue() % 7);
+        if (anyDay || anyWeekday) return dom && dow;
+        return dom || dow;
+    }
+
+    private static BitSet field(String spec, int min, int max, List<String> names, int nameBase) {
+        BitSet bits = new BitSet(max + 1);
+        for (String part : spec.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+                if (step <= 0) throw new IllegalArgumentException("Bad cron step in '" + spec + "'");
+            }
+            int lo, hi;
+            if (part.equals("*")) {
+                lo = min; hi = max;
+            } else {
+                int dash = part.indexOf('-');
+                lo = value(dash >= 0 ? part.substring(0, dash) : part, names, nameBase, spec);
+                hi = dash >= 0 ? value(part.substring(dash + 1), names, nameBase, spec) : (slash >= 0 ? max : lo);
+            }
+            if (lo < min || hi > max || lo > hi) throw new IllegalArgumentException("Cron field '" + spec + "' out of range " + min + "-" + max);
+            for (int v = lo; v <= hi; v += step) bits.set(v);
+        }
+        return bits;
+    }
+
+    private static int value(String s, List<String> names, int nameBase, String spec) {
+        if (names != null) {
+            int i = names.indexOf(s.toUpperCase(Locale.ROOT));
+            if (i >= 0) return i + nameBase;
+        }
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad cron field '" + spec + "'");
+        }
+    }
+
+    @Override
+    public String toString() { return expression; }
+}
@@ -0,0 +1,316 @@
+package com.c4g7.backupflow.jobs;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs backups, restores, verifies and retention as queued jobs instead of each starting its own
+ * async task. A job declares the {@link Resource}s it uses; it starts once every one of them is
+ * below its limit, highest {@link Type#priority} first (manual before scheduled, then oldest), and
+ * resources a blocked higher-priority job waits for are not handed to lower ones, so a backup is
+ * not starved by a stream of verifies.
+ * <p>
+ * A request for a job that is already queued with the same key is coalesced into it, so at most
+ * one run follows the one in progress however often a schedule fires. Background job types that
+ * come due outside the off-peak window wait for its start. Schedules ({@link Trigger}s such as
+ * {@link CronSchedule}) and dispatch run on one timer thread; jobs run on daemon worker threads.
+ */
+public final class JobScheduler implements AutoCloseable {
+
+    /** What a job contends for; limits apply per resource. */
+    public enum Resource {
+        /** Reading or writing the server's files. */
+        DISK,
+        /** Transfers to or from the bucket. */
+        NETWORK,
+        /** Adding or removing backups; never shared (a retention sweep must not see a backup in progress). */
+        BACKUP_SET
+    }
+
+    public enum Type {
+        RESTORE(40, false, Resource.DISK, Resource.NETWORK),
+        BACKUP(30, false, Resource.DISK, Resource.NETWORK, Resource.BACKUP_SET),
+        VERIFY(20, true, Resource.NETWORK),
+        RETENTION(10, true, Resource.NETWORK, Resource.BACKUP_SET);
+
+        private final int priority;
+        private final boolean background;
+        private final Set<Resource> resources;
+
+        Type(int priority, boolean background, Resource first, Resource... rest) {
+            this.priority = priority;
+            this.background = background;
+            this.resources = EnumSet.of(first, rest);
+        }
+
+        public int priority() { return priority; }
+
+        /** Scheduled runs of background types are moved into the off-peak window. */
+        public boolean background() { return background; }
+
+        public Set<Resource> resources() { return resources; }
+    }
+
+    /** When a schedule fires next. */
+    public interface Trigger {
+        /** The first fire time strictly after {@code after}, or null for never. */
+        ZonedDateTime next(ZonedDateTime after);
+
+        /** Fires {@code initialDelay} after it is armed, then every {@code period}. */
+        static Trigger every(Duration period, Duration initialDelay) {
+            java.util.concurrent.atomic.AtomicBoolean first = new java.util.concurrent.atomic.AtomicBoolean(true);
+            return after -> after.plus(first.getAndSet(false) ? initialDelay : period);
+        }
+    }
+
+    public static final class Job {
+        private final Type type;
+        private final String key;
+        private final String label;
+        private final long seq;
+        private final Runnable body;
+        private volatile boolean manual;
+        private volatile Instant notBefore;
+        private volatile Instant startedAt;
+
+        private Job(Type type, String key, String label, boolean manual, Instant notBefore, long seq, Runnable body) {
+            this.type = type; this.key = key; this.label = label; this.manual = manual; this.notBefore = notBefore; this.seq = seq; this.body = body;
+        }
+
+        public Type type() { return type; }
+        public String label() { return label; }
+        public boolean manual() { return manual; }
+        public Instant notBefore() { return notBefore; }
+        /** Null while queued. */
+        public Instant startedAt() { return startedAt; }
+    }
+
+    /**
+     * Result of {@link #submit}: the job that will run, whether the request was folded into an
+     * already queued one, and the labels of the jobs it waits for (empty once it started or when it
+     * only waits for its start time).
+     */
+    public record Submission(Job job, boolean coalesced, List<String> waitingFor) {
+        public boolean started() { return job.startedAt() != null; }
+    }
+
+    private static final Comparator<Job> ORDER = Comparator.comparingInt((Job j) -> -j.type.priority)
+            .thenComparing(j -> !j.manual)
+            .thenComparingLong(j -> j.seq);
+
+    private final Logger logger;
+    private final ZoneId zone;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final AtomicLong seq = new AtomicLong();
+    private final List<Job> queue = new ArrayList<>();   // guarded by this
+    private final List<Job> running = new ArrayList<>(); // guarded by this
+    private final Map<Resource, Integer> limits = new EnumMap<>(Resource.class);
+    private final Map<Resource, Integer> inUse = new EnumMap<>(Resource.class);
+    private final Map<String, ScheduledFuture<?>> schedules = new HashMap<>();
+    private volatile TimeWindow offPeak;
+    private ScheduledFuture<?> wakeup;
+    private boolean closed;
+
+    public JobScheduler(Logger logger, ZoneId zone) {
+        this.logger = logger;
+        this.zone = zone;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "BackupFlow-jobs"));
+        this.workers = Executors.newCachedThreadPool(r -> daemon(r, "BackupFlow-job"));
+        for (Resource r : Resource.values()) { limits.put(r, 1); inUse.put(r, 0); }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /** Jobs that may use {@code resource} at once; {@link Resource#BACKUP_SET} always stays at 1. */
+    public synchronized void setLimit(Resource resource, int limit) {
+        limits.put(resource, resource == Resource.BACKUP_SET ? 1 : Math.max(1, limit));
+        dispatch();
+    }
+
+    /** Window for scheduled background jobs, or null to run them whenever they come due. */
+    public void setOffPeak(TimeWindow window) {
+        this.offPeak = window;
+    }
+
+    public TimeWindow offPeak() { return offPeak; }
+
+    /**
+     * Queues a job, or coalesces the request into a queued job of the same type and {@code key}
+     * (a manual request also pulls a deferred job forward). Scheduled background jobs wait for the
+     * off-peak window.
+     */
+    public synchronized Submission submit(Type type, String key, String label, boolean manual, Runnable body) {
+        if (closed) throw new IllegalStateException("Job scheduler is shut down");
+        Instant now = Instant.now();
+        for (Job j : queue) {
+            if (j.type == type && j.key.equals(key)) {
+                if (manual) { j.manual = true; j.notBefore = now; }
+                dispatch();
+                return new Submission(j, true, waitingFor(j));
+            }
+        }
+        Instant notBefore = now;
+        TimeWindow window = offPeak;
+        if (!manual && type.background && window != null) notBefore = window.defer(now.atZone(zone)).toInstant();
+        Job job = new Job(type, key, label, manual, notBefore, seq.incrementAndGet(), body);
+        queue.add(job);
+        dispatch();
+        return new Submission(job, false, waitingFor(job));
+    }
+
+    /** Running jobs, and queued jobs ahead of it, that hold a resource {@code job} needs. */
+    private List<String> waitingFor(Job job) {
+        List<String> out = new ArrayList<>();
+        if (job.startedAt != null) return out;
+        for (Job j : running) if (!java.util.Collections.disjoint(j.type.resources, job.type.resources)) out.add(j.label);
+        for (Job j : queue) {
+            if (j == job) break;
+            if (!j.notBefore.isAfter(Instant.now()) && !java.util.Collections.disjoint(j.type.resources, job.type.resources)) out.add(j.label);
+        }
+        return out;
+    }
+
+    /**
+     * Fires {@code fire} at every time {@code trigger} names, replacing an earlier schedule of the
+     * same name. {@code jitter} delays each fire by a random amount up to that long.
+     */
+    public synchronized void schedule(String name, Trigger trigger, Duration jitter, Runnable fire) {
+        cancelSchedule(name);
+        arm(name, trigger, jitter, fire, ZonedDateTime.now(zone));
+    }
+
+    private synchronized void arm(String name, Trigger trigger, Duration jitter, Runnable fire, ZonedDateTime after) {
+        if (closed) return;
+        ZonedDateTime next = trigger.next(after);
+        if (next == null) { schedules.remove(name); return; }
+        long delay = Math.max(0, Duration.between(ZonedDateTime.now(zone), next).toMillis());
+        if (!jitter.isZero()) delay += java.util.concurrent.ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1);
+        List<ScheduledFuture<?>> self = new ArrayList<>(1);
+        self.add(timer.schedule(() -> {
+            synchronized (this) {
+                if (schedules.get(name) != self.get(0)) return; // cancelled or replaced meanwhile
+            }
+            try {
+                fire.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Scheduled " + name + " failed to queue: " + e.getMessage(), e);
+            }
+            arm(name, trigger, jitter, fire, next);
+        }, delay, TimeUnit.MILLISECONDS));
+        schedules.put(name, self.get(0));
+    }
+
+    public synchronized void cancelSchedule(String name) {
+        ScheduledFuture<?> f = schedules.remove(name);
+        if (f != null) f.cancel(false);
+    }
+
+    public synchronized void cancelSchedules() {
+        for (ScheduledFuture<?> f : schedules.values()) f.cancel(false);
+        schedules.clear();
+    }
+
+    /** Delay until the named schedule fires next, or null when it is not armed. */
+    public synchronized Duration untilNext(String name) {
+        ScheduledFuture<?> f = schedules.get(name);
+        return f == null ? null : Duration.ofMillis(Math.max(0, f.getDelay(TimeUnit.MILLISECONDS)));
+    }
+
+    /** Running jobs first, then the queue in dispatch order. */
+    public synchronized List<Job> jobs() {
+        List<Job> out = new ArrayList<>(running);
+        out.addAll(queue);
+        return out;
+    }
+
+    public synchronized boolean isRunning(Type type) {
+        for (Job j : running) if (j.type == type) return true;
+        return false;
+    }
+
+    /** Drops queued (not running) jobs of {@code type}; returns how many. */
+    public synchronized int cancelQueued(Type type) {
+        int before = queue.size();
+        queue.removeIf(j -> j.type == type);
+        return before - queue.size();
+    }
+
+    private synchronized void dispatch() {
+        if (closed) return;
+        queue.sort(ORDER);
+        Instant now = Instant.now();
+        Set<Resource> reserved = EnumSet.noneOf(Resource.class);
+        Instant wake = null;
+        for (Iterator<Job> it = queue.iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            if (job.notBefore.isAfter(now)) {
+                if (wake == null || job.notBefore.isBefore(wake)) wake = job.notBefore;
+                continue;
+            }
+            if (!available(job.type.resources) || !java.util.Collections.disjoint(job.type.resources, reserved)) {
+                reserved.addAll(job.type.resources); // keep them for this job rather than a lower one
+                continue;
+            }
+            it.remove();
+            for (Resource r : job.type.resources) inUse.merge(r, 1, Integer::sum);
+            running.add(job);
+            job.startedAt = now;
+            workers.execute(() -> run(job));
+        }
+        if (wakeup != null) wakeup.cancel(false); // only the earliest deferred job needs a wakeup
+        wakeup = wake == null ? null : timer.schedule(this::dispatch, Math.max(1, Duration.between(now, wake).toMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean available(Set<Resource> resources) {
+        for (Resource r : resources) if (inUse.get(r) >= limits.get(r)) return false;
+        return true;
+    }
+
+    private void run(Job job) {
+        try {
+            job.body.run();
+        } catch (Throwable t) {
+            logger.log(Level.WARNING, "Job " + job.label + " failed: " + t.getMessage(), t);
+        } finally {
+            synchronized (this) {
+                running.remove(job);
+                for (Resource r : job.type.resources) inUse.merge(r, -1, Integer::sum);
+            }
+            if (!timer.isShutdown()) timer.execute(this::dispatch);
+        }
+    }
+
+    /** Stops schedules and drops queued jobs; running jobs are interrupted. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        cancelSchedules();
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,36 @@
+package com.c4g7.backupflow.jobs;
+
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+
+/**
+ * A daily window of local time such as {@code 02:00-06:00}; it may wrap past midnight
+ * ({@code 23:00-05:00}). Background jobs that come due outside it wait for its next start.
+ */
+public record TimeWindow(LocalTime start, LocalTime end) {
+
+    /** Parses {@code HH:mm-HH:mm}; a blank spec means no window (null). */
+    public static TimeWindow parse(String spec) {
+        if (spec == null || spec.isBlank()) return null;
+        String[] p = spec.trim().split("\\s*-\\s*");
+        if (p.length != 2) throw new IllegalArgumentException("Time window must look like 02:00-06:00: " + spec);
+        return new TimeWindow(LocalTime.parse(p[0]), LocalTime.parse(p[1]));
+    }
+
+    public boolean contains(LocalTime t) {
+        if (start.equals(end)) return true; // whole day
+        return start.isBefore(end)
+                ? !t.isBefore(start) && t.isBefore(end)
+                : !t.isBefore(start) || t.isBefore(end);
+    }
+
+    /** {@code t} itself when inside the window, otherwise the window's next start. */
+    public ZonedDateTime defer(ZonedDateTime t) {
+        if (contains(t.toLocalTime())) return t;
+        ZonedDateTime s = t.with(start).withSecond(0).withNano(0);
+        return s.isAfter(t) ? s : s.plusDays(1);
+    }
+
+    @Override
+    public String toString() { return start + "-" + end; }
+}
@@ -0,0 +1,522 @@
+package com.c4g7.backupflow.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide metrics for the backup hot paths, exported in Prometheus text format by
+ * {@link MetricsServer} and summarized by {@code /bf diag}. Instruments are static so utility code
+ * can record without a plugin reference; with {@code metrics.enabled: false} recording is a no-op.
+ * <p>
+ * Pipeline {@link Stage}s record bytes and <em>exclusive</em> thread time: a stage entered while
+ * another is open on the same thread (hashing inside a read, the output write inside a compressor
+ * call) is subtracted from the outer one, so read, hash, compress, output and upload time do not
+ * double count and bytes per stage-second is the throughput of that stage alone.
+ */
+public final class Metrics {
+    private Metrics() {}
+
+    private static volatile boolean enabled = true;
+    private static final List<Metric> REGISTRY = new CopyOnWriteArrayList<>();
+
+    private static final double MB = 1024 * 1024;
+
+    public static final Histogram PHASE_SECONDS = register(new Histogram("backupflow_phase_duration_seconds",
+            "Time spent in each backup or restore phase", "phase", 0.1, 0.5, 1, 5, 10, 30, 60, 120, 300, 600, 1800, 3600));
+    public static final Counter STAGE_BYTES = register(new Counter("backupflow_stage_bytes_total",
+            "Bytes processed per pipeline stage", "stage"));
+    public static final Counter STAGE_SECONDS = register(new Counter("backupflow_stage_seconds_total",
+            "Thread time spent per pipeline stage, excluding nested stages", "stage"));
+    public static final Histogram PART_UPLOAD_SECONDS = register(new Histogram("backupflow_upload_part_duration_seconds",
+            "Duration of one multipart part upload attempt", null, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120));
+    public static final Counter PART_RETRIES = register(new Counter("backupflow_upload_part_retries_total",
+            "Part upload attempts that failed and were retried", null));
+    public static final Gauge QUEUE_DEPTH = register(new Gauge("backupflow_queue_depth",
+            "Items queued between pipeline stages", "queue"));
+    public static final Counter EXCLUDED = register(new Counter("backupflow_excluded_total",
+            "Files and directories left out by exclusion rules", "reason"));
+    public static final Histogram BACKUP_ALLOCATED_BYTES = register(new Histogram("backupflow_backup_allocated_bytes",
+            "Heap allocated in the whole JVM while one backup ran, the server's own allocations included", null, 16 * MB, 64 * MB, 256 * MB, 1024 * MB, 4096 * MB, 16384 * MB));
+    public static final Counter BACKUPS = register(new Counter("backupflow_backups_total",
+            "Finished backups by result", "result"));
+    public static final Gauge.Child THROTTLE_RATE = register(new Gauge("backupflow_throttle_rate_bytes",
+            "Byte rate backup I/O is held to while ticks run over budget, 0 when unthrottled", null)).labels("");
+
+    public static final Stage READ = new Stage("read");
+    public static final Stage HASH = new Stage("hash");
+    public static final Stage COMPRESS = new Stage("compress");
+    public static final Stage OUTPUT = new Stage("output");
+    public static final Stage UPLOAD = new Stage("upload");
+
+    public static final Gauge.Child STREAM_PIPE_DEPTH = QUEUE_DEPTH.labels("stream_pipe");
+    public static final Gauge.Child DEFLATE_QUEUE_DEPTH = QUEUE_DEPTH.labels("deflate_blocks");
+    public static final Gauge.Child UPLOAD_PARTS_IN_FLIGHT = QUEUE_DEPTH.labels("upload_parts");
+    public static final Gauge.Child CHUNK_UPLOADS_IN_FLIGHT = QUEUE_DEPTH.labels("chunk_uploads");
+
+    private static final AtomicLong LAST_BACKUP_ALLOCATED = new AtomicLong(-1);
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    public static void setEnabled(boolean on) { enabled = on; }
+
+    public static boolean isEnabled() { return enabled; }
+
+    private static <M extends Metric> M register(M metric) {
+        REGISTRY.add(metric);
+        return metric;
+    }
+
+    // ---- instruments ------------------------------------------------------------------------
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+        final String label;
+
+        Metric(String name, String help, String label) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+        }
+
+        abstract String type();
+
+        abstract void write(StringBuilder out);
+
+        String labelSet(String value, String extra) {
+            if (label == null && extra == null) return "";
+            StringBuilder sb = new StringBuilder("{");
+            if (label != null) sb.append(label).append("=\"").append(escape(value)).append('"');
+            if (extra != null) sb.append(label != null ? "," : "").append(extra);
+            return sb.append('}').toString();
+        }
+    }
+
+    public static final class Counter extends Metric {
+        private final Map<String, DoubleAdder> children = new ConcurrentSkipListMap<>();
+
+        Counter(String name, String help, String label) {
+            super(name, help, label);
+            if (label == null) labels("");
+        }
+
+        /** The series for one label value (any value for an unlabelled counter). */
+        public DoubleAdder labels(String value) {
+            return children.computeIfAbsent(label == null ? "" : value, k -> new DoubleAdder());
+        }
+
+        public void inc(String value) {
+            if (enabled) labels(value).add(1);
+        }
+
+        public double get(String value) {
+            DoubleAdder a = children.get(label == null ? "" : value);
+            return a == null ? 0 : a.sum();
+        }
+
+        @Override String type() { return "counter"; }
+
+        @Override
+        void write(StringBuilder out) {
+            children.forEach((v, a) -> out.append(name).append(labelSet(v, null)).append(' ').append(format(a.sum())).append('\n'));
+        }
+    }
+
+    public static final class Gauge extends Metric {
+        private final Map<String, Child> children = new ConcurrentSkipListMap<>();
+
+        Gauge(String name, String help, String label) { super(name, help, label); }
+
+        public Child labels(String value) {
+            return children.computeIfAbsent(label == null ? "" : value, k -> new Child());
+        }
+
+        public static final class Child {
+            private final AtomicLong value = new AtomicLong();
+
+            public void set(long v) { if (enabled) value.set(v); }
+            public void add(long delta) { if (enabled) value.addAndGet(delta); }
+            public long get() { return value.get(); }
+        }
+
+        @Override String type() { return "gauge"; }
+
+        @Override
+        void write(StringBuilder out) {
+            children.forEach((v, c) -> out.append(name).append(labelSet(v, null)).append(' ').append(c.get()).append('\n'));
+        }
+    }
+
+    public static final class Histogram extends Metric {
+        private final double[] bounds;
+        private final Map<String, Child> children = new ConcurrentSkipListMap<>();
+
+        Histogram(String name, String help, String label, double... bounds) {
+            super(name, help, label);
+            this.bounds = bounds;
+        }
+
+        public Child labels(String value) {
+            return children.computeIfAbsent(label == null ? "" : value, k -> new Child(bounds.length));
+        }
+
+        public void observe(String value, double v) {
+            if (enabled) labels(value).observe(v);
+        }
+
+        public final class Child {
+            private final LongAdder[] buckets; // non-cumulative, last one is +Inf
+            private final DoubleAdder sum = new DoubleAdder();
+            private final LongAdder count = new LongAdder();
+
+            Child(int n) {
+                buckets = new LongAdder[n + 1];
+                for (int i = 0; i <= n; i++) buckets[i] = new LongAdder();
+            }
+
+            public void observe(double v) {
+                if (!enabled) return;
+                int i = 0;
+                while (i < bounds.length && v > bounds[i]) i++;
+                buckets[i].increment();
+                sum.add(v);
+                count.increment();
+            }
+
+            public long count() { return count.sum(); }
+
+            public double sum() { return sum.sum(); }
+
+            /** Upper bound of the bucket holding quantile {@code q}, +Inf if it is the overflow bucket. */
+            public double quantileBound(double q) {
+                long total = count.sum();
+                if (total == 0) return Double.NaN;
+                long rank = (long) Math.ceil(q * total);
+                long seen = 0;
+                for (int i = 0; i < buckets.length; i++) {
+                    seen += buckets[i].sum();
+                    if (seen >= rank) return i < bounds.length ? bounds[i] : Double.POSITIVE_INFINITY;
+                }
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+
+        @Override String type() { return "histogram"; }
+
+        @Override
+        void write(StringBuilder out) {
+            children.forEach((v, c) -> {
+                long cumulative = 0;
+                for (int i = 0; i <= bounds.length; i++) {
+                    cumulative += c.buckets[i].sum();
+                    String le = i < bounds.length ? format(bounds[i]) : "+Inf";
+                    out.append(name).append("_bucket").append(labelSet(v, "le=\"" + le + "\"")).append(' ').append(cumulative).append('\n');
+                }
+                out.append(name).append("_sum").append(labelSet(v, null)).append(' ').append(format(c.sum())).append('\n');
+                out.append(name).append("_count").append(labelSet(v, null)).append(' ').append(c.count()).append('\n');
+            });
+        }
+    }
+
+    /**
+     * One pipeline stage. {@link #begin()} and {@link #end(long, long)} bracket the work on the
+     * current thread; the {@code meter} methods wrap a stream or digest so every call is bracketed.
+     */
+    public static final class Stage {
+        private final String name;
+        private final DoubleAdder bytes;
+        private final DoubleAdder seconds;
+
+        Stage(String name) {
+            this.name = name;
+            this.bytes = STAGE_BYTES.labels(name);
+            this.seconds = STAGE_SECONDS.labels(name);
+        }
+
+        public String name() { return name; }
+
+        /** @return a token for {@link #end}; 0 when metrics are off */
+        public long begin() {
+            if (!enabled) return 0;
+            Frames f = FRAMES.get();
+            if (f.depth == Frames.MAX) return 0;
+            f.start[f.depth] = System.nanoTime();
+            f.child[f.depth] = 0;
+            return ++f.depth;
+        }
+
+        public void end(long token, long processedBytes) {
+            if (token == 0) return;
+            Frames f = FRAMES.get();
+            int i = (int) token - 1;
+            if (f.depth != i + 1) { // unbalanced (exception between begin and end): drop the frame
+                f.depth = Math.min(f.depth, i);
+                return;
+            }
+            long elapsed = System.nanoTime() - f.start[i];
+            f.depth = i;
+            if (i > 0) f.child[i - 1] += elapsed;
+            seconds.add((elapsed - f.child[i]) / 1e9);
+            if (processedBytes > 0) bytes.add(processedBytes);
+        }
+
+        public InputStream meter(InputStream in) {
+            return enabled ? new MeteredInputStream(in, this) : in;
+        }
+
+        public OutputStream meter(OutputStream out) {
+            return enabled ? new MeteredOutputStream(out, this) : out;
+        }
+
+        public MessageDigest meter(MessageDigest digest) {
+            return enabled ? new MeteredDigest(digest, this) : digest;
+        }
+    }
+
+    private static final class Frames {
+        static final int MAX = 16;
+        final long[] start = new long[MAX];
+        final long[] child = new long[MAX];
+        int depth;
+    }
+
+    private static final ThreadLocal<Frames> FRAMES = ThreadLocal.withInitial(Frames::new);
+
+    private static final class MeteredInputStream extends java.io.FilterInputStream {
+        private final Stage stage;
+
+        MeteredInputStream(InputStream in, Stage stage) {
+            super(in);
+            this.stage = stage;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long t = stage.begin();
+            int b = -1;
+            try {
+                return b = in.read();
+            } finally {
+                stage.end(t, b >= 0 ? 1 : 0);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long t = stage.begin();
+            int n = 0;
+            try {
+                return n = in.read(b, off, len);
+            } finally {
+                stage.end(t, n);
+            }
+        }
+    }
+
+    private static final class MeteredOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final Stage stage;
+
+        MeteredOutputStream(OutputStream out, Stage stage) {
+            this.out = out;
+            this.stage = stage;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long t = stage.begin();
+            try {
+                out.write(b);
+            } finally {
+                stage.end(t, 1);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long t = stage.begin();
+            try {
+                out.write(b, off, len);
+            } finally {
+                stage.end(t, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long t = stage.begin();
+            try {
+                out.flush();
+            } finally {
+                stage.end(t, 0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            long t = stage.begin();
+            try {
+                out.close();
+            } finally {
+                stage.end(t, 0);
+            }
+        }
+    }
+
+    private static final class MeteredDigest extends MessageDigest {
+        private final MessageDigest digest;
+        private final Stage stage;
+
+        MeteredDigest(MessageDigest digest, Stage stage) {
+            super(digest.getAlgorithm());
+            this.digest = digest;
+            this.stage = stage;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            digest.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            long t = stage.begin();
+            try {
+                digest.update(input, offset, len);
+            } finally {
+                stage.end(t, len);
+            }
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            long t = stage.begin();
+            int len = input.remaining();
+            try {
+                digest.update(input);
+            } finally {
+                stage.end(t, len);
+            }
+        }
+
+        @Override
+        protected int engineGetDigestLength() { return digest.getDigestLength(); }
+
+        @Override
+        protected byte[] engineDigest() { return digest.digest(); }
+
+        @Override
+        protected void engineReset() { digest.reset(); }
+    }
+
+    // ---- allocation -------------------------------------------------------------------------
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean b && b.isThreadAllocatedMemorySupported()) {
+                if (!b.isThreadAllocatedMemoryEnabled()) b.setThreadAllocatedMemoryEnabled(true);
+                return b;
+            }
+        } catch (RuntimeException ignored) { }
+        return null;
+    }
+
+    /**
+     * Heap allocated by all threads since the JVM started, or -1 where it is not tracked. Per-thread
+     * counters would miss most of a backup: subtasks run on virtual threads, which have none, and
+     * what they allocate is only charged to their carrier threads. So a backup is measured as the
+     * JVM-wide delta, which includes whatever the server allocates meanwhile.
+     */
+    public static long totalAllocatedBytes() {
+        if (THREADS == null) return -1;
+        try {
+            return THREADS.getTotalThreadAllocatedBytes();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    /** Measures the heap allocated JVM-wide until {@link #close()}. */
+    public static final class AllocationScope implements AutoCloseable {
+        private final long start = totalAllocatedBytes();
+        private boolean closed;
+
+        /** Records the total in {@link #BACKUP_ALLOCATED_BYTES}; a no-op where allocation is not tracked. */
+        @Override
+        public void close() {
+            if (closed || start < 0) return;
+            closed = true;
+            long end = totalAllocatedBytes();
+            if (end < start) return;
+            LAST_BACKUP_ALLOCATED.set(end - start);
+            if (enabled) BACKUP_ALLOCATED_BYTES.labels("").observe(end - start);
+        }
+    }
+
+    public static AllocationScope allocationScope() {
+        return new AllocationScope();
+    }
+
+    // ---- export -----------------------------------------------------------------------------
+
+    /** All metrics in Prometheus text exposition format 0.0.4. */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric m : REGISTRY) {
+            out.append("# HELP ").append(m.name).append(' ').append(m.help).append('\n');
+            out.append("# TYPE ").append(m.name).append(' ').append(m.type()).append('\n');
+            m.write(out);
+        }
+        return out.toString();
+    }
+
+    /** Short human-readable lines (label, value) for {@code /bf diag}. */
+    public static Map<String, String> summary() {
+        Map<String, String> lines = new LinkedHashMap<>();
+        for (Stage s : List.of(READ, HASH, COMPRESS, OUTPUT, UPLOAD)) {
+            double b = s.bytes.sum(), sec = s.seconds.sum();
+            if (b <= 0) continue;
+            lines.put("Stage " + s.name, String.format(Locale.ROOT, "%.1f MB in %.1fs (%.1f MB/s per thread)", b / MB, sec, sec > 0 ? b / MB / sec : 0));
+        }
+        PHASE_SECONDS.children.forEach((phase, c) -> lines.put("Phase " + phase,
+                String.format(Locale.ROOT, "%dx avg %.2fs", c.count(), c.count() > 0 ? c.sum() / c.count() : 0)));
+        Histogram.Child parts = PART_UPLOAD_SECONDS.children.get("");
+        if (parts != null && parts.count() > 0) {
+            lines.put("Upload parts", String.format(Locale.ROOT, "%d avg %.2fs p95<=%ss retries %d", parts.count(), parts.sum() / parts.count(),
+                    format(parts.quantileBound(0.95)), (long) PART_RETRIES.get("")));
+        }
+        List<String> queues = new ArrayList<>();
+        QUEUE_DEPTH.children.forEach((q, c) -> queues.add(q + "=" + c.get()));
+        if (!queues.isEmpty()) lines.put("Queues", String.join(" ", queues));
+        List<String> excluded = new ArrayList<>();
+        EXCLUDED.children.forEach((r, a) -> excluded.add(r + "=" + (long) a.sum()));
+        if (!excluded.isEmpty()) lines.put("Excluded", String.join(" ", excluded));
+        long alloc = LAST_BACKUP_ALLOCATED.get();
+        if (alloc >= 0) lines.put("AllocatedDuringLastBackup (JVM-wide)", String.format(Locale.ROOT, "%.1f MB", alloc / MB));
+        return lines;
+    }
+
+    private static String format(double v) {
+        if (Double.isInfinite(v)) return v > 0 ? "+Inf" : "-Inf";
+        if (Double.isNaN(v)) return "NaN";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
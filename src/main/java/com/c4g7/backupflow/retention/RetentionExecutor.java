@@ -0,0 +1,235 @@
+package com.c4g7.backupflow.retention;
+
+import com.c4g7.backupflow.BackupStorageService;
+import com.c4g7.backupflow.ObjectStore;
+import com.c4g7.backupflow.catalog.BackupCatalog;
+import com.c4g7.backupflow.incremental.ChunkIndex;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Deletes the backups a {@link RetentionPolicy.Plan} expires. The objects of the expired backups
+ * and their manifests are found with one recursive listing per folder (not one per backup) and
+ * removed with multi-object deletes of up to {@link ObjectStore#DELETE_BATCH} keys, several batches
+ * in flight at once.
+ * <p>
+ * Chunks of incremental backups are shared, so they are never deleted with a backup. Once expired
+ * incremental backups are gone, the chunks still referenced by the remaining indexes are marked and
+ * only the rest is swept. The remaining backups are taken from the bucket's {@code inc/} folders,
+ * not from the catalog, which can miss a backup whose catalog update failed. Must not overlap a backup run: a running backup may reuse a chunk that
+ * only an expired backup referenced.
+ */
+public final class RetentionExecutor {
+    /**
+     * What a run reclaimed: backups removed, objects and bytes deleted (chunks included) and chunks
+     * swept; {@code failures} holds the error of each failed batch or step.
+     */
+    public record Result(int backups, long objects, long bytes, long chunks, List<String> failures) {}
+
+    private final BackupStorageService storage;
+    private final ChunkIndex chunkIndex;
+    private final int threads;
+    private final Logger logger;
+
+    /** {@code chunkIndex} is the incremental engine's local index, or null when there is none. */
+    public RetentionExecutor(BackupStorageService storage, ChunkIndex chunkIndex, int threads, Logger logger) {
+        this.storage = storage;
+        this.chunkIndex = chunkIndex;
+        this.threads = Math.max(1, threads);
+        this.logger = logger;
+    }
+
+    public Result run(RetentionPolicy.Plan plan) throws Exception {
+        BackupCatalog catalog = storage.catalog();
+        List<String> failures = new ArrayList<>();
+        Map<Long, BackupCatalog.Entry> expired = new HashMap<>();
+        for (BackupCatalog.Entry e : plan.expire()) expired.put(e.timestamp(), e);
+        if (expired.isEmpty()) return new Result(0, 0, 0, 0, failures);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "BackupFlow-retention");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            // 1. Archives, incremental indexes and manifests of the expired backups
+            Map<String, Long> sizes = new HashMap<>();
+            Map<String, Long> owner = new HashMap<>(); // object -> backup timestamp
+            for (BackupCatalog.Type type : BackupCatalog.Type.values()) {
+                if (expired.values().stream().noneMatch(e -> e.type() == type)) continue;
+                String prefix = storage.backupTypePrefix(type);
+                collect(storage.listObjectSizes(prefix), prefix, '/', expired, sizes, owner);
+            }
+            String manifests = storage.serverManifestPrefix();
+            collect(storage.listObjectSizes(manifests), manifests, '-', expired, sizes, owner);
+
+            Set<Long> incomplete = new HashSet<>();
+            long[] deleted = deleteAll(pool, new ArrayList<>(sizes.keySet()), sizes, failures, batch -> {
+                for (String key : batch) incomplete.add(owner.get(key));
+            });
+            // A backup whose objects could not all be deleted stays listed, so the next run retries it
+            List<Long> removed = new ArrayList<>();
+            for (Long ts : expired.keySet()) if (!incomplete.contains(ts)) removed.add(ts);
+            catalog.remove(removed);
+
+            // 2. Chunks no remaining incremental backup references
+            long[] swept = {0, 0};
+            boolean incExpired = removed.stream().anyMatch(ts -> expired.get(ts).type() == BackupCatalog.Type.INC);
+            if (incExpired) {
+                try {
+                    Set<String> remaining = new HashSet<>(storage.listBackups("inc"));
+                    for (Long ts : removed) remaining.remove(Long.toString(ts)); // the listing may still show them
+                    Map<String, Long> unreferenced = unreferencedChunks(pool, remaining);
+                    // Forget them first: a crash mid-sweep must not leave the index claiming deleted chunks
+                    if (chunkIndex != null) chunkIndex.removeAll(unreferenced.keySet().stream().map(k -> k.substring(k.lastIndexOf('/') + 1)).toList());
+                    swept = deleteAll(pool, new ArrayList<>(unreferenced.keySet()), unreferenced, failures, batch -> { });
+                } catch (IOException e) {
+                    failures.add("chunk sweep skipped: " + e.getMessage());
+                    logger.warning("Retention: chunk sweep skipped: " + e.getMessage());
+                }
+            }
+            return new Result(removed.size(), deleted[0] + swept[0], deleted[1] + swept[1], swept[0], failures);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Picks the objects below {@code prefix} whose name starts with an expired backup's timestamp
+     * followed by {@code separator} ({@code <ts>/...} for backup folders, {@code <ts>-<id>.json}
+     * for manifests).
+     */
+    private static void collect(Map<String, Long> listing, String prefix, char separator, Map<Long, BackupCatalog.Entry> expired,
+                                Map<String, Long> sizes, Map<String, Long> owner) {
+        for (Map.Entry<String, Long> o : listing.entrySet()) {
+            String key = o.getKey();
+            if (!key.startsWith(prefix)) continue;
+            int end = key.indexOf(separator, prefix.length());
+            if (end <= prefix.length()) continue;
+            long ts;
+            try { ts = Long.parseLong(key.substring(prefix.length(), end)); } catch (NumberFormatException e) { continue; }
+            if (!expired.containsKey(ts)) continue;
+            sizes.put(key, o.getValue());
+            owner.put(key, ts);
+        }
+    }
+
+    private interface BatchFailure {
+        void failed(List<String> batch);
+    }
+
+    /** Deletes {@code keys} in concurrent batches; returns the objects and bytes deleted. */
+    private long[] deleteAll(ExecutorService pool, List<String> keys, Map<String, Long> sizes, List<String> failures,
+                             BatchFailure onFailure) throws InterruptedException {
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += ObjectStore.DELETE_BATCH) {
+            batches.add(keys.subList(i, Math.min(keys.size(), i + ObjectStore.DELETE_BATCH)));
+        }
+        List<Future<?>> futures = new ArrayList<>(batches.size());
+        for (List<String> batch : batches) futures.add(pool.submit(() -> { storage.deleteObjects(batch); return null; }));
+        long objects = 0, bytes = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            List<String> batch = batches.get(i);
+            try {
+                futures.get(i).get();
+                objects += batch.size();
+                for (String key : batch) bytes += Math.max(0, sizes.getOrDefault(key, 0L));
+            } catch (ExecutionException ee) {
+                String msg = ee.getCause() == null ? ee.getMessage() : ee.getCause().getMessage();
+                failures.add(msg);
+                logger.warning("Retention: delete batch of " + batch.size() + " objects failed: " + msg);
+                onFailure.failed(batch);
+            }
+        }
+        return new long[]{objects, bytes};
+    }
+
+    /**
+     * Chunk objects (with their sizes) that none of the {@code remaining} incremental backups (by
+     * timestamp folder) references. Every index is read; if one that exists cannot be read, nothing
+     * is swept.
+     */
+    private Map<String, Long> unreferencedChunks(ExecutorService pool, Set<String> remaining) throws Exception {
+        Set<String> referenced = ConcurrentHashMap.newKeySet();
+        List<Future<?>> futures = new ArrayList<>(remaining.size());
+        for (String ts : remaining) {
+            String index = storage.incrementalIndexName(ts);
+            futures.add(pool.submit(() -> {
+                if (!storage.exists(index)) return null; // backup gone: references nothing
+                try (InputStream in = storage.openObject(index)) {
+                    readChunkHashes(in, referenced);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (ExecutionException ee) {
+                throw new IOException("cannot read an incremental index: " + (ee.getCause() == null ? ee.getMessage() : ee.getCause().getMessage()), ee.getCause());
+            }
+        }
+        Map<String, Long> unreferenced = new HashMap<>();
+        for (Map.Entry<String, Long> o : storage.listObjectSizes(storage.chunkPrefix()).entrySet()) {
+            String key = o.getKey();
+            if (!referenced.contains(key.substring(key.lastIndexOf('/') + 1))) unreferenced.put(key, o.getValue());
+        }
+        return unreferenced;
+    }
+
+    /** Adds every chunk hash of an incremental index (whole-file chunks and region chunks) to {@code out}. */
+    static void readChunkHashes(InputStream in, Set<String> out) throws IOException {
+        try (JsonReader r = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            r.beginObject();
+            while (r.hasNext()) {
+                if (!r.nextName().equals("files")) { r.skipValue(); continue; }
+                r.beginArray();
+                while (r.hasNext()) {
+                    r.beginObject();
+                    while (r.hasNext()) {
+                        switch (r.nextName()) {
+                            case "chunks" -> {
+                                r.beginArray();
+                                while (r.peek() != JsonToken.END_ARRAY) out.add(r.nextString());
+                                r.endArray();
+                            }
+                            case "region" -> {
+                                r.beginArray();
+                                while (r.hasNext()) {
+                                    r.beginArray(); // [index, timestamp, hash]
+                                    r.nextInt();
+                                    r.nextInt();
+                                    out.add(r.nextString());
+                                    r.endArray();
+                                }
+                                r.endArray();
+                            }
+                            default -> r.skipValue();
+                        }
+                    }
+                    r.endObject();
+                }
+                r.endArray();
+            }
+            r.endObject();
+        } catch (IllegalStateException e) { // JsonReader reports unexpected tokens this way
+            throw new IOException("Malformed incremental index: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.c4g7.backupflow.retention;
+
+import com.c4g7.backupflow.catalog.BackupCatalog;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Grandfather-father-son retention: the newest {@code last} backups are kept, plus the newest
+ * backup of each of the last {@code hourly} hours, {@code daily} days, {@code weekly} ISO weeks and
+ * {@code monthly} months that have a backup at all (so a server that was offline for a week still
+ * keeps {@code daily} backups). A backup kept by any rule is kept. Periods are taken in the given
+ * time zone. With every count at 0 the policy keeps everything.
+ */
+public record RetentionPolicy(int last, int hourly, int daily, int weekly, int monthly) {
+
+    /** Which backups a policy keeps; both lists oldest first. */
+    public record Plan(List<BackupCatalog.Entry> keep, List<BackupCatalog.Entry> expire, Map<Long, String> reasons) {
+        /** The rules that keep {@code timestamp}, e.g. {@code "last,daily"}, or null if it expires. */
+        public String reason(long timestamp) { return reasons.get(timestamp); }
+    }
+
+    public boolean keepsEverything() {
+        return last <= 0 && hourly <= 0 && daily <= 0 && weekly <= 0 && monthly <= 0;
+    }
+
+    public Plan apply(List<BackupCatalog.Entry> backups, ZoneId zone) {
+        List<BackupCatalog.Entry> newestFirst = new ArrayList<>(backups);
+        newestFirst.sort(Comparator.comparingLong(BackupCatalog.Entry::timestamp).reversed());
+        Map<Long, String> reasons = new LinkedHashMap<>();
+        if (keepsEverything()) {
+            for (BackupCatalog.Entry e : newestFirst) reasons.put(e.timestamp(), "all");
+        } else {
+            for (int i = 0; i < Math.min(last, newestFirst.size()); i++) keep(reasons, newestFirst.get(i), "last");
+            period(reasons, newestFirst, zone, hourly, "hourly", t -> t.truncatedTo(ChronoUnit.HOURS));
+            period(reasons, newestFirst, zone, daily, "daily", LocalDateTime::toLocalDate);
+            period(reasons, newestFirst, zone, weekly, "weekly", t -> t.get(IsoFields.WEEK_BASED_YEAR) * 100 + t.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            period(reasons, newestFirst, zone, monthly, "monthly", t -> t.getYear() * 100 + t.getMonthValue());
+            if (!newestFirst.isEmpty()) reasons.putIfAbsent(newestFirst.get(0).timestamp(), "newest"); // never prune down to nothing
+        }
+        List<BackupCatalog.Entry> keep = new ArrayList<>(), expire = new ArrayList<>();
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            BackupCatalog.Entry e = newestFirst.get(i);
+            (reasons.containsKey(e.timestamp()) ? keep : expire).add(e);
+        }
+        return new Plan(keep, expire, reasons);
+    }
+
+    /** Keeps the newest backup of each of the {@code count} most recent periods that have one. */
+    private static void period(Map<Long, String> reasons, List<BackupCatalog.Entry> newestFirst, ZoneId zone, int count,
+                               String rule, Function<LocalDateTime, Object> periodOf) {
+        Object current = null;
+        int periods = 0;
+        for (BackupCatalog.Entry e : newestFirst) {
+            if (periods >= count) return;
+            Object p = periodOf.apply(LocalDateTime.ofInstant(Instant.ofEpochMilli(e.timestamp()), zone));
+            if (Objects.equals(p, current)) continue;
+            current = p;
+            periods++;
+            keep(reasons, e, rule);
+        }
+    }
+
+    private static void keep(Map<Long, String> reasons, BackupCatalog.Entry e, String rule) {
+        reasons.merge(e.timestamp(), rule, (a, b) -> a + "," + b);
+    }
+}
@@ -0,0 +1,68 @@
+package com.c4g7.backupflow.throttle;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The byte budgets backups run under: {@link #DISK} for reading source files (which also paces the
+ * compressors and hashers fed by those reads) and {@link #UPLOAD} for data sent to the bucket. Both
+ * are unlimited until {@link TickThrottle} sets a rate. Static so the archivers and uploaders can
+ * take from them without a plugin reference.
+ */
+public final class IoThrottle {
+    private IoThrottle() {}
+
+    public static final TokenBucket DISK = new TokenBucket();
+    public static final TokenBucket UPLOAD = new TokenBucket();
+
+    /** What one directory entry visited by a walk costs against {@link #DISK}. */
+    public static final long METADATA_COST = 4096;
+
+    /** Applies one rate to both budgets; 0 removes the limit. */
+    public static void setRate(long bytesPerSecond) {
+        DISK.setRate(bytesPerSecond);
+        UPLOAD.setRate(bytesPerSecond);
+    }
+
+    public static long rate() { return DISK.rate(); }
+
+    public static boolean isLimited() { return DISK.rate() > 0; }
+
+    public interface IoAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Runs {@code action} on this thread without waiting for either budget, for short bursts that
+     * must finish quickly (the world snapshot, while saving is paused).
+     */
+    public static <T> T unthrottled(IoAction<T> action) throws IOException {
+        boolean previous = TokenBucket.EXEMPT.get();
+        TokenBucket.EXEMPT.set(Boolean.TRUE);
+        try {
+            return action.run();
+        } finally {
+            TokenBucket.EXEMPT.set(previous);
+        }
+    }
+
+    /** Reads from {@code in} against the {@link #DISK} budget, which may be limited mid-stream. */
+    public static InputStream throttle(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) DISK.acquire(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) DISK.acquire(n);
+                return n;
+            }
+        };
+    }
+}
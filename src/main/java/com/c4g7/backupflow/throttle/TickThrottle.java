@@ -0,0 +1,100 @@
+package com.c4g7.backupflow.throttle;
+
+import com.c4g7.backupflow.metrics.Metrics;
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Adapts the {@link IoThrottle} rate to the server's tick time while a backup runs. Every tick's
+ * duration (Paper's {@link ServerTickEndEvent}) feeds a short moving average; twice a second the
+ * rate is halved if that average is over the MSPT budget and raised by half once it is comfortably
+ * under. When the raised rate is well above what the backup actually moves, the limit is dropped,
+ * so an idle server backs up at full speed. Runs on the main thread; the buckets are thread-safe.
+ */
+public final class TickThrottle implements Listener {
+    private static final long MB = 1024 * 1024;
+    private static final int EVALUATE_EVERY_TICKS = 10;
+    private static final double RELAX_BELOW = 0.75; // fraction of the budget under which the rate grows
+    private static final long INITIAL_RATE = 64 * MB; // first cut when the throughput is unknown
+
+    private final BooleanSupplier backupRunning;
+    private volatile boolean enabled;
+    private volatile double targetMspt;
+    private volatile long minRate;
+    private volatile long maxRate;
+    private volatile double averageMspt;
+    private int ticks;
+    private long lastPassed;
+    private long lastEvaluatedAt = System.nanoTime();
+
+    public TickThrottle(BooleanSupplier backupRunning) {
+        this.backupRunning = backupRunning;
+    }
+
+    /**
+     * @param targetMspt tick time above which backup I/O is slowed down
+     * @param minMBps floor the rate never drops below
+     * @param maxMBps ceiling while the server keeps up; 0 for unlimited
+     */
+    public void configure(boolean enabled, double targetMspt, double minMBps, double maxMBps) {
+        this.enabled = enabled;
+        this.targetMspt = Math.max(1, targetMspt);
+        this.minRate = Math.max(64 * 1024, (long) (minMBps * MB));
+        this.maxRate = maxMBps > 0 ? Math.max(minRate, (long) (maxMBps * MB)) : 0;
+        apply(enabled ? maxRate : 0);
+    }
+
+    @EventHandler
+    public void onTickEnd(ServerTickEndEvent e) {
+        double mspt = e.getTickDuration();
+        averageMspt = averageMspt == 0 ? mspt : averageMspt * 0.8 + mspt * 0.2;
+        if (++ticks < EVALUATE_EVERY_TICKS) return;
+        ticks = 0;
+        evaluate();
+    }
+
+    private void evaluate() {
+        long now = System.nanoTime();
+        long passed = IoThrottle.DISK.passed() + IoThrottle.UPLOAD.passed();
+        double observed = (passed - lastPassed) * 1e9 / Math.max(1, now - lastEvaluatedAt);
+        lastPassed = passed;
+        lastEvaluatedAt = now;
+        if (!enabled || !backupRunning.getAsBoolean()) {
+            if (IoThrottle.rate() != (enabled ? maxRate : 0)) apply(enabled ? maxRate : 0);
+            return;
+        }
+        long rate = IoThrottle.rate();
+        if (averageMspt > targetMspt) {
+            long base = rate > 0 ? rate : (long) Math.max(observed, INITIAL_RATE);
+            rate = Math.max(minRate, base / 2);
+        } else if (averageMspt < targetMspt * RELAX_BELOW && rate > 0) {
+            rate += rate / 2;
+            if (maxRate > 0) rate = Math.min(rate, maxRate);
+            else if (rate > 2 * observed) rate = 0; // no longer the bottleneck
+        }
+        if (rate != IoThrottle.rate()) apply(rate);
+    }
+
+    private static void apply(long rate) {
+        IoThrottle.setRate(rate);
+        Metrics.THROTTLE_RATE.set(rate);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    public double averageMspt() { return averageMspt; }
+
+    public double targetMspt() { return targetMspt; }
+
+    /** Current budget for {@code /bf status}, e.g. "12.0 MB/s (mspt 43.1/40.0)". */
+    public String describe() {
+        if (!enabled) return "off";
+        long rate = IoThrottle.rate();
+        String budget = rate > 0 ? String.format(Locale.ROOT, "%.1f MB/s", rate / (double) MB) : "unlimited";
+        return budget + String.format(Locale.ROOT, " (mspt %.1f/%.1f)", averageMspt, targetMspt);
+    }
+}
@@ -0,0 +1,79 @@
+package com.c4g7.backupflow.throttle;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte-rate limiter shared by any number of threads. A caller may take more than the bucket holds
+ * (a whole upload part, say): the bucket goes into debt and the caller sleeps until it is paid off,
+ * so large and small requests are both held to the rate on average. Sleeps are short slices, so a
+ * raised rate (or {@code 0}, unlimited) takes effect for threads that are already waiting.
+ */
+public final class TokenBucket {
+    private static final long SLICE_NANOS = 100_000_000L;
+    private static final long MIN_BURST = 256 * 1024;
+
+    /** Threads that must not be slowed down (see {@link IoThrottle#unthrottled}); their bytes still count. */
+    static final ThreadLocal<Boolean> EXEMPT = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final LongAdder passed = new LongAdder();
+    private long rate; // bytes per second, 0 = unlimited
+    private double available;
+    private long refilledAt = System.nanoTime();
+
+    /** Bytes per second; 0 or less removes the limit. */
+    public synchronized void setRate(long bytesPerSecond) {
+        refill();
+        long next = Math.max(0, bytesPerSecond);
+        if (rate == 0 && next > 0) available = 0;
+        rate = next;
+        if (rate > 0) available = Math.min(available, burst());
+    }
+
+    public synchronized long rate() { return rate; }
+
+    /** Total bytes that went through {@link #acquire}, for throughput sampling. */
+    public long passed() { return passed.sum(); }
+
+    /** Blocks until {@code bytes} may be processed at the current rate. */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (bytes <= 0) return;
+        passed.add(bytes);
+        if (EXEMPT.get()) return;
+        long wait;
+        synchronized (this) {
+            if (rate == 0) return;
+            refill();
+            available -= bytes;
+            wait = debtNanos();
+        }
+        while (wait > 0) {
+            try {
+                Thread.sleep(Math.min(wait, SLICE_NANOS) / 1_000_000L, (int) (Math.min(wait, SLICE_NANOS) % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+            synchronized (this) {
+                if (rate == 0) return;
+                refill();
+                wait = debtNanos();
+            }
+        }
+    }
+
+    private long debtNanos() {
+        return available >= 0 ? 0 : (long) (-available * 1e9 / rate);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (rate > 0) available = Math.min(burst(), available + (now - refilledAt) * (double) rate / 1e9);
+        refilledAt = now;
+    }
+
+    /** A quarter second of tokens, so an idle bucket cannot release a long burst at once. */
+    private double burst() {
+        return Math.max(MIN_BURST, rate / 4.0);
+    }
+}
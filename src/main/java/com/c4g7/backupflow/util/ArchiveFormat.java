@@ -0,0 +1,43 @@
+package com.c4g7.backupflow.util;
+
+import java.util.Locale;
+
+/**
+ * Archive container and codec of a full backup. The value of {@link #extension()} is both the
+ * object name suffix and what the manifest records under {@code "format"}.
+ */
+public enum ArchiveFormat {
+    ZIP("zip"),
+    TAR_GZ("tar.gz"),
+    TAR_ZST("tar.zst"),
+    TAR_LZ4("tar.lz4");
+
+    private final String extension;
+
+    ArchiveFormat(String extension) { this.extension = extension; }
+
+    public String extension() { return extension; }
+
+    public boolean isTar() { return this != ZIP; }
+
+    /** Parses the {@code backup.compression} setting; unknown values fall back to zip. */
+    public static ArchiveFormat fromConfig(String value) {
+        if (value == null) return ZIP;
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "gz", "gzip", "tar.gz", "tgz" -> TAR_GZ;
+            case "zstd", "zst", "tar.zst" -> TAR_ZST;
+            case "lz4", "tar.lz4" -> TAR_LZ4;
+            default -> ZIP;
+        };
+    }
+
+    /** Format recorded in a manifest or implied by an archive file name, or null if unknown. */
+    public static ArchiveFormat fromName(String name) {
+        if (name == null) return null;
+        String n = name.toLowerCase(Locale.ROOT);
+        for (ArchiveFormat f : values()) {
+            if (n.equals(f.extension) || n.endsWith("." + f.extension)) return f;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,154 @@
+package com.c4g7.backupflow.util;
+
+import com.c4g7.backupflow.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory pipe between a producer thread (writing to {@link #sink()}) and a consumer thread
+ * (reading from {@link #source()}). At most {@code blocks} buffers of {@code blockSize} bytes are
+ * queued, so a fast producer blocks instead of growing the heap. A failure on either side is
+ * reported to the other side as an IOException.
+ */
+public final class BoundedPipe {
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> queue;
+    private final int blockSize;
+    private volatile Throwable failure;
+    private volatile boolean readerClosed;
+    private final OutputStream sink = new Sink();
+    private final InputStream source = new Source();
+
+    public BoundedPipe(int blockSize, int blocks) {
+        this.blockSize = Math.max(8192, blockSize);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, blocks));
+    }
+
+    public OutputStream sink() { return sink; }
+    public InputStream source() { return source; }
+    public int depth() { return queue.size(); }
+
+    /** Aborts the pipe; blocked readers and writers fail with the given cause. */
+    public void fail(Throwable cause) {
+        if (failure == null) failure = cause != null ? cause : new IOException("Pipe aborted");
+        queue.clear();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable f = failure;
+        if (f == null) return;
+        if (f instanceof IOException io) throw new IOException(io.getMessage(), io);
+        throw new IOException(f.getMessage(), f);
+    }
+
+    private final class Sink extends OutputStream {
+        private byte[] buf = new byte[blockSize];
+        private int pos;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (pos == buf.length) flushBlock();
+            buf[pos++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (pos == buf.length) flushBlock();
+                int n = Math.min(len, buf.length - pos);
+                System.arraycopy(b, off, buf, pos, n);
+                pos += n; off += n; len -= n;
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (pos == 0) return;
+            byte[] block = pos == buf.length ? buf : java.util.Arrays.copyOf(buf, pos);
+            put(block);
+            buf = new byte[blockSize];
+            pos = 0;
+        }
+
+        private void put(byte[] block) throws IOException {
+            try {
+                while (!queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                    if (readerClosed) throw new IOException("Pipe reader closed");
+                }
+                Metrics.STREAM_PIPE_DEPTH.set(queue.size());
+                checkFailure();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing to pipe");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            checkFailure();
+            flushBlock();
+            put(EOF);
+        }
+    }
+
+    private final class Source extends InputStream {
+        private byte[] current;
+        private int pos;
+        private boolean eof;
+
+        private boolean fill() throws IOException {
+            if (eof) return false;
+            if (current != null && pos < current.length) return true;
+            try {
+                byte[] next;
+                while ((next = queue.poll(100, TimeUnit.MILLISECONDS)) == null) checkFailure();
+                Metrics.STREAM_PIPE_DEPTH.set(queue.size());
+                checkFailure();
+                if (next == EOF) { eof = true; current = null; return false; }
+                current = next;
+                pos = 0;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading from pipe");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return current[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current != null ? current.length - pos : 0;
+        }
+
+        @Override
+        public void close() {
+            readerClosed = true;
+            queue.clear();
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.c4g7.backupflow.util;
 
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -13,8 +21,39 @@ public final class CompressionUtils {
 
     public static class Result {
         public final Path archive;
-        public final java.util.Map<String,String> hashes; // relative path -> sha256
-        Result(Path a, java.util.Map<String,String> h) { this.archive = a; this.hashes = h; }
+        public final ArchiveFormat format;
+        public final java.util.Map<String,String> hashes; // relative path -> hex digest
+        Result(Path a, ArchiveFormat f, java.util.Map<String,String> h) { this.archive = a; this.format = f; this.hashes = h; }
+    }
+
+    /**
+     * Wraps {@code out} in the codec of a tar.* format. {@code level} is the codec's own scale
+     * (0-9 for gzip, 1-22 for zstd, ignored for LZ4); {@code threads} above 1 enables zstd's
+     * multithreaded compression. Closing the returned stream finishes the frame and closes {@code out}.
+     */
+    public static OutputStream encoder(ArchiveFormat format, OutputStream out, int level, int threads) throws IOException {
+        return switch (format) {
+            case TAR_GZ -> new java.util.zip.GZIPOutputStream(out, 64 * 1024) {
+                { def.setLevel(Math.max(0, Math.min(9, level))); }
+            };
+            case TAR_ZST -> {
+                ZstdOutputStream zs = new ZstdOutputStream(out, Math.max(1, Math.min(22, level)));
+                if (threads > 1) zs.setWorkers(threads);
+                yield zs;
+            }
+            case TAR_LZ4 -> new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB);
+            case ZIP -> throw new IllegalArgumentException("zip is a container, not a stream codec");
+        };
+    }
+
+    /** Decoding counterpart of {@link #encoder}. */
+    public static InputStream decoder(ArchiveFormat format, InputStream in) throws IOException {
+        return switch (format) {
+            case TAR_GZ -> new java.util.zip.GZIPInputStream(in, 64 * 1024);
+            case TAR_ZST -> new ZstdInputStream(in);
+            case TAR_LZ4 -> new LZ4FrameInputStream(in);
+            case ZIP -> throw new IllegalArgumentException("zip is a container, not a stream codec");
+        };
     }
 
     public static Result compress(Path dir, String mode, boolean withHashes) throws IOException {
@@ -26,63 +65,97 @@ public final class CompressionUtils {
     }
 
     public static Result compress(Path dir, String mode, boolean withHashes, int compressionLevel, boolean parallel) throws IOException {
-        if (mode == null) mode = "zip";
-        if (mode.equalsIgnoreCase("gz")) {
-            // Future: implement tar.gz; fallback to zip for now
-            mode = "zip";
+        return compress(dir, mode, withHashes, compressionLevel, parallel ? Runtime.getRuntime().availableProcessors() : 1);
+    }
+
+    /**
+     * @param mode            {@code backup.compression} value, see {@link ArchiveFormat#fromConfig}
+     * @param compressionLevel level on the chosen codec's scale (see {@link #encoder})
+     * @param threads         worker threads; above 1 zip archives are written by {@link ParallelZipWriter}
+     *                        and zstd compresses multithreaded
+     */
+    public static Result compress(Path dir, String mode, boolean withHashes, int compressionLevel, int threads) throws IOException {
+        return compress(dir, mode, withHashes ? HashUtils.SHA256 : null, compressionLevel, threads);
+    }
+
+    /**
+     * As above, hashing with {@code hashAlgorithm} (see {@link HashUtils#newDigest}; null for no
+     * hashes). Every file is read once: the digest is fed from the same read as the compressor.
+     */
+    public static Result compress(Path dir, String mode, String hashAlgorithm, int compressionLevel, int threads) throws IOException {
+        ArchiveFormat format = ArchiveFormat.fromConfig(mode);
+        Path out = Files.createTempFile("backupflow-", "." + format.extension());
+        boolean withHashes = hashAlgorithm != null;
+        java.util.Map<String,String> map = withHashes ? new java.util.LinkedHashMap<>() : java.util.Collections.emptyMap();
+        if (format.isTar()) {
+            try (OutputStream fo = Metrics.OUTPUT.meter(Files.newOutputStream(out));
+                 java.io.BufferedOutputStream bos = new java.io.BufferedOutputStream(fo, 1024 * 1024);
+                 TarWriter tw = new TarWriter(encoder(format, bos, compressionLevel, threads));
+                 Stream<Path> walk = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    if (Files.isDirectory(p)) continue;
+                    String rel = dir.relativize(p).toString().replace('\\','/');
+                    java.security.MessageDigest md = withHashes ? HashUtils.newDigest(hashAlgorithm) : null;
+                    try {
+                        tw.addFile(p, rel, md);
+                    } catch (java.nio.file.NoSuchFileException | java.nio.file.AccessDeniedException ignored) {
+                        continue;
+                    }
+                    if (md != null) map.put(rel, HashUtils.toHex(md.digest()));
+                }
+            }
+            return new Result(out, format, map);
+        }
+        if (threads > 1) {
+            try (OutputStream fo = Metrics.OUTPUT.meter(Files.newOutputStream(out));
+                 java.io.BufferedOutputStream bos = new java.io.BufferedOutputStream(fo, 1024 * 1024);
+                 ParallelZipWriter zw = new ParallelZipWriter(bos, compressionLevel, threads, ParallelZipWriter.DEFAULT_BLOCK_SIZE);
+                 Stream<Path> walk = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    if (Files.isDirectory(p)) continue;
+                    String rel = dir.relativize(p).toString().replace('\\','/');
+                    java.security.MessageDigest md = withHashes ? HashUtils.newDigest(hashAlgorithm) : null;
+                    java.io.InputStream in;
+                    try {
+                        in = IoThrottle.throttle(Metrics.READ.meter(Files.newInputStream(p)));
+                    } catch (java.nio.file.NoSuchFileException | java.nio.file.AccessDeniedException ignored) {
+                        continue;
+                    }
+                    try (in) {
+                        zw.addEntry(rel, in, md); // a read or output failure fails the archive
+                    }
+                    if (md != null) map.put(rel, HashUtils.toHex(md.digest()));
+                }
+            }
+            return new Result(out, format, map);
         }
-        Path out = Files.createTempFile("backupflow-",".zip");
-        java.util.Map<String,String> map = withHashes ? 
-            (parallel ? new ConcurrentHashMap<>() : new java.util.LinkedHashMap<>()) : 
-            java.util.Collections.emptyMap();
-        
-        try (OutputStream fo = Files.newOutputStream(out); 
+
+        try (OutputStream fo = Metrics.OUTPUT.meter(Files.newOutputStream(out)); 
              java.io.BufferedOutputStream bos = new java.io.BufferedOutputStream(fo, 1024 * 1024); // 1MB buffer
-             ZipOutputStream zos = new ZipOutputStream(bos)) {
+             ZipOutputStream zos = new ZipOutputStream(bos);
+             Stream<Path> walk = Files.walk(dir)) {
             // Set compression level (0-9: 0=no compression, 9=max compression)
             zos.setLevel(Math.max(0, Math.min(9, compressionLevel)));
-            
-            if (parallel && withHashes) {
-                // Parallel processing: first collect all files and compute hashes in parallel
-                try (Stream<Path> pathStream = Files.walk(dir)) {
-                    pathStream.filter(Files::isRegularFile)
-                        .parallel()
-                        .forEach(p -> {
-                            try {
-                                String rel = dir.relativize(p).toString().replace('\\','/');
-                                String hash = HashUtils.sha256(p);
-                                map.put(rel, hash);
-                            } catch (IOException ignored) { }
-                        });
+
+            for (Path p : (Iterable<Path>) walk::iterator) {
+                if (Files.isDirectory(p)) continue;
+                String rel = dir.relativize(p).toString().replace('\\','/');
+                java.security.MessageDigest md = withHashes ? HashUtils.newDigest(hashAlgorithm) : null;
+                java.io.InputStream raw;
+                try {
+                    raw = IoThrottle.throttle(Metrics.READ.meter(Files.newInputStream(p)));
+                } catch (java.nio.file.NoSuchFileException | java.nio.file.AccessDeniedException ignored) {
+                    continue;
                 }
-                // Then add files to zip sequentially (ZipOutputStream is not thread-safe)
-                Files.walk(dir).forEach(p -> {
-                    try {
-                        if (Files.isDirectory(p)) return;
-                        String rel = dir.relativize(p).toString().replace('\\','/');
-                        ZipEntry ze = new ZipEntry(rel);
-                        zos.putNextEntry(ze);
-                        Files.copy(p, zos);
-                        zos.closeEntry();
-                    } catch (IOException ignored) { }
-                });
-            } else {
-                // Sequential processing (original behavior)
-                Files.walk(dir).forEach(p -> {
-                    try {
-                        if (Files.isDirectory(p)) return;
-                        String rel = dir.relativize(p).toString().replace('\\','/');
-                        ZipEntry ze = new ZipEntry(rel);
-                        zos.putNextEntry(ze);
-                        Files.copy(p, zos);
-                        zos.closeEntry();
-                        if (withHashes) {
-                            try { map.put(rel, HashUtils.sha256(p)); } catch (IOException ignored) { }
-                        }
-                    } catch (IOException ignored) { }
-                });
+                try (java.io.InputStream in = md != null ? new java.security.DigestInputStream(raw, md) : raw) {
+                    ZipEntry ze = new ZipEntry(rel);
+                    zos.putNextEntry(ze);
+                    in.transferTo(Metrics.COMPRESS.meter(zos));
+                    zos.closeEntry();
+                }
+                if (md != null) map.put(rel, HashUtils.toHex(md.digest()));
             }
         }
-        return new Result(out, map);
+        return new Result(out, format, map);
     }
 }
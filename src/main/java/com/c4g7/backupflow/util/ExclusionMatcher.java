@@ -0,0 +1,194 @@
+package com.c4g7.backupflow.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Backup exclusion rules, compiled once per config load. The glob patterns are split into path
+ * segments and merged into one trie, so a path is matched by stepping its segments through the trie
+ * (keeping a small set of active states for {@code **}) rather than testing every pattern in turn.
+ * <p>
+ * {@code *} and {@code ?} match within a single path segment, {@code **} matches any number of
+ * segments, and a pattern without a {@code /} matches the file name at any depth. A pattern ending
+ * in {@code /**} excludes a whole directory, so walkers can skip the subtree without listing it.
+ * Paths are relative to the server directory and separated by {@code /}.
+ */
+public final class ExclusionMatcher {
+    /** Used when {@code backup.exclude.patterns} is empty. */
+    public static final List<String> DEFAULT_PATTERNS = List.of(
+            "cache/**", "**/cache/**", "**/temp/**", "**/tmp/**", "plugins/BackupFlow/work/**",
+            "logs/*.log.gz", "**/logs/*.log.gz", "world/session.lock", "**/session.lock", "**/uid.dat",
+            ".git/**", ".idea/**", "*.iml", "**/dynmap/web/tiles/**", "**/BlueMap/web/data/**");
+
+    public static final ExclusionMatcher NONE = new ExclusionMatcher(new Node(), 0, 0);
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        final List<Glob> globs = new ArrayList<>(0);
+        Node anySegments; // continuation after "**"
+        boolean loop;     // this node is a "**": it stays active on any segment
+        boolean match;    // a pattern ends here
+        boolean subtree;  // a pattern ending in "/**" ends here: everything below matches
+    }
+
+    private record Glob(String source, Pattern pattern, Node next) {}
+
+    private final Node root;
+    private final long maxFileSize;
+    private final int patterns;
+    private ExclusionMatcher unlimited;
+
+    private ExclusionMatcher(Node root, long maxFileSize, int patterns) {
+        this.root = root;
+        this.maxFileSize = maxFileSize;
+        this.patterns = patterns;
+    }
+
+    /**
+     * @param maxFileSize files larger than this many bytes are excluded; 0 for no limit
+     */
+    public static ExclusionMatcher compile(List<String> patterns, long maxFileSize) {
+        Node root = new Node();
+        int count = 0;
+        for (String pattern : patterns) {
+            if (add(root, pattern)) count++;
+        }
+        return new ExclusionMatcher(root, Math.max(0, maxFileSize), count);
+    }
+
+    private static boolean add(Node root, String pattern) {
+        if (pattern == null) return false;
+        String p = pattern.trim().replace('\\', '/');
+        while (p.startsWith("./")) p = p.substring(2);
+        while (p.startsWith("/")) p = p.substring(1);
+        if (p.endsWith("/")) p = p + "**";
+        if (p.isEmpty()) return false;
+        if (p.indexOf('/') < 0) p = "**/" + p;
+        String[] segments = p.split("/");
+        Node n = root;
+        for (int i = 0; i < segments.length; i++) {
+            String s = segments[i];
+            if (s.isEmpty()) continue;
+            if (s.equals("**")) {
+                if (i == segments.length - 1) {
+                    n.subtree = true;
+                    return true;
+                }
+                if (n.loop) continue;
+                if (n.anySegments == null) {
+                    n.anySegments = new Node();
+                    n.anySegments.loop = true;
+                }
+                n = n.anySegments;
+            } else if (s.indexOf('*') < 0 && s.indexOf('?') < 0) {
+                n = n.literals.computeIfAbsent(s, k -> new Node());
+            } else {
+                n = globChild(n, s);
+            }
+        }
+        n.match = true;
+        return true;
+    }
+
+    private static Node globChild(Node parent, String segment) {
+        for (Glob g : parent.globs) {
+            if (g.source.equals(segment)) return g.next;
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        Node next = new Node();
+        parent.globs.add(new Glob(segment, Pattern.compile(regex.toString(), Pattern.DOTALL), next));
+        return next;
+    }
+
+    public int patternCount() { return patterns; }
+
+    public long maxFileSize() { return maxFileSize; }
+
+    public boolean isOversized(long size) {
+        return maxFileSize > 0 && size > maxFileSize;
+    }
+
+    /** True if a pattern excludes the file at {@code path}. */
+    public boolean excludes(String path) {
+        return run(path, false);
+    }
+
+    /** True if a pattern excludes everything below the directory at {@code path}. */
+    public boolean excludesDirectory(String path) {
+        return run(path, true);
+    }
+
+    public boolean excludesFile(String path, long size) {
+        return isOversized(size) || excludes(path);
+    }
+
+    /** The same patterns without the file size limit. */
+    public ExclusionMatcher withoutSizeLimit() {
+        if (maxFileSize == 0) return this;
+        ExclusionMatcher u = unlimited;
+        if (u == null) unlimited = u = new ExclusionMatcher(root, 0, patterns);
+        return u;
+    }
+
+    private boolean run(String path, boolean directory) {
+        if (patterns == 0 || path.isEmpty()) return false;
+        List<Node> current = new ArrayList<>(4);
+        List<Node> next = new ArrayList<>(4);
+        enter(current, root);
+        int start = 0;
+        int len = path.length();
+        while (start <= len) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = len;
+            if (end > start) {
+                for (Node n : current) {
+                    if (n.subtree) return true; // at least this segment lies below an "x/**"
+                }
+                String segment = path.substring(start, end);
+                next.clear();
+                for (Node n : current) {
+                    if (n.loop) enter(next, n);
+                    Node lit = n.literals.get(segment);
+                    if (lit != null) enter(next, lit);
+                    for (Glob g : n.globs) {
+                        if (g.pattern.matcher(segment).matches()) enter(next, g.next);
+                    }
+                }
+                if (next.isEmpty()) return false;
+                List<Node> swap = current;
+                current = next;
+                next = swap;
+            }
+            start = end + 1;
+        }
+        for (Node n : current) {
+            if (directory ? n.subtree : n.match) return true;
+        }
+        return false;
+    }
+
+    /** Adds {@code n} and, since "**" may match zero segments, whatever follows it. */
+    private static void enter(List<Node> states, Node n) {
+        while (n != null) {
+            if (!states.contains(n)) states.add(n);
+            n = n.anySegments;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.c4g7.backupflow.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-file state from the last backup: size, mtime and file key (inode) together with the content
+ * hash and, for incremental backups, the chunk list. A file whose size, mtime and file key still
+ * match can reuse its hash and chunks without being read.
+ * <p>
+ * The index file is memory-mapped, not loaded: records are written in walk order and followed by a
+ * table of (path hash, record offset) slots sorted by hash, so a lookup is a binary search over the
+ * mapped table plus a path comparison, and heap use does not grow with the number of files. Each
+ * backup writes a fresh index through a {@link Writer} and swaps it in on {@link Writer#commit()};
+ * a failed backup leaves the previous index in place.
+ * <p>
+ * A mapped file cannot be replaced or deleted on Windows, so each commit writes a new generation,
+ * {@code <file>.<n>}, next to the old one and switches the mapping over to it. Older generations
+ * are deleted once they are no longer mapped, at the latest on the next commit.
+ */
+public final class FileStateIndex {
+    private static final int MAGIC = 0x42464649; // "BFFI"
+    private static final int VERSION = 1;
+    private static final int HEADER = 40;
+    private static final int SLOT = 12; // int path hash + long record offset
+    private static final int ALG_BYTES = 16;
+    private static final HexFormat HEX = HexFormat.of();
+
+    public record Entry(long size, long mtime, long fileKey, String hash, List<String> chunks) {
+        /** True when the file still has the size, mtime and file key recorded for it. */
+        public boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && mtime == attrs.lastModifiedTime().toMillis() && fileKey == FileStateIndex.fileKey(attrs);
+        }
+    }
+
+    private record View(MappedByteBuffer map, int count, int slotsOffset) {}
+
+    private final Path file;
+    private final String algorithm;
+    private volatile View view;
+    private long generation = -1; // of the mapped file; -1 for the plain file written before generations
+
+    private FileStateIndex(Path file, String algorithm) {
+        this.file = file;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Opens the index at {@code file}. A missing, damaged or oversized file, or one written for a
+     * different hash algorithm, yields an empty index that the next commit replaces.
+     */
+    public static FileStateIndex open(Path file, String algorithm) {
+        FileStateIndex idx = new FileStateIndex(file, algorithm);
+        for (Map.Entry<Long,Path> g : idx.generations().descendingMap().entrySet()) {
+            View v = idx.map(g.getValue());
+            if (v == null) continue;
+            idx.view = v;
+            idx.generation = g.getKey();
+            break;
+        }
+        return idx;
+    }
+
+    /** Index files on disk by generation, {@code file} itself as -1. */
+    private TreeMap<Long,Path> generations() {
+        TreeMap<Long,Path> found = new TreeMap<>();
+        Path dir = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        if (Files.exists(file)) found.put(-1L, file);
+        if (dir == null || !Files.isDirectory(dir)) return found;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path p : ds) {
+                try {
+                    found.put(Long.parseLong(p.getFileName().toString().substring(prefix.length())), p);
+                } catch (NumberFormatException ignored) { } // the writer's .tmp
+            }
+        } catch (IOException ignored) { }
+        return found;
+    }
+
+    private View map(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER || size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.BIG_ENDIAN);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) return null;
+            int count = map.getInt(8);
+            long slots = map.getLong(16);
+            byte[] alg = new byte[ALG_BYTES];
+            map.get(24, alg);
+            if (!algorithm.equals(new String(alg, StandardCharsets.UTF_8).trim())) return null;
+            if (count < 0 || slots < HEADER || slots + (long) count * SLOT != size) return null;
+            return new View(map, count, (int) slots);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public int size() {
+        View v = view;
+        return v == null ? 0 : v.count;
+    }
+
+    /** Recorded state of {@code path}, or null if the last backup did not see it. */
+    public Entry lookup(String path) {
+        View v = view;
+        if (v == null) return null;
+        int h = path.hashCode();
+        int lo = 0, hi = v.count - 1;
+        while (lo <= hi) { // first slot with hash >= h
+            int mid = (lo + hi) >>> 1;
+            if (v.map.getInt(v.slotsOffset + mid * SLOT) < h) lo = mid + 1; else hi = mid - 1;
+        }
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        for (int i = lo; i < v.count && v.map.getInt(v.slotsOffset + i * SLOT) == h; i++) {
+            int off = (int) v.map.getLong(v.slotsOffset + i * SLOT + 4);
+            Entry e = readIfPath(v.map, off, key);
+            if (e != null) return e;
+        }
+        return null;
+    }
+
+    private static Entry readIfPath(MappedByteBuffer map, int off, byte[] key) {
+        int len = map.getChar(off);
+        if (len != key.length) return null;
+        for (int i = 0; i < len; i++) if (map.get(off + 2 + i) != key[i]) return null;
+        int p = off + 2 + len;
+        long size = map.getLong(p);
+        long mtime = map.getLong(p + 8);
+        long fileKey = map.getLong(p + 16);
+        p += 24;
+        byte[] hash = new byte[map.get(p) & 0xFF];
+        map.get(p + 1, hash);
+        p += 1 + hash.length;
+        int chunkCount = map.getInt(p);
+        p += 4;
+        List<String> chunks = new ArrayList<>(chunkCount);
+        byte[] chunk = new byte[32];
+        for (int i = 0; i < chunkCount; i++, p += 32) {
+            map.get(p, chunk);
+            chunks.add(HEX.formatHex(chunk));
+        }
+        return new Entry(size, mtime, fileKey, hash.length == 0 ? null : HEX.formatHex(hash), chunks);
+    }
+
+    /** Identity of the underlying file (inode and device on Unix), 0 where the platform has none. */
+    public static long fileKey(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? 0L : key.hashCode();
+    }
+
+    /** Starts the index for the next backup; entries not put into it are forgotten on commit. */
+    public Writer newWriter() throws IOException {
+        return new Writer();
+    }
+
+    public final class Writer implements AutoCloseable {
+        private final Path tmp;
+        private final DataOutputStream out;
+        private long offset = HEADER;
+        private long[] keys = new long[1024];  // path hash << 32 | record number
+        private long[] offsets = new long[1024];
+        private int count;
+        private boolean done;
+
+        private Writer() throws IOException {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            OutputStream raw = Files.newOutputStream(tmp);
+            out = new DataOutputStream(new BufferedOutputStream(raw, 256 * 1024));
+            out.write(new byte[HEADER]); // filled in on commit
+        }
+
+        /**
+         * Records the state of one file. {@code chunks} are hex SHA-256 chunk hashes (empty when
+         * the caller keeps no chunk list); {@code hash} may be null.
+         */
+        public synchronized void put(String path, BasicFileAttributes attrs, String hash, List<String> chunks) throws IOException {
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) return;
+            byte[] h = hash == null ? new byte[0] : HEX.parseHex(hash);
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            keys[count] = ((long) path.hashCode() << 32) | count;
+            offsets[count] = offset;
+            count++;
+            out.writeChar(name.length);
+            out.write(name);
+            out.writeLong(attrs.size());
+            out.writeLong(attrs.lastModifiedTime().toMillis());
+            out.writeLong(fileKey(attrs));
+            out.writeByte(h.length);
+            out.write(h);
+            out.writeInt(chunks.size());
+            for (String c : chunks) out.write(HEX.parseHex(c));
+            offset += 2 + name.length + 24 + 1 + h.length + 4 + 32L * chunks.size();
+        }
+
+        /** The index this writer will replace, for looking up the previous state. */
+        public FileStateIndex previous() { return FileStateIndex.this; }
+
+        /**
+         * Writes the slot table and header and replaces the previous index: the new file becomes the
+         * next generation and is mapped in place of the old one, which is deleted if the platform
+         * lets go of it.
+         */
+        public synchronized void commit() throws IOException {
+            if (done) return;
+            if (offset + (long) count * SLOT > Integer.MAX_VALUE) throw new IOException("File state index too large to map");
+            long[] sorted = Arrays.copyOf(keys, count);
+            Arrays.sort(sorted);
+            for (long k : sorted) {
+                out.writeInt((int) (k >> 32));
+                out.writeLong(offsets[(int) k]);
+            }
+            out.close();
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0).putLong(offset);
+            header.put(Arrays.copyOf(algorithm.getBytes(StandardCharsets.UTF_8), ALG_BYTES));
+            header.flip();
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) ch.write(header, header.position());
+                ch.force(false);
+            }
+            long next = Math.max(generation + 1, System.currentTimeMillis());
+            Path target = file.resolveSibling(file.getFileName() + "." + next);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            done = true;
+            view = map(target);
+            generation = next;
+            for (Path old : generations().headMap(next).values()) {
+                try {
+                    Files.deleteIfExists(old);
+                } catch (IOException ignored) { } // still mapped (Windows); retried on the next commit
+            }
+        }
+
+        /** Discards the new index unless it was committed; never fails the backup it belonged to. */
+        @Override
+        public synchronized void close() throws IOException {
+            if (done) return;
+            done = true;
+            try {
+                out.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) { } // a leftover .tmp is overwritten by the next writer
+        }
+    }
+}
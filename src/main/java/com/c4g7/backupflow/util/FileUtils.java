@@ -15,4 +15,30 @@ public final class FileUtils {
                     .forEach(x -> { try { Files.deleteIfExists(x); } catch (IOException ignored) {} });
         } catch (IOException ignored) { }
     }
+
+    /**
+     * Creates an empty temp file in {@code dir} for writing a file that is then renamed into place.
+     * Unlike {@link Files#createTempFile} it gets the default (umask) permissions rather than
+     * owner-only ones, and its name is short and fixed-length whatever the target's name.
+     */
+    public static Path createSiblingTemp(Path dir) throws IOException {
+        while (true) {
+            Path tmp = dir.resolve(".bf-" + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+                return tmp;
+            } catch (FileAlreadyExistsException taken) {
+                // draw another name
+            }
+        }
+    }
+
+    /** Gives {@code to} the POSIX permissions of {@code from}; a no-op if {@code from} does not exist or the file system has none. */
+    public static void copyPermissions(Path from, Path to) {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // new file, or no POSIX permissions here: keep the defaults
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.c4g7.backupflow.util;
 
+import com.c4g7.backupflow.metrics.Metrics;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -7,10 +9,50 @@ import java.nio.file.Path;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 public final class HashUtils {
     private HashUtils() {}
 
+    /** Manifest hash algorithms; names are what the manifest records under {@code "hashAlgorithm"}. */
+    public static final String SHA256 = "sha256";
+    public static final String BLAKE3 = "blake3";
+    public static final String XXH64 = "xxh64";
+
+    /** Normalizes an {@code integrity.hashAlgorithm} value; unknown names fall back to sha256. */
+    public static String algorithm(String name) {
+        String known = knownAlgorithm(name);
+        return known != null ? known : SHA256;
+    }
+
+    /**
+     * The manifest algorithm {@code name} stands for, or null if it is none of them. There is no
+     * 128-bit xxHash here, so {@code xxh128} is unknown rather than quietly mapped to xxh64.
+     */
+    public static String knownAlgorithm(String name) {
+        if (name == null) return null;
+        return switch (name.trim().toLowerCase(Locale.ROOT).replace("-", "")) {
+            case "sha256" -> SHA256;
+            case "blake3" -> BLAKE3;
+            case "xxh64", "xxhash64" -> XXH64;
+            default -> null;
+        };
+    }
+
+    /**
+     * A digest for one of the manifest algorithms, as a {@link MessageDigest} so it can be fed by a
+     * {@link DigestInputStream} (or any other tee) while the same bytes are being compressed.
+     * BLAKE3 is a 256-bit cryptographic hash several times faster than SHA-256 without SHA
+     * extensions; xxh64 is far faster still but only detects corruption, not tampering.
+     */
+    public static MessageDigest newDigest(String algorithm) {
+        return Metrics.HASH.meter(switch (algorithm(algorithm)) {
+            case BLAKE3 -> new Blake3Digest();
+            case XXH64 -> new Xxh64Digest();
+            default -> newSha256();
+        });
+    }
+
     public static String sha256(Path file) throws IOException {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
@@ -24,9 +66,59 @@ public final class HashUtils {
         }
     }
 
-    private static String toHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder(bytes.length * 2);
-        for (byte b : bytes) sb.append(String.format("%02x", b));
-        return sb.toString();
+    public static String sha256(byte[] data) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Blake3Digest extends MessageDigest {
+        private final org.apache.commons.codec.digest.Blake3 blake3 = org.apache.commons.codec.digest.Blake3.initHash();
+
+        Blake3Digest() { super("BLAKE3"); }
+
+        @Override protected int engineGetDigestLength() { return 32; }
+        @Override protected void engineUpdate(byte input) { blake3.update(new byte[] { input }); }
+        @Override protected void engineUpdate(byte[] input, int offset, int len) { blake3.update(input, offset, len); }
+        @Override protected void engineReset() { blake3.reset(); }
+
+        @Override
+        protected byte[] engineDigest() {
+            byte[] out = blake3.doFinalize(32);
+            blake3.reset();
+            return out;
+        }
+    }
+
+    private static final class Xxh64Digest extends MessageDigest {
+        private final net.jpountz.xxhash.StreamingXXHash64 xxh = net.jpountz.xxhash.XXHashFactory.fastestInstance().newStreamingHash64(0L);
+
+        Xxh64Digest() { super("XXH64"); }
+
+        @Override protected int engineGetDigestLength() { return 8; }
+        @Override protected void engineUpdate(byte input) { xxh.update(new byte[] { input }, 0, 1); }
+        @Override protected void engineUpdate(byte[] input, int offset, int len) { xxh.update(input, offset, len); }
+        @Override protected void engineReset() { xxh.reset(); }
+
+        @Override
+        protected byte[] engineDigest() {
+            long v = xxh.getValue();
+            xxh.reset();
+            return java.nio.ByteBuffer.allocate(8).putLong(v).array();
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        return java.util.HexFormat.of().formatHex(bytes);
     }
 }
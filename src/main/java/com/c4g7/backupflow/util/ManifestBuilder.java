@@ -1,5 +1,7 @@
 package com.c4g7.backupflow.util;
 
+import com.google.gson.stream.JsonWriter;
+
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -11,47 +13,40 @@ public final class ManifestBuilder {
     private ManifestBuilder() {}
 
     public static Path writeSimpleManifest(Path tempDir, String fileName, String reason, String serverId, List<String> files) throws IOException {
-        String json = toJson(reason, serverId, files, null);
-        Path out = tempDir.resolve(fileName);
-        Files.writeString(out, json, StandardCharsets.UTF_8);
-        return out;
+        return writeManifest(tempDir, fileName, reason, serverId, files, null, null, null);
     }
 
     public static Path writeManifestWithHashes(Path tempDir, String fileName, String reason, String serverId, List<String> files, java.util.Map<String,String> hashes) throws IOException {
-        String json = toJson(reason, serverId, files, hashes);
-        Path out = tempDir.resolve(fileName);
-        Files.writeString(out, json, StandardCharsets.UTF_8);
-        return out;
+        return writeManifest(tempDir, fileName, reason, serverId, files, hashes, HashUtils.SHA256, null);
     }
 
-    private static String toJson(String reason, String serverId, List<String> files, java.util.Map<String,String> hashes) {
-        StringBuilder sb = new StringBuilder();
-        sb.append('{');
-        sb.append("\"timestamp\":").append(Instant.now().toEpochMilli()).append(',');
-        sb.append("\"serverId\":\"").append(escape(serverId)).append("\",");
-        sb.append("\"reason\":\"").append(escape(reason)).append("\",");
-        sb.append("\"files\":[");
-        for (int i=0;i<files.size();i++) {
-            if (i>0) sb.append(',');
-            sb.append("\"").append(escape(files.get(i))).append("\"");
-        }
-        sb.append(']');
-        if (hashes != null && !hashes.isEmpty()) {
-            sb.append(',').append("\"hashes\":{");
-            boolean first = true;
-            for (var e : hashes.entrySet()) {
-                if (!first) sb.append(',');
-                first = false;
-                sb.append("\"").append(escape(e.getKey())).append("\":\"").append(escape(e.getValue())).append("\"");
+    /**
+     * Streams the manifest to {@code tempDir/fileName} with a JSON writer, so the document is never
+     * held in memory and names with quotes, backslashes or control characters are escaped properly.
+     * Read it back with {@link ManifestReader}.
+     *
+     * @param hashAlgorithm algorithm of {@code hashes}, recorded so verify recomputes the same digest
+     * @param format        archive format of {@code files} (recorded so restore/verify pick the decoder), or null
+     */
+    public static Path writeManifest(Path tempDir, String fileName, String reason, String serverId, List<String> files, java.util.Map<String,String> hashes, String hashAlgorithm, ArchiveFormat format) throws IOException {
+        Path out = tempDir.resolve(fileName);
+        try (JsonWriter w = new JsonWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            w.beginObject();
+            w.name("timestamp").value(Instant.now().toEpochMilli());
+            w.name("serverId").value(serverId == null ? "" : serverId);
+            w.name("reason").value(reason == null ? "" : reason);
+            if (format != null) w.name("format").value(format.extension());
+            w.name("files").beginArray();
+            for (String f : files) w.value(f);
+            w.endArray();
+            if (hashes != null && !hashes.isEmpty()) {
+                w.name("hashAlgorithm").value(hashAlgorithm != null ? hashAlgorithm : HashUtils.SHA256);
+                w.name("hashes").beginObject();
+                for (var e : hashes.entrySet()) w.name(e.getKey()).value(e.getValue());
+                w.endObject();
             }
-            sb.append('}');
+            w.endObject();
         }
-        sb.append('}');
-        return sb.toString();
-    }
-
-    private static String escape(String in) {
-        if (in == null) return "";
-        return in.replace("\\","\\\\").replace("\"","\\\"");
+        return out;
     }
 }
@@ -0,0 +1,145 @@
+package com.c4g7.backupflow.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Compact binary companion to the JSON manifest: one fixed-width record per file, sorted by path,
+ * so a single file's digest, size and archive offset are found with a binary search over the
+ * buffer instead of parsing the whole manifest.
+ * <pre>
+ *   magic "BFMI", u8 version, u8 digest length, u16 algorithm length, algorithm (UTF-8), u32 count
+ *   count x { u32 name offset, u16 name length, i64 size, i64 archive offset, digest }
+ *   names: the UTF-8 paths back to back, in record order (unsigned byte order)
+ * </pre>
+ * All integers are little-endian; a size or offset of -1 means unknown.
+ */
+public final class ManifestIndex {
+    private static final int MAGIC = 0x494d4642; // "BFMI"
+    private static final int VERSION = 1;
+
+    public record Entry(String name, byte[] digest, long size, long offset) {
+        public String hexDigest() { return HexFormat.of().formatHex(digest); }
+    }
+
+    private final ByteBuffer buf; // only absolute reads, so lookups may run on several threads
+    private final String algorithm;
+    private final int digestLength;
+    private final int count;
+    private final int tableStart;
+    private final int recordSize;
+    private final int namesStart;
+
+    private ManifestIndex(ByteBuffer buf) throws IOException {
+        this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < 12 || buf.getInt(0) != MAGIC) throw new IOException("Not a manifest index");
+        if (Byte.toUnsignedInt(buf.get(4)) != VERSION) throw new IOException("Unsupported manifest index version " + buf.get(4));
+        this.digestLength = Byte.toUnsignedInt(buf.get(5));
+        int algLength = Short.toUnsignedInt(buf.getShort(6));
+        byte[] alg = new byte[algLength];
+        buf.get(8, alg);
+        this.algorithm = new String(alg, StandardCharsets.UTF_8);
+        this.count = buf.getInt(8 + algLength);
+        this.tableStart = 12 + algLength;
+        this.recordSize = 4 + 2 + 8 + 8 + digestLength;
+        this.namesStart = tableStart + count * recordSize;
+        if (count < 0 || namesStart > buf.limit()) throw new IOException("Truncated manifest index");
+    }
+
+    /** An index held in memory, e.g. read from the bucket. */
+    public static ManifestIndex wrap(byte[] data) throws IOException {
+        return new ManifestIndex(ByteBuffer.wrap(data));
+    }
+
+    /** Maps a local index file; nothing is read until it is searched. */
+    public static ManifestIndex open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ManifestIndex(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public String algorithm() { return algorithm; }
+
+    public int size() { return count; }
+
+    /** The entry for {@code name}, or null. */
+    public Entry find(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Arrays.compareUnsigned(name(mid), key);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return entry(mid, name);
+        }
+        return null;
+    }
+
+    /** Hex digest recorded for {@code name}, or null; same form as the JSON manifest's hashes. */
+    public String hexDigest(String name) {
+        Entry e = find(name);
+        return e == null ? null : e.hexDigest();
+    }
+
+    private byte[] name(int i) {
+        int rec = tableStart + i * recordSize;
+        byte[] b = new byte[Short.toUnsignedInt(buf.getShort(rec + 4))];
+        buf.get(namesStart + buf.getInt(rec), b);
+        return b;
+    }
+
+    private Entry entry(int i, String name) {
+        int rec = tableStart + i * recordSize;
+        byte[] digest = new byte[digestLength];
+        buf.get(rec + 22, digest);
+        return new Entry(name, digest, buf.getLong(rec + 6), buf.getLong(rec + 14));
+    }
+
+    /**
+     * Writes an index of {@code entries}, whose digests must all have the same length. Paths longer
+     * than 65535 bytes cannot be indexed.
+     */
+    public static void write(Path out, String algorithm, Collection<Entry> entries) throws IOException {
+        List<byte[]> names = new ArrayList<>(entries.size());
+        List<Entry> sorted = new ArrayList<>(entries);
+        byte[][] keys = new byte[sorted.size()][];
+        for (int i = 0; i < keys.length; i++) keys[i] = sorted.get(i).name().getBytes(StandardCharsets.UTF_8);
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+        int digestLength = sorted.isEmpty() ? 0 : sorted.get(0).digest().length;
+        byte[] alg = algorithm.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream os = new java.io.BufferedOutputStream(Files.newOutputStream(out), 256 * 1024)) {
+            ByteBuffer head = ByteBuffer.allocate(12 + alg.length).order(ByteOrder.LITTLE_ENDIAN);
+            head.putInt(MAGIC).put((byte) VERSION).put((byte) digestLength).putShort((short) alg.length).put(alg).putInt(keys.length);
+            os.write(head.array());
+            ByteBuffer rec = ByteBuffer.allocate(4 + 2 + 8 + 8 + digestLength).order(ByteOrder.LITTLE_ENDIAN);
+            long nameOffset = 0;
+            for (int i : order) {
+                Entry e = sorted.get(i);
+                if (keys[i].length > 0xFFFF) throw new IOException("Path too long for the manifest index: " + e.name());
+                if (e.digest().length != digestLength) throw new IOException("Mixed digest lengths in manifest index");
+                if (nameOffset > Integer.MAX_VALUE) throw new IOException("Manifest index names exceed 2 GB");
+                rec.clear();
+                rec.putInt((int) nameOffset).putShort((short) keys[i].length).putLong(e.size()).putLong(e.offset()).put(e.digest());
+                os.write(rec.array());
+                nameOffset += keys[i].length;
+                names.add(keys[i]);
+            }
+            for (byte[] n : names) os.write(n);
+        }
+    }
+}
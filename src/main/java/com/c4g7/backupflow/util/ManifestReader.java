@@ -0,0 +1,62 @@
+package com.c4g7.backupflow.util;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads the manifests written by {@link ManifestBuilder} token by token. The hashes are handed to a
+ * callback as they are parsed instead of being collected, so a manifest of any size is read in
+ * constant memory (apart from what the caller keeps).
+ */
+public final class ManifestReader {
+    private ManifestReader() {}
+
+    /** Everything in a manifest except the hashes. */
+    public record Header(long timestamp, String serverId, String reason, ArchiveFormat format, String hashAlgorithm, List<String> files) {}
+
+    /**
+     * Parses {@code in} (closed afterwards), passing every {@code path -> hex digest} pair to
+     * {@code hashes}; with {@code hashes == null} the hashes are skipped.
+     */
+    public static Header read(InputStream in, BiConsumer<String,String> hashes) throws IOException {
+        long timestamp = 0;
+        String serverId = null, reason = null, hashAlgorithm = HashUtils.SHA256;
+        ArchiveFormat format = null;
+        List<String> files = new ArrayList<>();
+        try (JsonReader r = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "timestamp" -> timestamp = r.nextLong();
+                    case "serverId" -> serverId = r.nextString();
+                    case "reason" -> reason = r.nextString();
+                    case "format" -> format = ArchiveFormat.fromName(r.nextString());
+                    case "hashAlgorithm" -> hashAlgorithm = HashUtils.algorithm(r.nextString());
+                    case "files" -> {
+                        r.beginArray();
+                        while (r.hasNext()) files.add(r.nextString());
+                        r.endArray();
+                    }
+                    case "hashes" -> {
+                        if (hashes == null) { r.skipValue(); continue; }
+                        r.beginObject();
+                        while (r.hasNext()) hashes.accept(r.nextName(), r.nextString());
+                        r.endObject();
+                    }
+                    default -> r.skipValue();
+                }
+            }
+            r.endObject();
+        } catch (IllegalStateException e) { // JsonReader reports unexpected tokens this way
+            throw new IOException("Malformed manifest: " + e.getMessage(), e);
+        }
+        return new Header(timestamp, serverId, reason, format, hashAlgorithm, files);
+    }
+}
@@ -0,0 +1,296 @@
+package com.c4g7.backupflow.util;
+
+import com.c4g7.backupflow.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Zip writer that deflates on a worker pool instead of a single {@link java.util.zip.ZipOutputStream}
+ * deflater. Entry data is cut into blocks that are compressed independently, each primed with the
+ * last 32 KiB of the previous block as a preset dictionary (the pigz approach, so the ratio stays
+ * close to single-threaded deflate). Every block but the last ends with a sync flush, which leaves
+ * the output byte-aligned, so the blocks concatenate into one valid deflate stream. Per-block CRCs
+ * are combined into the entry CRC.
+ *
+ * <p>Blocks are written in submission order. Entries use data descriptors, and Zip64 records are
+ * added once sizes, offsets or the entry count outgrow the classic format, so the output reads back
+ * with {@code ZipInputStream} and {@code ZipFile} like any other archive. Not thread-safe: entries
+ * are added from one thread, only the compression runs in parallel.
+ */
+public final class ParallelZipWriter implements AutoCloseable {
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int DICT_SIZE = 32 * 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int FLAGS = 0x0808; // data descriptor + UTF-8 names
+
+    private static final class Entry {
+        final byte[] name;
+        long offset;
+        long crc;
+        long size;
+        long csize;
+        Entry(byte[] name) { this.name = name; }
+    }
+
+    private record Block(Entry entry, byte[] data, long crc, int length, boolean first, boolean last) {}
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final int window;
+    private final ExecutorService pool;
+    private final ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+    private final List<Entry> central = new ArrayList<>();
+    private final int dosTime = dosTime(System.currentTimeMillis());
+    private final ByteBuffer scratch = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private long offset;
+    private boolean closed;
+
+    public ParallelZipWriter(OutputStream out, int level, int threads, int blockSize) {
+        this.out = out;
+        this.level = Math.max(0, Math.min(9, level));
+        this.blockSize = Math.max(2 * DICT_SIZE, blockSize);
+        int n = Math.max(1, threads);
+        this.window = n * 2; // keeps every worker busy while the head block is being written
+        this.pool = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "BackupFlow-deflate");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Reads {@code in} to the end and queues it as entry {@code name}. The digest, if given, is
+     * updated with the uncompressed content. If reading fails part-way the entry is closed with the
+     * data read so far and the exception is rethrown.
+     *
+     * @return the number of uncompressed bytes added
+     */
+    public long addEntry(String name, InputStream in, MessageDigest digest) throws IOException {
+        if (closed) throw new IOException("Writer closed");
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8));
+        byte[] cur = in.readNBytes(blockSize);
+        byte[] dict = null;
+        boolean first = true;
+        long total = 0;
+        while (true) {
+            if (digest != null) digest.update(cur);
+            total += cur.length;
+            byte[] next;
+            IOException readError = null;
+            try {
+                next = cur.length == blockSize ? in.readNBytes(blockSize) : new byte[0];
+            } catch (IOException e) {
+                next = new byte[0];
+                readError = e;
+            }
+            boolean last = next.length == 0;
+            submit(entry, cur, dict, first, last);
+            if (readError != null) throw readError;
+            if (last) return total;
+            dict = Arrays.copyOfRange(cur, cur.length - DICT_SIZE, cur.length);
+            first = false;
+            cur = next;
+        }
+    }
+
+    private void submit(Entry entry, byte[] data, byte[] dict, boolean first, boolean last) throws IOException {
+        pending.addLast(pool.submit(() -> deflate(entry, data, dict, first, last)));
+        while (pending.size() > window) writeBlock(await(pending.removeFirst()));
+        Metrics.DEFLATE_QUEUE_DEPTH.set(pending.size());
+    }
+
+    private Block deflate(Entry entry, byte[] data, byte[] dict, boolean first, boolean last) {
+        long t = Metrics.COMPRESS.begin();
+        Deflater def = new Deflater(level, true);
+        try {
+            if (dict != null) def.setDictionary(dict);
+            def.setInput(data);
+            if (last) def.finish();
+            byte[] buf = new byte[data.length + (data.length >> 3) + 64];
+            int len = 0;
+            while (true) {
+                if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                int avail = buf.length - len;
+                int n = last ? def.deflate(buf, len, avail) : def.deflate(buf, len, avail, Deflater.SYNC_FLUSH);
+                len += n;
+                if (last ? def.finished() : n < avail) break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            return new Block(entry, Arrays.copyOf(buf, len), crc.getValue(), data.length, first, last);
+        } finally {
+            def.end();
+            Metrics.COMPRESS.end(t, data.length);
+        }
+    }
+
+    private static Block await(Future<Block> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private void writeBlock(Block b) throws IOException {
+        Entry e = b.entry();
+        if (b.first()) {
+            e.offset = offset;
+            scratch.clear();
+            scratch.putInt(0x04034b50).putShort((short) 20).putShort((short) FLAGS).putShort((short) 8)
+                    .putInt(dosTime).putInt(0).putInt(0).putInt(0)
+                    .putShort((short) e.name.length).putShort((short) 0);
+            writeScratch();
+            write(e.name, e.name.length);
+        }
+        write(b.data(), b.data().length);
+        e.crc = crc32Combine(e.crc, b.crc(), b.length());
+        e.size += b.length();
+        e.csize += b.data().length;
+        if (b.last()) {
+            scratch.clear();
+            scratch.putInt(0x08074b50).putInt((int) e.crc);
+            if (e.size >= ZIP64_MAGIC || e.csize >= ZIP64_MAGIC) scratch.putLong(e.csize).putLong(e.size);
+            else scratch.putInt((int) e.csize).putInt((int) e.size);
+            writeScratch();
+            central.add(e);
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long cenStart = offset;
+        for (Entry e : central) {
+            boolean bigSize = e.size >= ZIP64_MAGIC;
+            boolean bigCsize = e.csize >= ZIP64_MAGIC;
+            boolean bigOffset = e.offset >= ZIP64_MAGIC;
+            int extraLen = (bigSize ? 8 : 0) + (bigCsize ? 8 : 0) + (bigOffset ? 8 : 0);
+            short version = (short) (extraLen > 0 ? 45 : 20);
+            scratch.clear();
+            scratch.putInt(0x02014b50).putShort(version).putShort(version).putShort((short) FLAGS).putShort((short) 8)
+                    .putInt(dosTime).putInt((int) e.crc)
+                    .putInt((int) Math.min(e.csize, ZIP64_MAGIC)).putInt((int) Math.min(e.size, ZIP64_MAGIC))
+                    .putShort((short) e.name.length).putShort((short) (extraLen > 0 ? extraLen + 4 : 0))
+                    .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putInt((int) Math.min(e.offset, ZIP64_MAGIC));
+            writeScratch();
+            write(e.name, e.name.length);
+            if (extraLen > 0) {
+                scratch.clear();
+                scratch.putShort((short) 0x0001).putShort((short) extraLen);
+                if (bigSize) scratch.putLong(e.size);
+                if (bigCsize) scratch.putLong(e.csize);
+                if (bigOffset) scratch.putLong(e.offset);
+                writeScratch();
+            }
+        }
+        long cenLen = offset - cenStart;
+        int count = central.size();
+        if (count >= ZIP64_MAGIC_COUNT || cenStart >= ZIP64_MAGIC || cenLen >= ZIP64_MAGIC) {
+            long zip64End = offset;
+            scratch.clear();
+            scratch.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                    .putLong(count).putLong(count).putLong(cenLen).putLong(cenStart);
+            scratch.putInt(0x07064b50).putInt(0).putLong(zip64End).putInt(1);
+            writeScratch();
+        }
+        scratch.clear();
+        short shortCount = (short) Math.min(count, ZIP64_MAGIC_COUNT);
+        scratch.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort(shortCount).putShort(shortCount)
+                .putInt((int) Math.min(cenLen, ZIP64_MAGIC)).putInt((int) Math.min(cenStart, ZIP64_MAGIC)).putShort((short) 0);
+        writeScratch();
+    }
+
+    private void writeScratch() throws IOException {
+        write(scratch.array(), scratch.position());
+    }
+
+    private void write(byte[] b, int len) throws IOException {
+        out.write(b, 0, len);
+        offset += len;
+    }
+
+    /** Writes the remaining blocks and the central directory, then closes the underlying stream. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            while (!pending.isEmpty()) writeBlock(await(pending.removeFirst()));
+            Metrics.DEFLATE_QUEUE_DEPTH.set(0);
+            writeCentralDirectory();
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+
+    private static int dosTime(long millis) {
+        LocalDateTime d = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (d.getYear() < 1980) return (1 << 21) | (1 << 16);
+        return (d.getYear() - 1980) << 25 | d.getMonthValue() << 21 | d.getDayOfMonth() << 16
+                | d.getHour() << 11 | d.getMinute() << 5 | d.getSecond() >> 1;
+    }
+
+    /** CRC-32 of the concatenation A+B from crc(A), crc(B) and len(B) (zlib's crc32_combine). */
+    static long crc32Combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) return crc1;
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0xEDB88320L; // CRC-32 polynomial, operator for one zero bit
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd); // two zero bits
+        gf2MatrixSquare(odd, even); // four zero bits
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) crc1 = gf2MatrixTimes(even, crc1);
+            len2 >>= 1;
+            if (len2 == 0) break;
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) crc1 = gf2MatrixTimes(odd, crc1);
+            len2 >>= 1;
+        } while (len2 != 0);
+        return (crc1 ^ crc2) & 0xFFFFFFFFL;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) sum ^= mat[i];
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 32; n++) square[n] = gf2MatrixTimes(mat, mat[n]);
+    }
+}
@@ -0,0 +1,9 @@
+package com.c4g7.backupflow.util;
+
+import java.nio.file.Path;
+
+/** Progress and cancellation hook for long-running backup stages. */
+public interface ProgressListener {
+    void onFile(Path file, long bytes);
+    boolean isCancelled();
+}
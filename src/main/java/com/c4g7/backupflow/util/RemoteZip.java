@@ -0,0 +1,399 @@
+package com.c4g7.backupflow.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a zip archive that lives in object storage through ranged reads, so a restore of a few
+ * entries fetches the central directory and those entries instead of the whole archive. Selected
+ * entries are grouped into byte ranges (adjacent entries share a request, large runs are split at
+ * entry boundaries) that are downloaded and inflated in parallel. Handles Zip64 and entries written
+ * with data descriptors, as produced by {@link ParallelZipWriter} and {@code ZipOutputStream}.
+ */
+public final class RemoteZip {
+    /** Reads part of the archive; {@code BackupStorageService::openRange} bound to one object. */
+    public interface RangeSource {
+        InputStream open(long offset, long length) throws Exception;
+    }
+
+    public record Entry(String name, int method, long crc, long compressedSize, long size, long offset) {}
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int LOC_SIG = 0x04034b50;
+    private static final long MAGIC32 = 0xFFFFFFFFL;
+    private static final int TAIL_SIZE = 128 * 1024; // EOCD + longest comment, and usually the whole directory of a small archive
+    private static final long MERGE_GAP = 256 * 1024; // read across unselected entries smaller than this
+    private static final long RANGE_TARGET = 64L * 1024 * 1024;
+    private static final int RANGE_ATTEMPTS = 3;
+
+    private final RangeSource source;
+    private final List<Entry> entries;
+    private final long[] offsets; // every entry's local header offset, sorted, then the directory start
+    private final long centralDirectoryOffset;
+
+    private RemoteZip(RangeSource source, List<Entry> entries, long[] offsets, long centralDirectoryOffset) {
+        this.source = source;
+        this.entries = entries;
+        this.offsets = offsets;
+        this.centralDirectoryOffset = centralDirectoryOffset;
+    }
+
+    /** Reads the end records and the central directory of an archive of {@code size} bytes. */
+    public static RemoteZip open(RangeSource source, long size) throws IOException {
+        int tailLen = (int) Math.min(size, TAIL_SIZE);
+        long tailStart = size - tailLen;
+        ByteBuffer tail = ByteBuffer.wrap(read(source, tailStart, tailLen)).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = -1;
+        for (int i = tailLen - 22; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIG && i + 22 + Short.toUnsignedInt(tail.getShort(i + 20)) <= tailLen) { eocd = i; break; }
+        }
+        if (eocd < 0) throw new IOException("Not a zip archive (no end of central directory)");
+        long count = Short.toUnsignedInt(tail.getShort(eocd + 10));
+        long cenSize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long cenOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+        if ((count == 0xFFFF || cenSize == MAGIC32 || cenOffset == MAGIC32) && eocd >= 20 && tail.getInt(eocd - 20) == ZIP64_LOCATOR_SIG) {
+            long z64 = tail.getLong(eocd - 20 + 8);
+            ByteBuffer rec = z64 >= tailStart && z64 - tailStart + 56 <= tailLen
+                    ? tail.duplicate().order(ByteOrder.LITTLE_ENDIAN).position((int) (z64 - tailStart)).slice().order(ByteOrder.LITTLE_ENDIAN)
+                    : ByteBuffer.wrap(read(source, z64, 56)).order(ByteOrder.LITTLE_ENDIAN);
+            if (rec.getInt(0) != ZIP64_EOCD_SIG) throw new IOException("Corrupt Zip64 end record");
+            count = rec.getLong(32);
+            cenSize = rec.getLong(40);
+            cenOffset = rec.getLong(48);
+        }
+        if (cenOffset + cenSize > size) throw new IOException("Central directory out of bounds");
+        InputStream cen = cenOffset >= tailStart
+                ? new java.io.ByteArrayInputStream(tail.array(), (int) (cenOffset - tailStart), (int) cenSize)
+                : openRange(source, cenOffset, cenSize);
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 20));
+        try (InputStream in = new java.io.BufferedInputStream(cen, 256 * 1024)) {
+            ByteBuffer h = ByteBuffer.allocate(46).order(ByteOrder.LITTLE_ENDIAN);
+            for (long i = 0; i < count; i++) {
+                readFully(in, h.array(), 46);
+                if (h.getInt(0) != CEN_SIG) throw new IOException("Corrupt central directory at entry " + i);
+                int flags = Short.toUnsignedInt(h.getShort(8));
+                int method = Short.toUnsignedInt(h.getShort(10));
+                long crc = Integer.toUnsignedLong(h.getInt(16));
+                long csize = Integer.toUnsignedLong(h.getInt(20));
+                long usize = Integer.toUnsignedLong(h.getInt(24));
+                int nameLen = Short.toUnsignedInt(h.getShort(28));
+                int extraLen = Short.toUnsignedInt(h.getShort(30));
+                int commentLen = Short.toUnsignedInt(h.getShort(32));
+                long offset = Integer.toUnsignedLong(h.getInt(42));
+                byte[] name = in.readNBytes(nameLen);
+                ByteBuffer extra = ByteBuffer.wrap(in.readNBytes(extraLen)).order(ByteOrder.LITTLE_ENDIAN);
+                in.skipNBytes(commentLen);
+                while (extra.remaining() >= 4) {
+                    int id = Short.toUnsignedInt(extra.getShort());
+                    int len = Short.toUnsignedInt(extra.getShort());
+                    int end = extra.position() + len;
+                    if (id == 0x0001) {
+                        if (usize == MAGIC32) usize = extra.getLong();
+                        if (csize == MAGIC32) csize = extra.getLong();
+                        if (offset == MAGIC32) offset = extra.getLong();
+                    }
+                    extra.position(Math.min(end, extra.limit()));
+                }
+                String n = new String(name, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+                entries.add(new Entry(n, method, crc, csize, usize, offset));
+            }
+        }
+        long[] offsets = new long[entries.size() + 1];
+        for (int i = 0; i < entries.size(); i++) offsets[i] = entries.get(i).offset();
+        offsets[entries.size()] = cenOffset;
+        Arrays.sort(offsets);
+        return new RemoteZip(source, entries, offsets, cenOffset);
+    }
+
+    public List<Entry> entries() { return entries; }
+
+    /**
+     * Extracts the file entries accepted by {@code include} below {@code dest}, using up to
+     * {@code threads} concurrent range reads. Every file is replaced atomically, so a retried or
+     * abandoned range leaves no partial file behind.
+     *
+     * @return the number of archive bytes fetched
+     */
+    public long extract(Predicate<String> include, Path dest, int threads, ProgressListener listener) throws IOException {
+        Path root = dest.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        return forEachEntry(include, threads, listener, (name, data) -> {
+            Path out = root.resolve(name).normalize();
+            if (!out.startsWith(root)) return; // security, same as extractFiltered
+            ZipExtractUtils.writeAtomically(out, data::transferTo);
+        });
+    }
+
+    /**
+     * Streams the file entries accepted by {@code include} to {@code consumer}, inflated, with up to
+     * {@code threads} ranges read (and so entries consumed) concurrently. The stream handed to the
+     * consumer throws once it reaches the end of an entry whose CRC does not match. A range that
+     * fails is resumed at the first entry the consumer has not completed, so the consumer must not
+     * record an entry before it has read it to the end.
+     *
+     * @return the number of archive bytes fetched
+     */
+    public long forEachEntry(Predicate<String> include, int threads, ProgressListener listener, ZipExtractUtils.EntryConsumer consumer) throws IOException {
+        return forEachEntry(include, threads, listener, consumer, null);
+    }
+
+    /**
+     * Like {@link #forEachEntry(Predicate, int, ProgressListener, ZipExtractUtils.EntryConsumer)},
+     * but an entry whose data is damaged (bad local header, corrupt deflate data, CRC mismatch) is
+     * passed to {@code damaged}, which may be called from several range threads at once, and the
+     * remaining entries are still read. With a null {@code damaged} the damage fails the call.
+     */
+    public long forEachEntry(Predicate<String> include, int threads, ProgressListener listener, ZipExtractUtils.EntryConsumer consumer,
+                             BiConsumer<String, IOException> damaged) throws IOException {
+        List<Entry> selected = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.name().endsWith("/")) continue;
+            if (include == null || include.test(e.name())) selected.add(e);
+        }
+        selected.sort(Comparator.comparingLong(Entry::offset));
+        List<List<Entry>> ranges = plan(selected);
+        if (ranges.isEmpty()) return 0;
+        try (TaskScope scope = new TaskScope("range-get", Math.min(threads, ranges.size()))) {
+            List<Future<Long>> futures = new ArrayList<>(ranges.size());
+            for (List<Entry> range : ranges) futures.add(scope.fork(() -> readRange(range, listener, consumer, damaged)));
+            scope.join();
+            long fetched = 0;
+            for (Future<Long> f : futures) {
+                try {
+                    fetched += f.get();
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof IOException io) throw io;
+                    throw new IOException(ee.getCause().getMessage(), ee.getCause());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException("Interrupted during ranged read");
+                }
+            }
+            return fetched;
+        }
+    }
+
+    /** Groups offset-sorted entries into ranges to fetch with one request each. */
+    private List<List<Entry>> plan(List<Entry> selected) {
+        List<List<Entry>> ranges = new ArrayList<>();
+        List<Entry> current = null;
+        long currentStart = 0, currentEnd = 0;
+        for (Entry e : selected) {
+            long end = endOf(e);
+            if (current != null && e.offset() - currentEnd <= MERGE_GAP && end - currentStart <= RANGE_TARGET) {
+                current.add(e);
+                currentEnd = end;
+                continue;
+            }
+            current = new ArrayList<>();
+            current.add(e);
+            ranges.add(current);
+            currentStart = e.offset();
+            currentEnd = end;
+        }
+        return ranges;
+    }
+
+    /** Start of whatever follows the entry: the next local header or the central directory. */
+    private long endOf(Entry e) {
+        int i = Arrays.binarySearch(offsets, e.offset());
+        while (i + 1 < offsets.length && offsets[i + 1] == e.offset()) i++;
+        return i + 1 < offsets.length ? offsets[i + 1] : centralDirectoryOffset;
+    }
+
+    private long readRange(List<Entry> range, ProgressListener listener, ZipExtractUtils.EntryConsumer consumer,
+                           BiConsumer<String, IOException> damaged) throws IOException {
+        long end = endOf(range.get(range.size() - 1));
+        long fetched = 0;
+        int next = 0; // first entry not yet handed to the consumer in full
+        int failures = 0; // in a row, without an entry completed in between
+        IOException last = null;
+        while (next < range.size() && failures < RANGE_ATTEMPTS) {
+            int before = next;
+            long start = range.get(next).offset();
+            fetched += end - start;
+            try (InputStream raw = openRange(source, start, end - start);
+                 InputStream in = new java.io.BufferedInputStream(raw, 256 * 1024)) {
+                long pos = start;
+                while (next < range.size()) {
+                    Entry e = range.get(next);
+                    if (listener != null && listener.isCancelled()) throw new IOException("Cancelled");
+                    in.skipNBytes(e.offset() - pos);
+                    pos = e.offset() + readEntry(e, in, consumer);
+                    next++;
+                    if (listener != null) listener.onFile(Path.of(e.name()), e.size());
+                }
+            } catch (ZipDataException ex) {
+                if (damaged == null) throw ex;
+                // the stream position inside a damaged entry is unknown; carry on with a new request
+                damaged.accept(range.get(next).name(), ex);
+                next++;
+                failures = 0;
+            } catch (IOException ex) {
+                // a cancelled scope interrupts this thread (InterruptedIOException, ClosedByInterruptException)
+                if (ex instanceof java.io.InterruptedIOException || ex instanceof java.nio.channels.ClosedByInterruptException
+                        || Thread.currentThread().isInterrupted() || "Cancelled".equals(ex.getMessage())) throw ex;
+                last = ex;
+                failures = next > before ? 1 : failures + 1;
+            }
+        }
+        if (next < range.size()) {
+            throw new IOException("Range at " + range.get(next).offset() + " failed after " + RANGE_ATTEMPTS + " attempts: " + last.getMessage(), last);
+        }
+        return fetched;
+    }
+
+    /** Hands one entry from a stream positioned at its local header to the consumer; returns the bytes consumed. */
+    private static long readEntry(Entry e, InputStream in, ZipExtractUtils.EntryConsumer consumer) throws IOException {
+        byte[] loc = new byte[30];
+        readFully(in, loc, 30);
+        ByteBuffer h = ByteBuffer.wrap(loc).order(ByteOrder.LITTLE_ENDIAN);
+        if (h.getInt(0) != LOC_SIG) throw new ZipDataException("Bad local header for " + e.name());
+        int skip = Short.toUnsignedInt(h.getShort(26)) + Short.toUnsignedInt(h.getShort(28));
+        in.skipNBytes(skip);
+        if (e.method() != 0 && e.method() != 8) throw new ZipDataException("Unsupported compression method " + e.method() + " for " + e.name());
+        EntryInput data = new EntryInput(e, in);
+        try {
+            consumer.accept(e.name(), data);
+            data.drain();
+        } finally {
+            data.end();
+        }
+        return 30 + skip + e.compressedSize();
+    }
+
+    /** An entry's content, inflated if needed, bounded to its compressed size and CRC-checked at the end. */
+    private static final class EntryInput extends InputStream {
+        private final Entry entry;
+        private final InputStream in;
+        private final Inflater inflater;
+        private final byte[] input;
+        private final CRC32 crc = new CRC32();
+        private long remaining; // compressed bytes of this entry not yet read from in
+        private boolean padded;
+        private boolean eof;
+
+        EntryInput(Entry entry, InputStream in) {
+            this.entry = entry;
+            this.in = in;
+            this.remaining = entry.compressedSize();
+            this.inflater = entry.method() == 8 ? new Inflater(true) : null;
+            this.input = inflater != null ? new byte[64 * 1024] : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) return -1;
+            if (len == 0) return 0;
+            if (inflater == null) {
+                if (remaining == 0) return finish();
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n < 0) throw new java.io.EOFException("Archive range ended early");
+                remaining -= n;
+                crc.update(b, off, n);
+                return n;
+            }
+            try {
+                while (true) {
+                    if (inflater.finished()) return finish();
+                    if (inflater.needsInput()) {
+                        if (remaining == 0) {
+                            if (padded) throw new ZipDataException("Truncated deflate data in " + entry.name());
+                            padded = true;
+                            inflater.setInput(new byte[1]); // raw inflate may want one byte past the data
+                        } else {
+                            int n = in.read(input, 0, (int) Math.min(input.length, remaining));
+                            if (n < 0) throw new java.io.EOFException("Archive range ended early");
+                            remaining -= n;
+                            inflater.setInput(input, 0, n);
+                        }
+                    }
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        crc.update(b, off, n);
+                        return n;
+                    }
+                    if (inflater.needsDictionary()) throw new ZipDataException("Deflate data needs a preset dictionary");
+                }
+            } catch (DataFormatException dfe) {
+                throw new ZipDataException("Corrupt deflate data in " + entry.name() + ": " + dfe.getMessage());
+            }
+        }
+
+        private int finish() throws IOException {
+            eof = true;
+            if (crc.getValue() != entry.crc()) throw new ZipDataException("CRC mismatch for " + entry.name());
+            return -1;
+        }
+
+        /** Reads whatever the consumer left and positions {@code in} after the entry. */
+        void drain() throws IOException {
+            if (!eof) {
+                byte[] skip = new byte[64 * 1024];
+                while (read(skip, 0, skip.length) >= 0) { }
+            }
+            in.skipNBytes(remaining);
+            remaining = 0;
+        }
+
+        void end() {
+            if (inflater != null) inflater.end();
+        }
+
+        @Override
+        public void close() { } // the range stream belongs to readRange
+    }
+
+    /** Damage in the archive itself; retrying the download would not help. */
+    private static final class ZipDataException extends IOException {
+        ZipDataException(String message) { super(message); }
+    }
+
+    private static InputStream openRange(RangeSource source, long offset, long length) throws IOException {
+        try {
+            return source.open(offset, length);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static byte[] read(RangeSource source, long offset, int length) throws IOException {
+        try (InputStream in = openRange(source, offset, length)) {
+            byte[] b = new byte[length];
+            readFully(in, b, length);
+            return b;
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] b, int len) throws IOException {
+        int n = in.readNBytes(b, 0, len);
+        if (n != len) throw new java.io.EOFException("Archive range ended early");
+    }
+}
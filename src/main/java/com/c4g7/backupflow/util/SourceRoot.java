@@ -0,0 +1,6 @@
+package com.c4g7.backupflow.util;
+
+import java.nio.file.Path;
+
+/** A file or directory to back up and the path it gets inside the archive. */
+public record SourceRoot(Path source, String archivePath) {}
@@ -0,0 +1,245 @@
+package com.c4g7.backupflow.util;
+
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Enumerates the regular files under a list of {@link SourceRoot}s together with their archive
+ * names, skipping anything below {@code skipDir} (BackupFlow's own work directory) and anything the
+ * {@link ExclusionMatcher} excludes. Excluded directories are pruned, not listed and filtered.
+ * Backup walks ({@link #walk}, {@link #walkParallel}) count what they leave out in
+ * {@link Metrics#EXCLUDED}.
+ */
+public final class SourceWalker {
+    private static final Path CWD = Path.of("").toAbsolutePath();
+
+    private SourceWalker() {}
+
+    public interface FileConsumer {
+        void accept(Path file, String archiveName) throws IOException;
+    }
+
+    public interface AttributeConsumer {
+        void accept(Path file, BasicFileAttributes attrs) throws IOException;
+    }
+
+    /** Called from several walker threads at once. */
+    public interface ParallelConsumer {
+        void accept(Path file, String archiveName, BasicFileAttributes attrs) throws IOException;
+    }
+
+    public static void walk(List<SourceRoot> roots, Path skipDir, FileConsumer consumer) throws IOException {
+        walk(roots, skipDir, ExclusionMatcher.NONE, consumer);
+    }
+
+    public static void walk(List<SourceRoot> roots, Path skipDir, ExclusionMatcher exclusions, FileConsumer consumer) throws IOException {
+        for (SourceRoot root : roots) {
+            Path src = root.source();
+            if (!Files.exists(src)) continue;
+            if (Files.isDirectory(src)) {
+                walkFiles(src, skipDir, exclusions, true, (p, attrs) -> {
+                    String rel = src.relativize(p).toString().replace('\\', '/');
+                    consumer.accept(p, root.archivePath() + "/" + rel);
+                });
+            } else if (!isUnder(src, skipDir) && !excluded(exclusions, matchPath(src), Files.size(src), true)) {
+                consumer.accept(src, root.archivePath());
+            }
+        }
+    }
+
+    /**
+     * Same files as {@link #walk}, but directories are listed concurrently on a work-stealing
+     * {@link ForkJoinPool} of {@code parallelism} threads (one task per directory), and each entry's
+     * attributes are read once and handed to {@code consumer}, which runs on the walker threads and
+     * so sees files in no particular order. The first exception thrown by {@code consumer} stops the
+     * walk and is rethrown; interrupting the calling thread stops it too.
+     */
+    public static void walkParallel(List<SourceRoot> roots, Path skipDir, ExclusionMatcher exclusions, int parallelism, ParallelConsumer consumer) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("BackupFlow-walk-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+        try {
+            for (SourceRoot root : roots) {
+                Path src = root.source();
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(src, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue; // missing
+                }
+                if (!attrs.isDirectory()) {
+                    if (attrs.isRegularFile() && !isUnder(src, skipDir) && !excluded(exclusions, matchPath(src), attrs.size(), true)) {
+                        consumer.accept(src, root.archivePath(), attrs);
+                    }
+                    continue;
+                }
+                IoThrottle.DISK.acquire(IoThrottle.METADATA_COST);
+                if (isUnder(src, skipDir)) continue;
+                if (exclusions.excludesDirectory(matchPath(src))) {
+                    Metrics.EXCLUDED.inc("directory");
+                    continue;
+                }
+                ForkJoinTask<Void> walk = pool.submit(new DirectoryTask(src, root.archivePath(), skipDir, exclusions, consumer));
+                try {
+                    walk.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Cancelled");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof UncheckedIOException u) throw u.getCause();
+                    if (cause instanceof RuntimeException re) throw re;
+                    if (cause instanceof Error err) throw err;
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.close(); // waits for workers still inside the consumer
+        }
+    }
+
+    /** Lists one directory: files go to the consumer, subdirectories become forked tasks. */
+    private static final class DirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final String archiveDir;
+        private final Path skipDir;
+        private final ExclusionMatcher exclusions;
+        private final ParallelConsumer consumer;
+
+        DirectoryTask(Path dir, String archiveDir, Path skipDir, ExclusionMatcher exclusions, ParallelConsumer consumer) {
+            this.dir = dir; this.archiveDir = archiveDir; this.skipDir = skipDir; this.exclusions = exclusions; this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path p : entries) visit(p, subdirs);
+            } catch (IOException | DirectoryIteratorException e) {
+                // vanished or unreadable directory: skipped, as walkFileTree does
+            }
+            invokeAll(subdirs);
+        }
+
+        private void visit(Path p, List<DirectoryTask> subdirs) {
+            try {
+                IoThrottle.DISK.acquire(IoThrottle.METADATA_COST);
+                BasicFileAttributes attrs;
+                boolean link;
+                try {
+                    attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    link = attrs.isSymbolicLink();
+                    if (link) attrs = Files.readAttributes(p, BasicFileAttributes.class); // a link to a file is archived as that file
+                } catch (IOException e) {
+                    return; // vanished, unreadable or a dangling link
+                }
+                String name = archiveDir + "/" + p.getFileName();
+                if (attrs.isDirectory()) {
+                    if (link || isUnder(p, skipDir)) return; // links are not followed into directories
+                    if (exclusions.excludesDirectory(matchPath(p))) {
+                        Metrics.EXCLUDED.inc("directory");
+                        return;
+                    }
+                    subdirs.add(new DirectoryTask(p, name, skipDir, exclusions, consumer));
+                } else if (attrs.isRegularFile() && !excluded(exclusions, matchPath(p), attrs.size(), true)) {
+                    consumer.accept(p, name, attrs);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Visits every regular file under {@code root} (following links to files, as
+     * {@link Files#isRegularFile} does) that is not excluded. Unreadable entries are skipped.
+     */
+    public static void walkFiles(Path root, Path skipDir, ExclusionMatcher exclusions, AttributeConsumer consumer) throws IOException {
+        walkFiles(root, skipDir, exclusions, false, consumer);
+    }
+
+    private static void walkFiles(Path root, Path skipDir, ExclusionMatcher exclusions, boolean count, AttributeConsumer consumer) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                IoThrottle.DISK.acquire(IoThrottle.METADATA_COST);
+                if (isUnder(dir, skipDir)) return FileVisitResult.SKIP_SUBTREE;
+                if (exclusions.excludesDirectory(matchPath(dir))) {
+                    if (count) Metrics.EXCLUDED.inc("directory");
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                IoThrottle.DISK.acquire(IoThrottle.METADATA_COST);
+                if (attrs.isSymbolicLink()) {
+                    try {
+                        attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        return FileVisitResult.CONTINUE; // dangling link
+                    }
+                }
+                if (!attrs.isRegularFile() || excluded(exclusions, matchPath(file), attrs.size(), count)) return FileVisitResult.CONTINUE;
+                consumer.accept(file, attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean excluded(ExclusionMatcher exclusions, String path, long size, boolean count) {
+        if (!count) return exclusions.excludesFile(path, size);
+        if (exclusions.isOversized(size)) {
+            Metrics.EXCLUDED.inc("size");
+            return true;
+        }
+        if (exclusions.excludes(path)) {
+            Metrics.EXCLUDED.inc("pattern");
+            return true;
+        }
+        return false;
+    }
+
+    /** {@code p} relative to the server directory, as exclusion patterns expect it. */
+    public static String matchPath(Path p) {
+        Path rel = p.isAbsolute() ? (p.startsWith(CWD) ? CWD.relativize(p) : p) : p.normalize();
+        return rel.toString().replace('\\', '/');
+    }
+
+    public static boolean isUnder(Path p, Path dir) {
+        if (dir == null) return false;
+        try {
+            return p.toAbsolutePath().normalize().startsWith(dir);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.c4g7.backupflow.util;
+
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes an archive (zip, or tar through a {@link CompressionUtils#encoder codec}) of the live source
+ * files straight to an output stream (usually a {@link BoundedPipe} feeding the uploader), without
+ * staging a copy on disk. Entry names match what {@link CompressionUtils#compress} produces for a
+ * staged build directory.
+ */
+public final class StreamingArchiver {
+    private static final java.util.HexFormat HEX = java.util.HexFormat.of();
+
+    private StreamingArchiver() {}
+
+    public static Map<String,String> writeZip(List<SourceRoot> roots, OutputStream out, boolean withHashes, int compressionLevel, Path skipDir, ProgressListener listener) throws IOException {
+        return writeZip(roots, out, withHashes ? HashUtils.SHA256 : null, compressionLevel, 1, skipDir, ExclusionMatcher.NONE, null, listener);
+    }
+
+    /**
+     * As above, hashing each file with {@code hashAlgorithm} (see {@link HashUtils#newDigest}; null for
+     * no hashes) from the same read that feeds the compressor. With more than one thread the entries
+     * are deflated in parallel by {@link ParallelZipWriter}. With a {@code fileState} writer, files
+     * unchanged since the previous index reuse their recorded hash instead of being digested, and
+     * every file's state is recorded for the next run. Files matched by {@code exclusions} are left out.
+     */
+    public static Map<String,String> writeZip(List<SourceRoot> roots, OutputStream out, String hashAlgorithm, int compressionLevel, int threads, Path skipDir, ExclusionMatcher exclusions, FileStateIndex.Writer fileState, ProgressListener listener) throws IOException {
+        Map<String,String> hashes = hashAlgorithm != null ? new java.util.LinkedHashMap<>() : java.util.Collections.emptyMap();
+        if (threads > 1) {
+            try (ParallelZipWriter zw = new ParallelZipWriter(out, compressionLevel, threads, ParallelZipWriter.DEFAULT_BLOCK_SIZE)) {
+                SourceWalker.walk(roots, skipDir, exclusions, (file, name) -> addEntry(zw, file, name, hashAlgorithm, hashes, fileState, listener));
+            }
+            return hashes;
+        }
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
+            zos.setLevel(Math.max(0, Math.min(9, compressionLevel)));
+            byte[] buf = new byte[64 * 1024];
+            SourceWalker.walk(roots, skipDir, exclusions, (file, name) -> addEntry(zos, file, name, hashAlgorithm, hashes, fileState, buf, listener));
+        }
+        return hashes;
+    }
+
+    /** Writes a tar of the sources to {@code codecOut}, which is closed (finishing the frame) on return. */
+    public static Map<String,String> writeTar(List<SourceRoot> roots, OutputStream codecOut, String hashAlgorithm, Path skipDir, ExclusionMatcher exclusions, FileStateIndex.Writer fileState, ProgressListener listener) throws IOException {
+        Map<String,String> hashes = hashAlgorithm != null ? new java.util.LinkedHashMap<>() : java.util.Collections.emptyMap();
+        try (TarWriter tw = new TarWriter(codecOut)) {
+            SourceWalker.walk(roots, skipDir, exclusions, (file, name) -> {
+                if (listener != null && listener.isCancelled()) throw new IOException("Cancelled");
+                FileHash fh = FileHash.begin(hashAlgorithm, fileState, file, name);
+                long bytes;
+                try {
+                    bytes = tw.addFile(file, name, fh.digest);
+                } catch (java.nio.file.NoSuchFileException | java.nio.file.AccessDeniedException e) {
+                    return;
+                }
+                fh.finish(file, name, hashes, fileState);
+                if (listener != null) listener.onFile(file, bytes);
+            });
+        }
+        return hashes;
+    }
+
+    /**
+     * Digest for one file, or the hash recorded for it when the file is unchanged since the last run.
+     * The bytes archived come from a live read, so a recorded hash is only kept if the file still
+     * matches once the entry has been streamed; a file that changed while it was read gets no hash,
+     * as no digest of the archived bytes was taken, and is hashed again by the next backup.
+     */
+    private static final class FileHash {
+        final MessageDigest digest;
+        final String cached;
+        final BasicFileAttributes attrs;
+
+        private FileHash(MessageDigest digest, String cached, BasicFileAttributes attrs) {
+            this.digest = digest; this.cached = cached; this.attrs = attrs;
+        }
+
+        static FileHash begin(String algorithm, FileStateIndex.Writer fileState, Path file, String name) {
+            if (algorithm == null) return new FileHash(null, null, null);
+            BasicFileAttributes attrs = null;
+            if (fileState != null) {
+                try {
+                    attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    FileStateIndex.Entry known = fileState.previous().lookup(name);
+                    if (known != null && known.hash() != null && known.matches(attrs)) return new FileHash(null, known.hash(), attrs);
+                } catch (IOException ignored) { }
+            }
+            return new FileHash(HashUtils.newDigest(algorithm), null, attrs);
+        }
+
+        void finish(Path file, String name, Map<String,String> hashes, FileStateIndex.Writer fileState) throws IOException {
+            if (digest == null && cached == null) return;
+            if (cached != null && !unchangedSince(file)) return;
+            String hash = cached != null ? cached : HEX.formatHex(digest.digest());
+            hashes.put(name, hash);
+            if (fileState != null && attrs != null) fileState.put(name, attrs, hash, List.of());
+        }
+
+        private boolean unchangedSince(Path file) {
+            try {
+                BasicFileAttributes now = Files.readAttributes(file, BasicFileAttributes.class);
+                return now.size() == attrs.size() && now.lastModifiedTime().equals(attrs.lastModifiedTime())
+                        && FileStateIndex.fileKey(now) == FileStateIndex.fileKey(attrs);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static void addEntry(ZipOutputStream zos, Path file, String name, String hashAlgorithm, Map<String,String> hashes, FileStateIndex.Writer fileState, byte[] buf, ProgressListener listener) throws IOException {
+        if (listener != null && listener.isCancelled()) throw new IOException("Cancelled");
+        FileHash fh = FileHash.begin(hashAlgorithm, fileState, file, name);
+        MessageDigest md = fh.digest;
+        InputStream raw;
+        try {
+            raw = IoThrottle.throttle(Metrics.READ.meter(Files.newInputStream(file)));
+        } catch (IOException e) {
+            return; // vanished or unreadable, same as a failed copy in staged mode
+        }
+        long bytes = 0;
+        try (InputStream in = md != null ? new DigestInputStream(raw, md) : raw) {
+            zos.putNextEntry(new ZipEntry(name));
+            int r;
+            while ((r = in.read(buf)) != -1) {
+                long t = Metrics.COMPRESS.begin();
+                try {
+                    zos.write(buf, 0, r);
+                } finally {
+                    Metrics.COMPRESS.end(t, r);
+                }
+                bytes += r;
+            }
+            zos.closeEntry();
+        }
+        fh.finish(file, name, hashes, fileState);
+        if (listener != null) listener.onFile(file, bytes);
+    }
+
+    private static void addEntry(ParallelZipWriter zw, Path file, String name, String hashAlgorithm, Map<String,String> hashes, FileStateIndex.Writer fileState, ProgressListener listener) throws IOException {
+        if (listener != null && listener.isCancelled()) throw new IOException("Cancelled");
+        FileHash fh = FileHash.begin(hashAlgorithm, fileState, file, name);
+        InputStream in;
+        try {
+            in = IoThrottle.throttle(Metrics.READ.meter(Files.newInputStream(file)));
+        } catch (IOException e) {
+            return;
+        }
+        long bytes;
+        try (in) {
+            bytes = zw.addEntry(name, in, fh.digest);
+        }
+        fh.finish(file, name, hashes, fileState);
+        if (listener != null) listener.onFile(file, bytes);
+    }
+}
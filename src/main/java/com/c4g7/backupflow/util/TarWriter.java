@@ -0,0 +1,80 @@
+package com.c4g7.backupflow.util;
+
+import com.c4g7.backupflow.metrics.Metrics;
+import com.c4g7.backupflow.throttle.IoThrottle;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Tar writer for the tar.* archive formats. The header stores the size up front, so each file is
+ * copied as exactly the size it had when opened: a live file that grows is cut off and one that
+ * shrinks is zero-padded, instead of corrupting the archive.
+ */
+public final class TarWriter implements AutoCloseable {
+    private final TarArchiveOutputStream tar;
+    private final ByteBuffer buf = ByteBuffer.allocate(256 * 1024);
+
+    /** @param out the codec stream ({@link CompressionUtils#encoder}); closed with this writer */
+    public TarWriter(OutputStream out) {
+        this.tar = new TarArchiveOutputStream(out);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    }
+
+    /**
+     * Adds {@code file} as {@code name}. Fails before anything is written if the file cannot be
+     * opened, so callers can skip vanished files.
+     *
+     * @return the number of bytes stored
+     */
+    public long addFile(Path file, String name, MessageDigest digest) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(size);
+            entry.setModTime(java.nio.file.Files.getLastModifiedTime(file));
+            tar.putArchiveEntry(entry);
+            long remaining = size;
+            while (remaining > 0) {
+                buf.clear();
+                if (remaining < buf.capacity()) buf.limit((int) remaining);
+                long t = Metrics.READ.begin();
+                int r = ch.read(buf);
+                if (r < 0) {
+                    // file shrank while being read; the zero padding is neither read nor throttled
+                    Metrics.READ.end(t, 0);
+                    Arrays.fill(buf.array(), 0, buf.limit(), (byte) 0);
+                    r = buf.limit();
+                } else {
+                    Metrics.READ.end(t, r);
+                    IoThrottle.DISK.acquire(r);
+                }
+                if (digest != null) digest.update(buf.array(), 0, r);
+                t = Metrics.COMPRESS.begin();
+                try {
+                    tar.write(buf.array(), 0, r);
+                } finally {
+                    Metrics.COMPRESS.end(t, r);
+                }
+                remaining -= r;
+            }
+            tar.closeArchiveEntry();
+            return size;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        tar.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.c4g7.backupflow.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fork/join for blocking I/O on virtual threads. Every forked subtask gets its own virtual thread;
+ * at most {@code parallelism} run at once and {@link #fork} waits for a free slot, so a producer
+ * cannot run ahead of its consumers. The first subtask to fail cancels the scope: the other
+ * subtasks are interrupted and later forks fail. An interrupt of a thread waiting in {@link #fork}
+ * or {@link #join} cancels the scope the same way, which is how cancelling a backup reaches every
+ * copy, upload and download it started. {@link #close} returns only once every subtask has ended.
+ * <p>
+ * Plays the part of {@code StructuredTaskScope.ShutdownOnFailure}, which is still a preview API
+ * in Java 21. A subtask must not fork into its own scope: with every slot held by a waiting
+ * parent nothing could run. Nested work gets a scope of its own.
+ */
+public final class TaskScope implements AutoCloseable {
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final int parallelism;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /** Subtask threads are named {@code BackupFlow-<name>-<n>}. */
+    public TaskScope(String name, int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.slots = new Semaphore(this.parallelism);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("BackupFlow-" + name + "-", 0).factory());
+    }
+
+    /**
+     * Starts {@code task} on a virtual thread once fewer than {@code parallelism} subtasks run.
+     * Throws the scope's failure instead if it has been cancelled.
+     */
+    public <T> Future<T> fork(Callable<T> task) throws IOException {
+        throwIfFailed();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(new InterruptedIOException("Cancelled"));
+            throwIfFailed();
+        }
+        // The slot is released in done(), after the result is stored, so a returned join() means
+        // every forked future is complete
+        FutureTask<T> future = new FutureTask<>(() -> {
+            try {
+                return task.call();
+            } catch (Throwable t) {
+                cancel(t);
+                throw t;
+            }
+        }) {
+            @Override
+            protected void done() {
+                slots.release();
+            }
+        };
+        try {
+            executor.execute(future);
+            return future;
+        } catch (RejectedExecutionException e) {
+            slots.release(); // cancelled meanwhile
+            throwIfFailed();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every future forked so far is complete, then throws the first failure, if any.
+     */
+    public void join() throws IOException {
+        try {
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(new InterruptedIOException("Cancelled"));
+        }
+        throwIfFailed();
+    }
+
+    /** Fails the scope with {@code cause} unless it already failed, and interrupts running subtasks. */
+    public void cancel(Throwable cause) {
+        failure.compareAndSet(null, cause);
+        executor.shutdownNow();
+    }
+
+    public boolean isCancelled() { return failure.get() != null; }
+
+    /** Throws the failure that cancelled the scope; returns normally while it has not failed. */
+    public void throwIfFailed() throws IOException {
+        Throwable t = failure.get();
+        if (t == null) return;
+        if (t instanceof IOException io) throw io;
+        if (t instanceof RuntimeException re) throw re;
+        if (t instanceof Error err) throw err;
+        throw new IOException(t.getMessage(), t);
+    }
+
+    /** Interrupts subtasks still running (when {@link #join} was not reached) and waits for them to end. */
+    @Override
+    public void close() {
+        if (!executor.isShutdown() && slots.availablePermits() < parallelism) cancel(new InterruptedIOException("Cancelled"));
+        executor.close();
+    }
+}
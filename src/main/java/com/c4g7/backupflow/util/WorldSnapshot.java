@@ -0,0 +1,84 @@
+package com.c4g7.backupflow.util;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Captures world directories into a build directory while the server has saving paused, so the
+ * archive is built from one consistent on-disk state instead of region files that are being
+ * rewritten under the reader.
+ * <p>
+ * Files Minecraft replaces by writing a temp file and renaming it over the old one ({@code level.dat},
+ * {@code playerdata/*.dat}) are hard-linked: the server never changes the linked inode again. Every
+ * other file, region files above all, is rewritten in place, so a link would keep changing; those are
+ * copied with {@link Files#copy}, which on Linux goes through {@code copy_file_range} and so shares
+ * extents (a reflink) on btrfs, XFS and ZFS instead of copying the data.
+ */
+public final class WorldSnapshot {
+    private WorldSnapshot() {}
+
+    /** File systems where a same-volume copy is a reflink rather than a full data copy. */
+    private static final Set<String> REFLINK_FILE_STORES = Set.of("btrfs", "xfs", "zfs", "bcachefs", "apfs");
+
+    public record Result(long files, long bytes, long linked, long millis, boolean reflinks) {}
+
+    /**
+     * Captures every file under the {@code worlds} roots (minus {@code exclusions}) into
+     * {@code dest/<archivePath>}, the layout {@link CompressionUtils#compress} expects.
+     */
+    public static Result capture(List<SourceRoot> worlds, Path dest, Path skipDir, ExclusionMatcher exclusions, boolean hardlinks, ProgressListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] counts = new long[3]; // files, bytes, linked
+        boolean[] linkFailed = {!hardlinks};
+        SourceWalker.walk(worlds, skipDir, exclusions, (file, name) -> {
+            if (listener != null && listener.isCancelled()) throw new IOException("Cancelled");
+            Path target = dest.resolve(name);
+            Files.createDirectories(target.getParent());
+            long size;
+            try {
+                size = Files.size(file);
+                if (!linkFailed[0] && replacedAtomically(name)) {
+                    try {
+                        Files.createLink(target, file);
+                        counts[2]++;
+                    } catch (UnsupportedOperationException | IOException e) {
+                        linkFailed[0] = true; // other volume or no link support: copy from now on
+                        Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                } else {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            } catch (java.nio.file.NoSuchFileException | java.nio.file.AccessDeniedException e) {
+                return;
+            }
+            counts[0]++;
+            counts[1] += size;
+            if (listener != null) listener.onFile(file, size);
+        });
+        return new Result(counts[0], counts[1], counts[2], System.currentTimeMillis() - start, reflinkCapable(dest));
+    }
+
+    /** Whether Minecraft writes {@code archiveName} to a temp file and renames it into place. */
+    static boolean replacedAtomically(String archiveName) {
+        int slash = archiveName.lastIndexOf('/');
+        String file = archiveName.substring(slash + 1);
+        if (file.equals("level.dat")) return true;
+        return file.endsWith(".dat") && slash > 0 && archiveName.substring(0, slash).endsWith("/playerdata");
+    }
+
+    /** Best guess from the file system type; {@link Files#copy} falls back to a data copy elsewhere. */
+    public static boolean reflinkCapable(Path dir) {
+        try {
+            FileStore store = Files.getFileStore(dir);
+            return REFLINK_FILE_STORES.contains(store.type().toLowerCase(Locale.ROOT));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.c4g7.backupflow.util;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
@@ -12,18 +18,101 @@ import java.util.zip.ZipInputStream;
 public final class ZipExtractUtils {
     private ZipExtractUtils() {}
 
+    public interface EntryConsumer {
+        /** {@code data} is positioned at the entry's content and must not be closed. */
+        void accept(String name, InputStream data) throws IOException;
+    }
+
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
     public static void extractFiltered(Path zip, Path dest, Predicate<String> include) throws IOException {
+        extractFiltered(zip, ArchiveFormat.ZIP, dest, include);
+    }
+
+    public static void extractFiltered(Path archive, ArchiveFormat format, Path dest, Predicate<String> include) throws IOException {
         Files.createDirectories(dest);
-        try (InputStream in = Files.newInputStream(zip); ZipInputStream zis = new ZipInputStream(in)) {
-            ZipEntry e;
-            while ((e = zis.getNextEntry()) != null) {
-                if (e.isDirectory()) continue;
-                String name = e.getName();
-                if (include != null && !include.test(name)) continue;
-                Path out = dest.resolve(name).normalize();
-                if (!out.startsWith(dest)) continue; // security
-                Files.createDirectories(out.getParent());
-                Files.copy(zis, out, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        forEachEntry(archive, format, include, (name, data) -> {
+            Path out = dest.resolve(name).normalize();
+            if (!out.startsWith(dest)) return; // security
+            Files.createDirectories(out.getParent());
+            Files.copy(data, out, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        });
+    }
+
+    /**
+     * Extracts straight from {@code in} (e.g. an object download) into {@code dest} without a staging
+     * copy. Each file is written next to its target and renamed over it, so an interrupted restore
+     * never leaves a half-written file in place. Existing files are kept unless {@code force}.
+     *
+     * @return the number of files written
+     */
+    public static long extractInPlace(InputStream in, ArchiveFormat format, Path dest, Predicate<String> include, boolean force) throws IOException {
+        Path root = dest.toAbsolutePath().normalize();
+        long[] written = {0};
+        forEachEntry(in, format, include, (name, data) -> {
+            Path out = root.resolve(name).normalize();
+            if (!out.startsWith(root)) return; // security
+            if (!force && Files.exists(out)) return;
+            writeAtomically(out, os -> data.transferTo(os));
+            written[0]++;
+        });
+        return written[0];
+    }
+
+    /**
+     * Writes {@code target} through a temp file in the same directory that is renamed over it once
+     * {@code content} completes; if {@code content} throws, the target is left as it was. The temp
+     * file is created with the default (umask) permissions, as a plain copy would be, and takes
+     * over the POSIX permissions of a target it replaces.
+     */
+    public static void writeAtomically(Path target, ContentWriter content) throws IOException {
+        Path dir = target.getParent();
+        Files.createDirectories(dir);
+        Path tmp = FileUtils.createSiblingTemp(dir);
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                content.writeTo(os);
+            }
+            FileUtils.copyPermissions(target, tmp);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Streams the regular-file entries of an archive accepted by {@code include}, in archive order. */
+    public static void forEachEntry(Path archive, ArchiveFormat format, Predicate<String> include, EntryConsumer consumer) throws IOException {
+        try (InputStream in = Files.newInputStream(archive)) {
+            forEachEntry(in, format, include, consumer);
+        }
+    }
+
+    /** As {@link #forEachEntry(Path, ArchiveFormat, Predicate, EntryConsumer)}, reading the archive from {@code raw}. */
+    public static void forEachEntry(InputStream raw, ArchiveFormat format, Predicate<String> include, EntryConsumer consumer) throws IOException {
+        InputStream in = new java.io.BufferedInputStream(raw, 256 * 1024);
+        if (format == ArchiveFormat.ZIP) {
+            try (ZipInputStream zis = new ZipInputStream(in)) {
+                ZipEntry e;
+                while ((e = zis.getNextEntry()) != null) {
+                    if (e.isDirectory()) continue;
+                    if (include != null && !include.test(e.getName())) continue;
+                    consumer.accept(e.getName(), zis);
+                }
+            }
+            return;
+        }
+        try (TarArchiveInputStream tis = new TarArchiveInputStream(CompressionUtils.decoder(format, in))) {
+            TarArchiveEntry e;
+            while ((e = tis.getNextEntry()) != null) {
+                if (!e.isFile()) continue;
+                if (include != null && !include.test(e.getName())) continue;
+                consumer.accept(e.getName(), tis);
             }
         }
     }